@@ -0,0 +1,147 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput, in cells per second, of the thinning of many small cells 
+ * (ellipsoids of 20 to 40 voxels): one skeletonizer per cell in the
+ * calling thread, as a script calling the plugin does, against a
+ * {@link BatchSkeletonizer} with one shared skeletonizer.
+ *
+ * <p>
+ * Run with <code>java -jar target/benchmarks.jar BatchBenchmark</code>.
+ *
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class BatchBenchmark
+{
+	/** number of cells per invocation */
+	private static final int CELLS = 256;
+
+	/** number of worker threads of the batch */
+	@Param( { "1", "4" } )
+	public int workers;
+
+	/** cells before thinning */
+	private BitVolume[] cells;
+	/** cells thinned by each invocation */
+	private BitVolume[] work;
+
+	/** create the cells */
+	@Setup( Level.Trial )
+	public void createCells()
+	{
+		final Random random = new Random( 42 );
+		cells = new BitVolume[ CELLS ];
+		for( int i = 0; i < CELLS; i++ )
+		{
+			final int size = 20 + random.nextInt( 21 );
+			final double ax = size / 2.5, ay = size / ( 3 + random.nextDouble() ), az = size / 4.0;
+			cells[ i ] = new BitVolume( size, size, size );
+			for( int z = 0; z < size; z++ )
+				for( int y = 0; y < size; y++ )
+					for( int x = 0; x < size; x++ )
+					{
+						final double dx = ( x - size / 2 ) / ax, dy = ( y - size / 2 ) / ay, dz = ( z - size / 2 ) / az;
+						cells[ i ].set( x, y, z, dx * dx + dy * dy + dz * dz <= 1 );
+					}
+		}
+		work = new BitVolume[ CELLS ];
+	}
+
+	/** restore the cells before each invocation */
+	@Setup( Level.Invocation )
+	public void restoreCells()
+	{
+		for( int i = 0; i < CELLS; i++ )
+		{
+			work[ i ] = new BitVolume( cells[ i ].getWidth(), cells[ i ].getHeight(), cells[ i ].getDepth() );
+			Phantoms.copy( cells[ i ], work[ i ] );
+		}
+	}
+
+	/**
+	 * Thin every cell with its own skeletonizer.
+	 *
+	 * @return last thinned cell
+	 */
+	@Benchmark
+	@OperationsPerInvocation( CELLS )
+	public BitVolume thinOneByOne()
+	{
+		for( BitVolume cell : work )
+			new Skeletonizer().thin( cell );
+		return work[ CELLS - 1 ];
+	}
+
+	/**
+	 * Thin the cells with a batch.
+	 *
+	 * @return batch measurements
+	 * @throws IOException never
+	 */
+	@Benchmark
+	@OperationsPerInvocation( CELLS )
+	public BatchStatistics thinBatch() throws IOException
+	{
+		final int[] next = { 0 };
+		return new BatchSkeletonizer( new Skeletonizer(), workers ).run( 
+				() -> next[ 0 ] < CELLS ? work[ next[ 0 ]++ ] : null, ( index, skeleton, latencyNanos ) -> { } );
+	}
+
+} /* end BatchBenchmark */
@@ -0,0 +1,286 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+import java.util.Random;
+
+/**
+ * Reproducible synthetic phantoms for the benchmarks: binary volumes of
+ * size^3 voxels generated from a fixed seed.
+ *
+ * <ul>
+ * <li>cube: a solid cube of half the volume side</li>
+ * <li>tubes: straight tubes between random points</li>
+ * <li>vessels: a random branching tree of tapering tubes</li>
+ * <li>sparseFoam, denseFoam: a solid (30% and 70% dense) carved by
+ * random spherical pores</li>
+ * </ul>
+ *
+ */
+final class Phantoms
+{
+	/** names of the phantoms */
+	static final String[] NAMES = { "cube", "tubes", "vessels", "sparseFoam", "denseFoam" };
+
+	private Phantoms()
+	{
+	}
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Create a phantom.
+	 *
+	 * @param name phantom name (see {@link #NAMES})
+	 * @param size side of the volume
+	 * @param seed random seed
+	 * @return phantom volume
+	 */
+	static BitVolume create(String name, int size, long seed)
+	{
+		final BitVolume volume = new BitVolume( size, size, size );
+		final Random random = new Random( seed );
+		switch( name )
+		{
+			case "cube":
+				for( int z = size / 4; z < size * 3 / 4; z++ )
+					for( int y = size / 4; y < size * 3 / 4; y++ )
+						for( int x = size / 4; x < size * 3 / 4; x++ )
+							volume.set( x, y, z, true );
+				break;
+			case "tubes":
+				for( int i = 0; i < 8; i++ )
+					tube( volume, randomPoint( random, size ), randomPoint( random, size ), 
+							1.5 + random.nextDouble() * size / 32 );
+				break;
+			case "vessels":
+				vessel( volume, random, new double[]{ size / 2.0, size / 2.0, 0 }, 
+						new double[]{ 0, 0, 1 }, size / 12.0, size / 4.0, 0 );
+				break;
+			case "sparseFoam":
+				foam( volume, random, 0.3 );
+				break;
+			case "denseFoam":
+				foam( volume, random, 0.7 );
+				break;
+			default:
+				throw new IllegalArgumentException( "Unknown phantom: " + name );
+		}
+		return volume;
+	} /* end create */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Copy a volume.
+	 *
+	 * @param source volume to copy
+	 * @param target volume of the same size receiving the copy
+	 */
+	static void copy(BitVolume source, BitVolume target)
+	{
+		System.arraycopy( source.getWords(), 0, target.getWords(), 0, source.getWords().length );
+	} /* end copy */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Draw a branch of a vessel tree and its two children, recursively.
+	 *
+	 * @param volume output volume
+	 * @param random random generator
+	 * @param start start point of the branch
+	 * @param direction unit direction of the branch
+	 * @param radius radius of the branch
+	 * @param length length of the branch
+	 * @param level branching level
+	 */
+	private static void vessel(BitVolume volume, Random random, double[] start, double[] direction, 
+			double radius, double length, int level)
+	{
+		final double[] end = new double[ 3 ];
+		for( int i = 0; i < 3; i++ )
+			end[ i ] = start[ i ] + direction[ i ] * length;
+		tube( volume, start, end, radius );
+		if( level == 7 || radius < 1 )
+			return;
+		for( int child = 0; child < 2; child++ )
+		{
+			// turn by 20 to 50 degrees around a random axis
+			final double[] axis = { random.nextGaussian(), random.nextGaussian(), random.nextGaussian() };
+			final double angle = Math.toRadians( 20 + 30 * random.nextDouble() ) * ( child == 0 ? 1 : -1 );
+			vessel( volume, random, end, rotate( direction, axis, angle ), radius * 0.75, 
+					length * ( 0.6 + 0.3 * random.nextDouble() ), level + 1 );
+		}
+	} /* end vessel */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Fill a volume with a solid carved by random spherical pores, so that
+	 * a given fraction of the voxels is expected to stay solid.
+	 *
+	 * @param volume output volume
+	 * @param random random generator
+	 * @param density expected solid fraction
+	 */
+	private static void foam(BitVolume volume, Random random, double density)
+	{
+		final int size = volume.getWidth();
+		for( int z = 0; z < size; z++ )
+			for( int y = 0; y < size; y++ )
+				for( int x = 0; x < size; x++ )
+					volume.set( x, y, z, true );
+		// Boolean model: solid fraction = exp(-pores * pore volume / volume)
+		final double radius = Math.max( 2, size / 16.0 );
+		final double poreVolume = 4.0 / 3.0 * Math.PI * radius * radius * radius;
+		final long pores = Math.round( -Math.log( density ) * size * size * size / poreVolume );
+		for( long i = 0; i < pores; i++ )
+			ball( volume, randomPoint( random, size ), radius, false );
+	} /* end foam */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Set the voxels within a distance of a segment.
+	 *
+	 * @param volume output volume
+	 * @param a first end of the segment
+	 * @param b second end of the segment
+	 * @param radius tube radius
+	 */
+	private static void tube(BitVolume volume, double[] a, double[] b, double radius)
+	{
+		final double vx = b[ 0 ] - a[ 0 ], vy = b[ 1 ] - a[ 1 ], vz = b[ 2 ] - a[ 2 ];
+		final double length2 = Math.max( vx * vx + vy * vy + vz * vz, 1e-9 );
+		final int[] min = new int[ 3 ], max = new int[ 3 ];
+		if( !bounds( volume, Math.min( a[ 0 ], b[ 0 ] ), Math.min( a[ 1 ], b[ 1 ] ), Math.min( a[ 2 ], b[ 2 ] ), 
+				Math.max( a[ 0 ], b[ 0 ] ), Math.max( a[ 1 ], b[ 1 ] ), Math.max( a[ 2 ], b[ 2 ] ), radius, min, max ) )
+			return;
+		for( int z = min[ 2 ]; z <= max[ 2 ]; z++ )
+			for( int y = min[ 1 ]; y <= max[ 1 ]; y++ )
+				for( int x = min[ 0 ]; x <= max[ 0 ]; x++ )
+				{
+					double t = ( ( x - a[ 0 ] ) * vx + ( y - a[ 1 ] ) * vy + ( z - a[ 2 ] ) * vz ) / length2;
+					t = Math.max( 0, Math.min( 1, t ) );
+					final double dx = a[ 0 ] + t * vx - x, dy = a[ 1 ] + t * vy - y, dz = a[ 2 ] + t * vz - z;
+					if( dx * dx + dy * dy + dz * dz <= radius * radius )
+						volume.set( x, y, z, true );
+				}
+	} /* end tube */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Set the voxels of a ball to a value.
+	 *
+	 * @param volume output volume
+	 * @param center ball center
+	 * @param radius ball radius
+	 * @param value true for foreground, false for background
+	 */
+	private static void ball(BitVolume volume, double[] center, double radius, boolean value)
+	{
+		final int[] min = new int[ 3 ], max = new int[ 3 ];
+		if( !bounds( volume, center[ 0 ], center[ 1 ], center[ 2 ], center[ 0 ], center[ 1 ], center[ 2 ], 
+				radius, min, max ) )
+			return;
+		for( int z = min[ 2 ]; z <= max[ 2 ]; z++ )
+			for( int y = min[ 1 ]; y <= max[ 1 ]; y++ )
+				for( int x = min[ 0 ]; x <= max[ 0 ]; x++ )
+				{
+					final double dx = center[ 0 ] - x, dy = center[ 1 ] - y, dz = center[ 2 ] - z;
+					if( dx * dx + dy * dy + dz * dz <= radius * radius )
+						volume.set( x, y, z, value );
+				}
+	} /* end ball */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Clip a box grown by a margin to the volume.
+	 *
+	 * @param volume volume
+	 * @param x0 lowest x- coordinate of the box
+	 * @param y0 lowest y- coordinate of the box
+	 * @param z0 lowest z- coordinate of the box
+	 * @param x1 highest x- coordinate of the box
+	 * @param y1 highest y- coordinate of the box
+	 * @param z1 highest z- coordinate of the box
+	 * @param margin margin added around the box
+	 * @param min output lowest voxel coordinates of the clipped box
+	 * @param max output highest voxel coordinates of the clipped box
+	 * @return false if the clipped box is empty
+	 */
+	private static boolean bounds(BitVolume volume, double x0, double y0, double z0, 
+			double x1, double y1, double z1, double margin, int[] min, int[] max)
+	{
+		final int[] size = { volume.getWidth(), volume.getHeight(), volume.getDepth() };
+		final double[] lo = { x0, y0, z0 }, hi = { x1, y1, z1 };
+		for( int i = 0; i < 3; i++ )
+		{
+			min[ i ] = Math.max( 0, (int) Math.floor( lo[ i ] - margin ) );
+			max[ i ] = Math.min( size[ i ] - 1, (int) Math.ceil( hi[ i ] + margin ) );
+			if( min[ i ] > max[ i ] )
+				return false;
+		}
+		return true;
+	} /* end bounds */
+
+	/**
+	 * @param random random generator
+	 * @param size side of the volume
+	 * @return uniform random point of a cubic volume
+	 */
+	private static double[] randomPoint(Random random, int size)
+	{
+		return new double[]{ random.nextDouble() * size, random.nextDouble() * size, random.nextDouble() * size };
+	}
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Rotate a vector around an axis (Rodrigues' formula).
+	 *
+	 * @param v vector
+	 * @param axis rotation axis (not normalized)
+	 * @param angle rotation angle in radians
+	 * @return rotated vector
+	 */
+	private static double[] rotate(double[] v, double[] axis, double angle)
+	{
+		final double norm = Math.sqrt( axis[ 0 ] * axis[ 0 ] + axis[ 1 ] * axis[ 1 ] + axis[ 2 ] * axis[ 2 ] );
+		final double kx = axis[ 0 ] / norm, ky = axis[ 1 ] / norm, kz = axis[ 2 ] / norm;
+		final double cos = Math.cos( angle ), sin = Math.sin( angle );
+		final double dot = kx * v[ 0 ] + ky * v[ 1 ] + kz * v[ 2 ];
+		return new double[]{
+				v[ 0 ] * cos + ( ky * v[ 2 ] - kz * v[ 1 ] ) * sin + kx * dot * ( 1 - cos ),
+				v[ 1 ] * cos + ( kz * v[ 0 ] - kx * v[ 2 ] ) * sin + ky * dot * ( 1 - cos ),
+				v[ 2 ] * cos + ( kx * v[ 1 ] - ky * v[ 0 ] ) * sin + kz * dot * ( 1 - cos ) };
+	} /* end rotate */
+
+} /* end Phantoms */
@@ -0,0 +1,114 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of the {@link SparseSkeletonizer} on the low occupancy 
+ * {@link Phantoms}, to compare with the dense {@link ThinningBenchmark}.
+ *
+ * <p>
+ * Run with <code>java -jar target/benchmarks.jar SparseThinningBenchmark</code>.
+ *
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class SparseThinningBenchmark
+{
+	/** phantom name */
+	@Param( { "tubes", "vessels", "sparseFoam" } )
+	public String phantom;
+
+	/** side of the phantom volume */
+	@Param( { "128", "256" } )
+	public int size;
+
+	/** phantom before thinning */
+	private BitVolume phantomVolume;
+	/** image thinned by each invocation */
+	private SparseSkeletonizer skeletonizer;
+
+	/** create the phantom */
+	@Setup( Level.Trial )
+	public void createPhantom()
+	{
+		phantomVolume = Phantoms.create( phantom, size, 42 );
+		// load the simple point table before measuring
+		SimplePointLUT.isSimple( 0 );
+	}
+
+	/** restore the phantom before each thinning */
+	@Setup( Level.Invocation )
+	public void restorePhantom()
+	{
+		skeletonizer = new SparseSkeletonizer( size, size, size, (int) phantomVolume.count() );
+		for( int z = 0; z < size; z++ )
+			for( int y = 0; y < size; y++ )
+				for( int x = 0; x < size; x++ )
+					if( phantomVolume.get( x, y, z ) )
+						skeletonizer.add( x, y, z );
+	}
+
+	/**
+	 * Thin the phantom.
+	 *
+	 * @return thinned image
+	 */
+	@Benchmark
+	public SparseSkeletonizer thin()
+	{
+		skeletonizer.thin();
+		return skeletonizer;
+	}
+
+} /* end SparseThinningBenchmark */
@@ -0,0 +1,193 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput, in voxels per second, of each stage of the deletion
+ * candidate test on the foreground voxels of the synthetic
+ * {@link Phantoms}: neighborhood extraction, end point, Euler invariance
+ * (octant indices and half neighborhood tables) and simple point tests
+ * (table and octree labeling reference).
+ *
+ * <p>
+ * Each invocation processes the same sample of {@value #SAMPLE} foreground
+ * voxels, drawn at random from the phantom.
+ *
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class StageBenchmark
+{
+	/** number of voxels per invocation */
+	static final int SAMPLE = 1 << 16;
+
+	/** phantom name */
+	@Param( { "cube", "vessels", "denseFoam" } )
+	public String phantom;
+
+	/** side of the phantom volume */
+	@Param( { "128" } )
+	public int size;
+
+	/** phantom volume */
+	private BitVolume volume;
+	/** coordinates of the sampled voxels */
+	private final int[] xs = new int[ SAMPLE ], ys = new int[ SAMPLE ], zs = new int[ SAMPLE ];
+	/** packed neighborhoods of the sampled voxels */
+	private final int[] neighborhoods = new int[ SAMPLE ];
+	/** 27-pixels neighborhoods of the sampled voxels */
+	private final byte[][] neighbors = new byte[ SAMPLE ][];
+	/** Euler LUT */
+	private final int[] eulerLUT = new int[ 256 ];
+
+	/** create the phantom and sample its foreground voxels */
+	@Setup( Level.Trial )
+	public void sample()
+	{
+		volume = Phantoms.create( phantom, size, 42 );
+		Skeletonizer.fillEulerLUT( eulerLUT );
+		SimplePointLUT.isSimple( 0 );
+		EulerLUT.isEulerInvariant( 0 );
+
+		final Random random = new Random( 7 );
+		for( int i = 0; i < SAMPLE; )
+		{
+			final int x = random.nextInt( size ), y = random.nextInt( size ), z = random.nextInt( size );
+			if( !volume.get( x, y, z ) )
+				continue;
+			xs[ i ] = x;
+			ys[ i ] = y;
+			zs[ i ] = z;
+			neighborhoods[ i ] = volume.getNeighborhood( x, y, z );
+			neighbors[ i ] = new byte[ 27 ];
+			for( int j = 0; j < 27; j++ )
+				neighbors[ i ][ j ] = (byte) ( neighborhoods[ i ] >>> j & 1 );
+			i++;
+		}
+	}
+
+	/** @return checksum of the packed neighborhoods */
+	@Benchmark
+	@OperationsPerInvocation( SAMPLE )
+	public int getNeighborhood()
+	{
+		int sum = 0;
+		for( int i = 0; i < SAMPLE; i++ )
+			sum += volume.getNeighborhood( xs[ i ], ys[ i ], zs[ i ] );
+		return sum;
+	}
+
+	/** @return number of end points */
+	@Benchmark
+	@OperationsPerInvocation( SAMPLE )
+	public int isEndPoint()
+	{
+		int count = 0;
+		for( int i = 0; i < SAMPLE; i++ )
+			if( Skeletonizer.isEndPoint( neighborhoods[ i ] ) )
+				count++;
+		return count;
+	}
+
+	/** @return number of Euler invariant points */
+	@Benchmark
+	@OperationsPerInvocation( SAMPLE )
+	public int isEulerInvariant()
+	{
+		int count = 0;
+		for( int i = 0; i < SAMPLE; i++ )
+			if( Skeletonizer.isEulerInvariant( neighborhoods[ i ], eulerLUT ) )
+				count++;
+		return count;
+	}
+
+	/** @return number of Euler invariant points (half neighborhood tables) */
+	@Benchmark
+	@OperationsPerInvocation( SAMPLE )
+	public int isEulerInvariantTable()
+	{
+		int count = 0;
+		for( int i = 0; i < SAMPLE; i++ )
+			if( EulerLUT.isEulerInvariant( neighborhoods[ i ] ) )
+				count++;
+		return count;
+	}
+
+	/** @return number of simple points (look-up table) */
+	@Benchmark
+	@OperationsPerInvocation( SAMPLE )
+	public int isSimplePoint()
+	{
+		int count = 0;
+		for( int i = 0; i < SAMPLE; i++ )
+			if( SimplePointLUT.isSimple( SimplePointLUT.getConfiguration( neighborhoods[ i ] ) ) )
+				count++;
+		return count;
+	}
+
+	/** @return number of simple points (octree labeling of [Lee94]) */
+	@Benchmark
+	@OperationsPerInvocation( SAMPLE )
+	public int isSimplePointOctree()
+	{
+		int count = 0;
+		for( int i = 0; i < SAMPLE; i++ )
+			if( Skeletonizer.isSimplePoint( neighbors[ i ] ) )
+				count++;
+		return count;
+	}
+
+} /* end StageBenchmark */
@@ -0,0 +1,144 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Full thinning runs on the synthetic {@link Phantoms}: latency in
+ * average time mode, and thinned voxels per second ("thin:voxels") in
+ * throughput mode.
+ *
+ * <p>
+ * Run with <code>java -jar target/benchmarks.jar ThinningBenchmark</code>;
+ * the parameters can be overridden, e.g. <code>-p size=512 -p parallelism=8</code>,
+ * and a single mode selected with <code>-bm avgt</code> or <code>-bm thrpt</code>.
+ *
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( { Mode.AverageTime, Mode.Throughput } )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class ThinningBenchmark
+{
+	/** phantom name */
+	@Param( { "cube", "tubes", "vessels", "sparseFoam", "denseFoam" } )
+	public String phantom;
+
+	/** side of the phantom volume */
+	@Param( { "64", "128", "256" } )
+	public int size;
+
+	/** number of threads searching for deletion candidates */
+	@Param( { "1" } )
+	public int parallelism;
+
+	/** re-examine only the active front after the first iteration */
+	@Param( { "true" } )
+	public boolean activeFront;
+
+	/** phantom before thinning */
+	private BitVolume phantomVolume;
+	/** volume thinned by each invocation */
+	private BitVolume volume;
+	/** thinning engine */
+	private final Skeletonizer skeletonizer = new Skeletonizer();
+
+	/** counter of the thinned voxels, reported per second */
+	@State( Scope.Thread )
+	@AuxCounters( AuxCounters.Type.OPERATIONS )
+	public static class Voxels
+	{
+		/** number of voxels of the thinned volumes */
+		public long voxels;
+
+		/** reset the counter */
+		@Setup( Level.Iteration )
+		public void reset()
+		{
+			voxels = 0;
+		}
+	}
+
+	/** create the phantom */
+	@Setup( Level.Trial )
+	public void createPhantom()
+	{
+		phantomVolume = Phantoms.create( phantom, size, 42 );
+		volume = new BitVolume( size, size, size );
+		skeletonizer.setParallelism( parallelism );
+		skeletonizer.setActiveFront( activeFront );
+		// load the simple point table before measuring
+		SimplePointLUT.isSimple( 0 );
+	}
+
+	/** restore the phantom before each thinning */
+	@Setup( Level.Invocation )
+	public void restorePhantom()
+	{
+		Phantoms.copy( phantomVolume, volume );
+	}
+
+	/**
+	 * Thin the phantom.
+	 *
+	 * @param counter thinned voxels counter
+	 * @return thinned volume
+	 */
+	@Benchmark
+	public BitVolume thin(Voxels counter)
+	{
+		skeletonizer.thin( volume );
+		counter.voxels += (long) size * size * size;
+		return volume;
+	}
+
+} /* end ThinningBenchmark */
@@ -0,0 +1,282 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Command line thinning of a raw volume file.
+ *
+ * <pre>
+ * java -jar skeletonize3d.jar [options] input output width height depth
+ *   --format raw|bits   voxel format: 8-bit (default) or bit-packed rows
+ *   --threads n         threads searching for deletion candidates (in memory)
+ *   --subfields         delete the candidates by parity subfields (in memory)
+ *   --surface           compute medial surfaces instead of medial axes
+ *   --out-of-core       thin through a window of slices instead of in memory
+ *   --window mb         size of the out-of-core window in MB (64 by default)
+ *   --metrics           print the measurements of each subiteration (in memory)
+ *   --graph             print the nodes and branches of the skeleton (in memory)
+ *   --checkpoint file   save checkpoints to file and resume from it (in memory)
+ *   --checkpoint-interval s
+ *                       minimum time between two checkpoints in seconds (600 by default)
+ * </pre>
+ *
+ * The output file is a copy of the input with the deleted voxels set to 0.
+ * Bit-packed files and volumes too large for a Java array are always
+ * thinned out of core, which rejects the options marked "in memory": an
+ * out-of-core thinning restarts from the input when it is run again. An 
+ * in-memory thinning stopped after a checkpoint resumes from it when run
+ * again with the same arguments; the time spent saving the checkpoints is
+ * printed at the end.
+ *
+ */
+public final class SkeletonizeCli
+{
+	private SkeletonizeCli()
+	{
+	}
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Thin a volume file.
+	 *
+	 * @param args command line arguments
+	 */
+	public static void main(String[] args)
+	{
+		try
+		{
+			System.exit( run( args ) );
+		}
+		catch( IOException e )
+		{
+			System.err.println( "Error: " + e.getMessage() );
+			System.exit( 1 );
+		}
+	} /* end main */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Thin a volume file.
+	 *
+	 * @param args command line arguments
+	 * @return exit code: 0 on success, 2 on invalid arguments
+	 * @throws IOException if the files cannot be read or written
+	 */
+	static int run(String[] args) throws IOException
+	{
+		OutOfCoreSkeletonizer.Format format = OutOfCoreSkeletonizer.Format.RAW_8BIT;
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean threadsSet = false;
+		boolean subfields = false;
+		boolean surface = false;
+		boolean outOfCore = false;
+		boolean metrics = false;
+		boolean graph = false;
+		Path checkpoint = null;
+		long checkpointInterval = 600;
+		long windowBytes = OutOfCoreSkeletonizer.DEFAULT_WINDOW_BYTES;
+		final String[] positional = new String[ 5 ];
+		int numPositional = 0;
+		final Path input, output;
+		final int width, height, depth;
+		try
+		{
+			for( int i = 0; i < args.length; i++ )
+			{
+				switch( args[ i ] )
+				{
+					case "--format":
+						final String name = args[ ++i ];
+						if( "raw".equals( name ) )
+							format = OutOfCoreSkeletonizer.Format.RAW_8BIT;
+						else if( "bits".equals( name ) )
+							format = OutOfCoreSkeletonizer.Format.BIT_PACKED;
+						else
+							return usage( "unknown format " + name );
+						break;
+					case "--threads":
+						threads = Integer.parseInt( args[ ++i ] );
+						threadsSet = true;
+						break;
+					case "--subfields":
+						subfields = true;
+						break;
+					case "--surface":
+						surface = true;
+						break;
+					case "--out-of-core":
+						outOfCore = true;
+						break;
+					case "--window":
+						windowBytes = Long.parseLong( args[ ++i ] ) << 20;
+						break;
+					case "--metrics":
+						metrics = true;
+						break;
+					case "--graph":
+						graph = true;
+						break;
+					case "--checkpoint":
+						checkpoint = Paths.get( args[ ++i ] );
+						break;
+					case "--checkpoint-interval":
+						checkpointInterval = Long.parseLong( args[ ++i ] );
+						break;
+					default:
+						if( args[ i ].startsWith( "--" ) || numPositional == positional.length )
+							return usage( "unexpected argument " + args[ i ] );
+						positional[ numPositional++ ] = args[ i ];
+				}
+			}
+			if( numPositional < positional.length )
+				return usage( "missing arguments" );
+
+			input = Paths.get( positional[ 0 ] );
+			output = Paths.get( positional[ 1 ] );
+			width = Integer.parseInt( positional[ 2 ] );
+			height = Integer.parseInt( positional[ 3 ] );
+			depth = Integer.parseInt( positional[ 4 ] );
+		}
+		catch( IllegalArgumentException | ArrayIndexOutOfBoundsException e )
+		{
+			return usage( e.getMessage() );
+		}
+		if( width < 1 || height < 1 || depth < 1 )
+			return usage( "invalid volume size " + width + "x" + height + "x" + depth );
+		if( threads < 1 )
+			return usage( "invalid number of threads " + threads );
+		if( windowBytes < 1 )
+			return usage( "invalid window size " + ( windowBytes >> 20 ) );
+		if( checkpointInterval < 0 )
+			return usage( "invalid checkpoint interval " + checkpointInterval );
+
+		final long numVoxels = (long) width * height * depth;
+		final boolean inMemory = !outOfCore && format == OutOfCoreSkeletonizer.Format.RAW_8BIT 
+				&& numVoxels <= Integer.MAX_VALUE - 8;
+		if( !inMemory )
+		{
+			// options of the in-memory engine only
+			final String option = checkpoint != null ? "--checkpoint" : metrics ? "--metrics" 
+					: graph ? "--graph" : subfields ? "--subfields" : threadsSet ? "--threads" : null;
+			if( option != null )
+				return usage( option + " is not supported by the out-of-core thinning" );
+		}
+
+		try
+		{
+			final long start = System.nanoTime();
+			if( !inMemory )
+			{
+				Files.copy( input, output, StandardCopyOption.REPLACE_EXISTING );
+				final OutOfCoreSkeletonizer skeletonizer = new OutOfCoreSkeletonizer( output, format, width, height, depth );
+				skeletonizer.setWindowBytes( windowBytes );
+				skeletonizer.setMedialSurface( surface );
+				skeletonizer.thin();
+			}
+			else
+			{
+				final byte[] voxels = Files.readAllBytes( input );
+				if( voxels.length < numVoxels )
+					throw new IOException( "Volume file too small: " + voxels.length + " bytes for " 
+							+ width + "x" + height + "x" + depth + " voxels" );
+				final byte[] volume = voxels.length == numVoxels ? voxels : Arrays.copyOf( voxels, (int) numVoxels );
+				final Skeletonizer skeletonizer = new Skeletonizer();
+				skeletonizer.setParallelism( threads );
+				skeletonizer.setSubfields( subfields );
+				skeletonizer.setMedialSurface( surface );
+				skeletonizer.setCheckpoint( checkpoint, checkpointInterval * 1000 );
+				final boolean printMetrics = metrics;
+				final long[] checkpoints = new long[ 2 ];
+				if( metrics || checkpoint != null )
+					skeletonizer.setMetricsListener( m -> {
+						if( printMetrics )
+							System.out.println( m );
+						if( m.getCheckpointBytes() > 0 )
+						{
+							checkpoints[ 0 ]++;
+							checkpoints[ 1 ] += m.getCheckpointNanos();
+						}
+					});
+				if( graph )
+					skeletonizer.setGraphListener( g -> System.out.println( "Skeleton graph: " + g ) );
+				skeletonizer.thin( volume, width, height, depth );
+				Files.write( output, volume );
+				if( checkpoint != null )
+					System.out.printf( "Saved %d checkpoints in %.3f s%n", checkpoints[ 0 ], checkpoints[ 1 ] / 1e9 );
+			}
+			System.out.printf( "Thinned %dx%dx%d voxels in %.3f s%n", width, height, depth, 
+					( System.nanoTime() - start ) / 1e9 );
+			return 0;
+		}
+		catch( UncheckedIOException e )
+		{
+			throw e.getCause();
+		}
+	} /* end run */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Print the usage.
+	 *
+	 * @param error error message
+	 * @return exit code of invalid arguments
+	 */
+	private static int usage(String error)
+	{
+		System.err.println( "Error: " + error );
+		System.err.println( "Usage: java -jar skeletonize3d.jar [options] input output width height depth" );
+		System.err.println( "  --format raw|bits   voxel format: 8-bit (default) or bit-packed rows" );
+		System.err.println( "  --threads n         threads searching for deletion candidates (in memory)" );
+		System.err.println( "  --subfields         delete the candidates by parity subfields (in memory)" );
+		System.err.println( "  --surface           compute medial surfaces instead of medial axes" );
+		System.err.println( "  --out-of-core       thin through a window of slices instead of in memory" );
+		System.err.println( "  --window mb         size of the out-of-core window in MB (64 by default)" );
+		System.err.println( "  --metrics           print the measurements of each subiteration (in memory)" );
+		System.err.println( "  --graph             print the nodes and branches of the skeleton (in memory)" );
+		System.err.println( "  --checkpoint file   save checkpoints to file and resume from it (in memory)" );
+		System.err.println( "  --checkpoint-interval s" );
+		System.err.println( "                      minimum time between two checkpoints in seconds (600 by default)" );
+		return 2;
+	} /* end usage */
+
+} /* end SkeletonizeCli */
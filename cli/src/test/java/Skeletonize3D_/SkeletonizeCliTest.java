@@ -0,0 +1,112 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests of the command line front end.
+ */
+class SkeletonizeCliTest
+{
+	@TempDir
+	Path directory;
+
+	@Test
+	void inMemoryAndOutOfCoreGiveSameSkeleton() throws IOException
+	{
+		final int width = 20, height = 16, depth = 12;
+		final byte[] voxels = new byte[ width * height * depth ];
+		for( int z = 2; z < 10; z++ )
+			for( int y = 3; y < 13; y++ )
+				for( int x = 2; x < 18; x++ )
+					voxels[ x + ( y + z * height ) * width ] = 1;
+		final Path input = directory.resolve( "box.raw" );
+		Files.write( input, voxels );
+
+		final Path inMemory = directory.resolve( "memory.raw" );
+		final Path outOfCore = directory.resolve( "file.raw" );
+		assertEquals( 0, SkeletonizeCli.run( new String[]{ input.toString(), inMemory.toString(), "20", "16", "12" } ) );
+		assertEquals( 0, SkeletonizeCli.run( new String[]{ "--out-of-core", "--window", "1", 
+				input.toString(), outOfCore.toString(), "20", "16", "12" } ) );
+
+		final byte[] expected = voxels.clone();
+		new Skeletonizer().thin( expected, width, height, depth );
+		final byte[] memory = Files.readAllBytes( inMemory ), file = Files.readAllBytes( outOfCore );
+		for( int i = 0; i < expected.length; i++ )
+		{
+			assertEquals( expected[ i ] != 0, memory[ i ] != 0, "in memory voxel " + i );
+			assertEquals( expected[ i ] != 0, file[ i ] != 0, "out of core voxel " + i );
+		}
+		assertArrayEquals( voxels, Files.readAllBytes( input ) );
+	}
+
+	@Test
+	void invalidArgumentsAreRejected() throws IOException
+	{
+		assertEquals( 2, SkeletonizeCli.run( new String[]{ "in", "out" } ) );
+		assertEquals( 2, SkeletonizeCli.run( new String[]{ "--format", "tiff", "in", "out", "1", "1", "1" } ) );
+		assertEquals( 2, SkeletonizeCli.run( new String[]{ "in", "out", "0", "1", "1" } ) );
+	}
+
+	@Test
+	void inMemoryOptionsAreRejectedOutOfCore() throws IOException
+	{
+		final Path input = directory.resolve( "cube.raw" );
+		Files.write( input, new byte[ 4 * 4 * 4 ] );
+		final Path output = directory.resolve( "out.raw" );
+		for( String[] options : new String[][]{ { "--checkpoint", directory.resolve( "ckpt" ).toString() }, 
+				{ "--metrics" }, { "--graph" }, { "--subfields" }, { "--threads", "2" } } )
+		{
+			final String[] args = new String[ options.length + 6 ];
+			args[ 0 ] = "--out-of-core";
+			System.arraycopy( options, 0, args, 1, options.length );
+			System.arraycopy( new String[]{ input.toString(), output.toString(), "4", "4", "4" }, 0, 
+					args, options.length + 1, 5 );
+			assertEquals( 2, SkeletonizeCli.run( args ), options[ 0 ] );
+			assertFalse( Files.exists( output ), options[ 0 ] );
+		}
+	}
+
+} /* end SkeletonizeCliTest */
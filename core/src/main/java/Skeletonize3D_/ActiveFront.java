@@ -0,0 +1,174 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+import java.util.Arrays;
+
+/**
+ * Active front of the thinning, i.e. the parts of the volume that have
+ * to be re-examined in a border subiteration.
+ *
+ * <p>
+ * Whether a point is a deletion candidate for a border type only depends
+ * on its 3x3x3 neighborhood. A point whose neighborhood did not change
+ * since the previous subiteration of the same border type (six
+ * subiterations ago) therefore keeps its previous result, so only the
+ * 26-neighbors of the points deleted in the last six subiterations need to
+ * be examined again. They are tracked by word of the {@link BitVolume}
+ * (64 points of a row), with one bit per word and per border type, and
+ * visited in (z, y, x) order, so deletions happen in the same order as in
+ * a full scan and the result is identical.
+ *
+ */
+final class ActiveFront
+{
+	/** volume height */
+	private final int height;
+	/** volume depth */
+	private final int depth;
+	/** number of 64-bit words per row of the volume */
+	private final int wordsPerRow;
+
+	/**
+	 * words changed by the deletions of the last subiteration of each
+	 * border type, one bit per word of the volume
+	 */
+	private final long[][] changed = new long[ 6 ][];
+	/** indexes of the words to examine, in increasing order */
+	private long[] queue = new long[ 1024 ];
+	/** number of words to examine */
+	private int queueSize = 0;
+
+	/**
+	 * Create an empty active front.
+	 *
+	 * @param volume volume being thinned
+	 */
+	ActiveFront(BitVolume volume)
+	{
+		this.height = volume.getHeight();
+		this.depth = volume.getDepth();
+		this.wordsPerRow = volume.getWordsPerRow();
+		final long numWords = (long) wordsPerRow * height * depth;
+		for( int i = 0; i < 6; i++ )
+			changed[ i ] = new long[ (int) ( ( numWords + 63 ) >>> 6 ) ];
+	}
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Record the deletion of a point: the words holding its 26-neighbors
+	 * have to be examined again.
+	 *
+	 * @param currentBorder border type of the current subiteration (1..6)
+	 * @param x x- coordinate
+	 * @param y y- coordinate
+	 * @param z z- coordinate (0-based slice index)
+	 */
+	void delete(int currentBorder, int x, int y, int z)
+	{
+		final long[] words = changed[ currentBorder - 1 ];
+		// points x-1..x+1 are bits x..x+2 of the rows
+		final int first = x >>> 6;
+		final int last = ( x + 2 ) >>> 6;
+		for( int k = Math.max( z - 1, 0 ); k <= Math.min( z + 1, depth - 1 ); k++ )
+			for( int j = Math.max( y - 1, 0 ); j <= Math.min( y + 1, height - 1 ); j++ )
+			{
+				final long row = ( (long) k * height + j ) * wordsPerRow;
+				for( int w = first; w <= last; w++ )
+				{
+					final long index = row + w;
+					words[ (int) ( index >>> 6 ) ] |= 1L << index;
+				}
+			}
+	} /* end delete */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Collect the words to examine in a subiteration, i.e. the words
+	 * changed by the deletions of the last six subiterations. The deletions
+	 * of the previous subiteration of the same border type are forgotten
+	 * afterwards.
+	 *
+	 * @param currentBorder border type of the subiteration (1..6)
+	 * @return number of words to examine
+	 */
+	int collect(int currentBorder)
+	{
+		queueSize = 0;
+		final long[] c0 = changed[ 0 ], c1 = changed[ 1 ], c2 = changed[ 2 ];
+		final long[] c3 = changed[ 3 ], c4 = changed[ 4 ], c5 = changed[ 5 ];
+		for( int i = 0; i < c0.length; i++ )
+		{
+			long bits = c0[ i ] | c1[ i ] | c2[ i ] | c3[ i ] | c4[ i ] | c5[ i ];
+			while( bits != 0 )
+			{
+				if( queueSize == queue.length )
+					queue = Arrays.copyOf( queue, 2 * queue.length );
+				queue[ queueSize++ ] = ( (long) i << 6 ) + Long.numberOfTrailingZeros( bits );
+				bits &= bits - 1;
+			}
+		}
+		Arrays.fill( changed[ currentBorder - 1 ], 0 );
+		return queueSize;
+	} /* end collect */
+
+	/**
+	 * @param border border type (1..6)
+	 * @return words changed by the deletions of the last subiteration of
+	 *         the border type, one bit per word of the volume
+	 */
+	long[] getChanged(int border)
+	{
+		return changed[ border - 1 ];
+	}
+
+	/** @return index in its row of the i-th word to examine */
+	int getWord(int i)
+	{
+		return (int) ( queue[ i ] % wordsPerRow );
+	}
+
+	/** @return y- coordinate of the i-th word to examine */
+	int getY(int i)
+	{
+		return (int) ( queue[ i ] / wordsPerRow % height );
+	}
+
+	/** @return z- coordinate of the i-th word to examine */
+	int getZ(int i)
+	{
+		return (int) ( queue[ i ] / wordsPerRow / height );
+	}
+
+} /* end ActiveFront */
@@ -0,0 +1,245 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Thinning of a stream of volumes, e.g. many small segmented cells, on a
+ * bounded pool of worker threads.
+ *
+ * <p>
+ * The volumes are read one after the other in the calling thread while the
+ * workers thin the previous ones, at most two volumes per worker ahead of
+ * the thinning. All the workers share one copy of a configured 
+ * {@link Skeletonizer} and its immutable look-up tables. The copy has a 
+ * parallelism of 1, so each volume is thinned in its worker thread 
+ * without creating a thread pool, and there is no per-volume setup 
+ * besides the working data of the thinning. The listeners of the 
+ * skeletonizer are called from all the workers, so the skeletonizer is 
+ * best given no progress listener.
+ *
+ */
+public final class BatchSkeletonizer
+{
+	/** source of the volumes to thin */
+	public interface VolumeSource
+	{
+		/**
+		 * Read the next volume. Called from the thread running the batch.
+		 *
+		 * @return next volume, or null when there is no volume left
+		 * @throws IOException if the volume cannot be read
+		 */
+		BitVolume next() throws IOException;
+	}
+
+	/** receiver of the thinned volumes */
+	public interface VolumeSink
+	{
+		/**
+		 * Receive a thinned volume. Called from the worker threads, one
+		 * call at a time, in the order the thinnings end.
+		 *
+		 * @param index index of the volume in the source, from 0
+		 * @param skeleton thinned volume
+		 * @param latencyNanos time from the end of the reading of the volume
+		 *        to the end of its thinning, in nanoseconds
+		 * @throws IOException if the volume cannot be written
+		 */
+		void done(int index, BitVolume skeleton, long latencyNanos) throws IOException;
+	}
+
+	/** thinning engine shared by the workers, with a parallelism of 1 */
+	private final Skeletonizer skeletonizer;
+	/** number of worker threads */
+	private final int workers;
+
+	/** receiver lock, also protecting the measurements */
+	private final Object lock = new Object();
+	/** latency of each thinned volume of the current batch */
+	private long[] latencies;
+	/** number of thinned volumes of the current batch */
+	private int volumes;
+	/** number of voxels of the thinned volumes of the current batch */
+	private long voxels;
+	/** end time of the last thinning of the current batch */
+	private long lastEnd;
+
+	/**
+	 * Create a batch thinning.
+	 *
+	 * @param skeletonizer configured thinning engine, copied with its current
+	 *        options and listeners
+	 * @param workers number of worker threads
+	 * @throws IllegalArgumentException if the skeletonizer saves checkpoints,
+	 *         since the workers would overwrite each other's checkpoints
+	 */
+	public BatchSkeletonizer(Skeletonizer skeletonizer, int workers)
+	{
+		if( workers < 1 )
+			throw new IllegalArgumentException( "Number of workers must be positive: " + workers );
+		if( skeletonizer.getCheckpointFile() != null )
+			throw new IllegalArgumentException( "A batch thinning cannot save checkpoints: " 
+					+ skeletonizer.getCheckpointFile() );
+		this.skeletonizer = skeletonizer.copy();
+		this.skeletonizer.setParallelism( 1 );
+		this.workers = workers;
+	}
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Thin all the volumes of a source. Returns once every volume read has
+	 * been thinned and given to the sink. The first error of the source, 
+	 * the thinning or the sink stops the reading and is thrown once the
+	 * running thinnings are over. A batch thinning runs one batch at a time.
+	 *
+	 * @param source source of the volumes
+	 * @param sink receiver of the thinned volumes
+	 * @return measurements of the batch
+	 * @throws IOException if a volume cannot be read or written
+	 */
+	public synchronized BatchStatistics run(VolumeSource source, VolumeSink sink) throws IOException
+	{
+		latencies = new long[ 1024 ];
+		volumes = 0;
+		voxels = 0;
+		final long start = System.nanoTime();
+		lastEnd = start;
+
+		final ExecutorService pool = Executors.newFixedThreadPool( workers );
+		final Semaphore slots = new Semaphore( 2 * workers );
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+		try
+		{
+			for( int index = 0; failure.get() == null; index++ )
+			{
+				slots.acquire();
+				final BitVolume volume = source.next();
+				if( volume == null )
+					break;
+				final long readEnd = System.nanoTime();
+				final int i = index;
+				pool.execute( () -> {
+					try
+					{
+						skeletonizer.thin( volume );
+						done( sink, i, volume, readEnd );
+					}
+					catch( Throwable t )
+					{
+						failure.compareAndSet( null, t );
+					}
+					finally
+					{
+						slots.release();
+					}
+				});
+			}
+		}
+		catch( InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException( "Batch thinning interrupted" );
+		}
+		finally
+		{
+			pool.shutdown();
+			awaitTermination( pool );
+		}
+
+		final Throwable t = failure.get();
+		if( t instanceof IOException )
+			throw (IOException) t;
+		if( t instanceof RuntimeException )
+			throw (RuntimeException) t;
+		if( t != null )
+			throw (Error) t;
+		return new BatchStatistics( volumes, voxels, lastEnd - start, latencies );
+	} /* end run */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Record a thinned volume and give it to the sink.
+	 *
+	 * @param sink receiver of the thinned volumes
+	 * @param index index of the volume in the source
+	 * @param volume thinned volume
+	 * @param readEnd end time of the reading of the volume
+	 * @throws IOException if the sink cannot write the volume
+	 */
+	private void done(VolumeSink sink, int index, BitVolume volume, long readEnd) throws IOException
+	{
+		synchronized( lock )
+		{
+			final long end = System.nanoTime();
+			if( volumes == latencies.length )
+				latencies = Arrays.copyOf( latencies, 2 * volumes );
+			latencies[ volumes++ ] = end - readEnd;
+			voxels += (long) volume.getWidth() * volume.getHeight() * volume.getDepth();
+			lastEnd = Math.max( lastEnd, end );
+			sink.done( index, volume, end - readEnd );
+		}
+	} /* end done */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Wait for the end of the running thinnings.
+	 *
+	 * @param pool worker pool, shut down
+	 * @throws InterruptedIOException if the wait is interrupted
+	 */
+	private static void awaitTermination(ExecutorService pool) throws InterruptedIOException
+	{
+		try
+		{
+			pool.awaitTermination( Long.MAX_VALUE, TimeUnit.NANOSECONDS );
+		}
+		catch( InterruptedException e )
+		{
+			pool.shutdownNow();
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException( "Batch thinning interrupted" );
+		}
+	} /* end awaitTermination */
+
+} /* end BatchSkeletonizer */
@@ -0,0 +1,125 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+import java.util.Arrays;
+
+/**
+ * Measurements of a batch of thinnings run by a {@link BatchSkeletonizer}:
+ * number of volumes and voxels, elapsed time, throughput and distribution
+ * of the latency of each volume, from the end of its reading to the end of
+ * its thinning.
+ *
+ */
+public final class BatchStatistics
+{
+	/** number of thinned volumes */
+	private final int volumes;
+	/** number of voxels of the thinned volumes */
+	private final long voxels;
+	/** time from the start of the batch to the end of its last thinning, in nanoseconds */
+	private final long elapsedNanos;
+	/** latency of each volume, in nanoseconds, sorted */
+	private final long[] latencies;
+
+	/**
+	 * Create the measurements of a batch.
+	 *
+	 * @param volumes number of thinned volumes
+	 * @param voxels number of voxels of the thinned volumes
+	 * @param elapsedNanos elapsed time in nanoseconds
+	 * @param latencies latency of each volume in nanoseconds, in the first
+	 *        entries (copied)
+	 */
+	BatchStatistics(int volumes, long voxels, long elapsedNanos, long[] latencies)
+	{
+		this.volumes = volumes;
+		this.voxels = voxels;
+		this.elapsedNanos = elapsedNanos;
+		this.latencies = Arrays.copyOf( latencies, volumes );
+		Arrays.sort( this.latencies );
+	}
+
+	/** @return number of thinned volumes */
+	public int getVolumes()
+	{
+		return volumes;
+	}
+
+	/** @return number of voxels of the thinned volumes */
+	public long getVoxels()
+	{
+		return voxels;
+	}
+
+	/** @return time from the start of the batch to the end of its last thinning, in nanoseconds */
+	public long getElapsedNanos()
+	{
+		return elapsedNanos;
+	}
+
+	/** @return number of volumes thinned per second */
+	public double getVolumesPerSecond()
+	{
+		return elapsedNanos > 0 ? volumes * 1e9 / elapsedNanos : 0;
+	}
+
+	/** @return number of voxels thinned per second */
+	public double getVoxelsPerSecond()
+	{
+		return elapsedNanos > 0 ? voxels * 1e9 / elapsedNanos : 0;
+	}
+
+	/**
+	 * @param quantile quantile of the latencies, from 0 (minimum) to 1 (maximum)
+	 * @return latency of the quantile in nanoseconds (0 without volumes)
+	 */
+	public long getLatencyNanos(double quantile)
+	{
+		if( quantile < 0 || quantile > 1 )
+			throw new IllegalArgumentException( "Invalid quantile: " + quantile );
+		return volumes > 0 ? latencies[ (int) Math.round( quantile * ( volumes - 1 ) ) ] : 0;
+	}
+
+	@Override
+	public String toString()
+	{
+		return volumes + " volumes (" + voxels + " voxels) in " + elapsedNanos / 1000000 + " ms: " 
+				+ String.format( "%.1f volumes/s, %.3g voxels/s", getVolumesPerSecond(), getVoxelsPerSecond() ) 
+				+ ", latency median " + getLatencyNanos( 0.5 ) / 1000 + " us, 99% " 
+				+ getLatencyNanos( 0.99 ) / 1000 + " us, max " + getLatencyNanos( 1 ) / 1000 + " us";
+	}
+
+} /* end BatchStatistics */
@@ -0,0 +1,153 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+/**
+ * Axis-aligned box of voxels, given by its inclusive minimum and maximum
+ * coordinates. A box with a minimum greater than its maximum is empty.
+ *
+ */
+public final class BoundingBox
+{
+	/** empty box */
+	static final BoundingBox EMPTY = new BoundingBox( 0, 0, 0, -1, -1, -1 );
+
+	/** smallest coordinates */
+	private final int minX, minY, minZ;
+	/** largest coordinates */
+	private final int maxX, maxY, maxZ;
+
+	/**
+	 * Create a box.
+	 *
+	 * @param minX smallest x- coordinate
+	 * @param minY smallest y- coordinate
+	 * @param minZ smallest z- coordinate
+	 * @param maxX largest x- coordinate
+	 * @param maxY largest y- coordinate
+	 * @param maxZ largest z- coordinate
+	 */
+	public BoundingBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ)
+	{
+		this.minX = minX;
+		this.minY = minY;
+		this.minZ = minZ;
+		this.maxX = maxX;
+		this.maxY = maxY;
+		this.maxZ = maxZ;
+	}
+
+	/** @return true if the box holds no voxel */
+	public boolean isEmpty()
+	{
+		return minX > maxX || minY > maxY || minZ > maxZ;
+	}
+
+	/** @return smallest x- coordinate */
+	public int getMinX()
+	{
+		return minX;
+	}
+
+	/** @return smallest y- coordinate */
+	public int getMinY()
+	{
+		return minY;
+	}
+
+	/** @return smallest z- coordinate */
+	public int getMinZ()
+	{
+		return minZ;
+	}
+
+	/** @return largest x- coordinate */
+	public int getMaxX()
+	{
+		return maxX;
+	}
+
+	/** @return largest y- coordinate */
+	public int getMaxY()
+	{
+		return maxY;
+	}
+
+	/** @return largest z- coordinate */
+	public int getMaxZ()
+	{
+		return maxZ;
+	}
+
+	/**
+	 * @param x x- coordinate
+	 * @param y y- coordinate
+	 * @param z z- coordinate
+	 * @return true if the voxel is in the box
+	 */
+	public boolean contains(int x, int y, int z)
+	{
+		return x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ;
+	}
+
+	/** @return number of voxels in the box */
+	public long getVolume()
+	{
+		return isEmpty() ? 0 : (long) ( maxX - minX + 1 ) * ( maxY - minY + 1 ) * ( maxZ - minZ + 1 );
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if( !( o instanceof BoundingBox ) )
+			return false;
+		final BoundingBox b = (BoundingBox) o;
+		return minX == b.minX && minY == b.minY && minZ == b.minZ 
+				&& maxX == b.maxX && maxY == b.maxY && maxZ == b.maxZ;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return ( ( ( ( minX * 31 + minY ) * 31 + minZ ) * 31 + maxX ) * 31 + maxY ) * 31 + maxZ;
+	}
+
+	@Override
+	public String toString()
+	{
+		return isEmpty() ? "empty" : "(" + minX + "," + minY + "," + minZ + ")-(" + maxX + "," + maxY + "," + maxZ + ")";
+	}
+
+} /* end BoundingBox */
@@ -0,0 +1,115 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+/**
+ * Euler invariance test of [Lee94] on packed neighborhoods, with two table
+ * look-ups.
+ *
+ * <p>
+ * The change of the Euler characteristic when deleting a point is the sum
+ * of the Euler LUT entries of the 8 octants of its 3x3x3 neighborhood (see
+ * {@link Skeletonizer#fillEulerLUT}). The 4 bottom octants (SWB, SEB, NWB,
+ * NEB) only read bits 0..17 of the neighborhood packed as in 
+ * {@link BitVolume#getNeighborhood}, i.e. its bottom and middle slices, 
+ * and the 4 upper octants only read bits 9..26, its middle and top slices.
+ * The sums of the 4 octants of each half are tabulated for all 2^18 
+ * values of its bits (2 x 256 KB, built on first use), so the test needs 
+ * no octant index at all.
+ *
+ */
+public final class EulerLUT
+{
+	/** bits of each half of a neighborhood */
+	private static final int HALF_BITS = 18;
+
+	/**
+	 * Lazy holder of the tables, so they are only built the first time a
+	 * test is requested.
+	 */
+	private static final class Holder
+	{
+		/** sums of the bottom octants, by bits 0..17 */
+		static final byte[] BOTTOM = new byte[ 1 << HALF_BITS ];
+		/** sums of the upper octants, by bits 9..26 */
+		static final byte[] UP = new byte[ 1 << HALF_BITS ];
+		static
+		{
+			final int[] LUT = new int[ 256 ];
+			Skeletonizer.fillEulerLUT( LUT );
+			for( int bits = 0; bits < 1 << HALF_BITS; bits++ )
+			{
+				BOTTOM[ bits ] = (byte) ( LUT[ Skeletonizer.indexOctant( bits,  6, 15,  7, 16,  3, 12,  4 ) ]    // SWB
+						+ LUT[ Skeletonizer.indexOctant( bits,  8,  7, 17, 16,  5,  4, 14 ) ]    // SEB
+						+ LUT[ Skeletonizer.indexOctant( bits,  0,  9,  3, 12,  1, 10,  4 ) ]    // NWB
+						+ LUT[ Skeletonizer.indexOctant( bits,  2,  1, 11, 10,  5,  4, 14 ) ] ); // NEB
+				final int u = bits << 9;
+				UP[ bits ] = (byte) ( LUT[ Skeletonizer.indexOctant( u, 24, 25, 15, 16, 21, 22, 12 ) ]    // SWU
+						+ LUT[ Skeletonizer.indexOctant( u, 26, 23, 17, 14, 25, 22, 16 ) ]    // SEU
+						+ LUT[ Skeletonizer.indexOctant( u, 18, 21,  9, 12, 19, 22, 10 ) ]    // NWU
+						+ LUT[ Skeletonizer.indexOctant( u, 20, 23, 19, 22, 11, 14, 10 ) ] ); // NEU
+			}
+		}
+	}
+
+	private EulerLUT()
+	{
+	}
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Get the change of the Euler characteristic when deleting a point.
+	 *
+	 * @param neighborhood packed 27-pixels neighborhood of the point
+	 * @return sum of the Euler LUT entries of the 8 octants
+	 */
+	public static int getEulerChange(int neighborhood)
+	{
+		return Holder.BOTTOM[ neighborhood & ( ( 1 << HALF_BITS ) - 1 ) ] + Holder.UP[ neighborhood >>> 9 ];
+	} /* end getEulerChange */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Check if a point is Euler invariant (condition 1 in [Lee94]).
+	 *
+	 * @param neighborhood packed 27-pixels neighborhood of the point
+	 * @return true or false if the point is Euler invariant or not
+	 */
+	public static boolean isEulerInvariant(int neighborhood)
+	{
+		return getEulerChange( neighborhood ) == 0;
+	} /* end isEulerInvariant */
+
+} /* end EulerLUT */
@@ -0,0 +1,213 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+/**
+ * Tight bounding box of the foreground of a box of a {@link BitVolume},
+ * kept up to date while points are deleted.
+ *
+ * <p>
+ * The number of foreground points of every column (x), row (y) and slice
+ * (z) of the box is counted once. Each deletion decrements three 
+ * counters, and {@link #shrink()} moves the faces of the box past the 
+ * planes that became empty, so the box costs no pass over the volume
+ * after the first one.
+ *
+ */
+final class ForegroundBounds
+{
+	/** foreground points per x, y and z */
+	private final int[] columns, rows, slices;
+	/** number of foreground points */
+	private long count = 0;
+	/** current box */
+	private int minX, minY, minZ, maxX, maxY, maxZ;
+
+	/**
+	 * Count the foreground of a box.
+	 *
+	 * @param volume binary volume
+	 * @param region box to count, inside the volume
+	 */
+	ForegroundBounds(BitVolume volume, BoundingBox region)
+	{
+		final long[] words = volume.getWords();
+		columns = new int[ volume.getWidth() ];
+		rows = new int[ volume.getHeight() ];
+		slices = new int[ volume.getDepth() ];
+		// words holding the voxels of the box (voxel x is bit x+1 of its row)
+		final int firstWord = ( region.getMinX() + 1 ) >>> 6;
+		final int endWord = ( ( region.getMaxX() + 1 ) >>> 6 ) + 1;
+		for( int z = region.getMinZ(); z <= region.getMaxZ(); z++ )
+			for( int y = region.getMinY(); y <= region.getMaxY(); y++ )
+			{
+				final int row = volume.getRowIndex( y, z );
+				for( int word = firstWord; word < endWord; word++ )
+				{
+					long bits = words[ row + word ] & getMask( region, word );
+					if( bits == 0 )
+						continue;
+					final int n = Long.bitCount( bits );
+					rows[ y ] += n;
+					slices[ z ] += n;
+					count += n;
+					while( bits != 0 )
+					{
+						columns[ ( word << 6 ) + Long.numberOfTrailingZeros( bits ) - 1 ]++;
+						bits &= bits - 1;
+					}
+				}
+			}
+		minX = region.getMinX();
+		minY = region.getMinY();
+		minZ = region.getMinZ();
+		maxX = region.getMaxX();
+		maxY = region.getMaxY();
+		maxZ = region.getMaxZ();
+		shrink();
+	}
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Get the bits of a word of a row that hold voxels of a box in x.
+	 *
+	 * @param region box
+	 * @param word index of the word in the row
+	 * @return mask of the voxels minX..maxX of the word
+	 */
+	static long getMask(BoundingBox region, int word)
+	{
+		// voxel x is bit x+1 of its row
+		final int first = region.getMinX() + 1 - ( word << 6 );
+		final int last = region.getMaxX() + 1 - ( word << 6 );
+		if( first > 63 || last < 0 )
+			return 0;
+		final long low = first <= 0 ? -1L : -1L << first;
+		final long high = last >= 63 ? -1L : ( 1L << ( last + 1 ) ) - 1;
+		return low & high;
+	} /* end getMask */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Record the deletion of a foreground point.
+	 *
+	 * @param x x- coordinate
+	 * @param y y- coordinate
+	 * @param z z- coordinate
+	 */
+	void delete(int x, int y, int z)
+	{
+		columns[ x ]--;
+		rows[ y ]--;
+		slices[ z ]--;
+		count--;
+	} /* end delete */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Shrink the box to the remaining foreground.
+	 */
+	void shrink()
+	{
+		if( count == 0 )
+		{
+			maxX = minX - 1;
+			maxY = minY - 1;
+			maxZ = minZ - 1;
+			return;
+		}
+		while( columns[ minX ] == 0 )
+			minX++;
+		while( columns[ maxX ] == 0 )
+			maxX--;
+		while( rows[ minY ] == 0 )
+			minY++;
+		while( rows[ maxY ] == 0 )
+			maxY--;
+		while( slices[ minZ ] == 0 )
+			minZ++;
+		while( slices[ maxZ ] == 0 )
+			maxZ--;
+	} /* end shrink */
+
+	/** @return number of foreground points */
+	long getCount()
+	{
+		return count;
+	}
+
+	/** @return smallest x- coordinate of the foreground */
+	int getMinX()
+	{
+		return minX;
+	}
+
+	/** @return smallest y- coordinate of the foreground */
+	int getMinY()
+	{
+		return minY;
+	}
+
+	/** @return smallest z- coordinate of the foreground */
+	int getMinZ()
+	{
+		return minZ;
+	}
+
+	/** @return largest x- coordinate of the foreground */
+	int getMaxX()
+	{
+		return maxX;
+	}
+
+	/** @return largest y- coordinate of the foreground */
+	int getMaxY()
+	{
+		return maxY;
+	}
+
+	/** @return largest z- coordinate of the foreground */
+	int getMaxZ()
+	{
+		return maxZ;
+	}
+
+	/** @return bounding box of the foreground */
+	BoundingBox getBox()
+	{
+		return count == 0 ? BoundingBox.EMPTY : new BoundingBox( minX, minY, minZ, maxX, maxY, maxZ );
+	}
+
+} /* end ForegroundBounds */
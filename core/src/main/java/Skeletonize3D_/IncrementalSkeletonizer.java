@@ -0,0 +1,280 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Update of a skeleton after local edits of its segmentation, without
+ * thinning the whole volume again.
+ *
+ * <p>
+ * Each edited box is grown by a {@link #setMargin margin} and the boxes 
+ * that overlap are merged. Each box is then filled with the edited mask,
+ * surrounded by a one-voxel frame of the current skeleton, and thinned 
+ * with {@link Skeletonizer#thin(BitVolume, BoundingBox)}: only the points
+ * of the box are deleted, the frame is only read. The result replaces the
+ * box in the skeleton, whose branches leaving the box are kept as they
+ * are and stay connected to the new ones. If a voxel of the frame could 
+ * then be deleted, because its neighborhood in the box changed, the box
+ * is grown by the margin again and thinned again, so the updated skeleton
+ * is still left unchanged by a thinning of the whole volume. The work and
+ * memory are proportional to the size of the boxes, not of the volume.
+ * A grown box is merged again with the boxes it then overlaps, so the 
+ * returned boxes never overlap and each voxel is thinned by one box.
+ * <p>
+ * Only simple points are deleted, so the topology of the edited objects
+ * is preserved inside the boxes, but the skeleton may differ from the one
+ * of the whole edited mask around the boxes, the more so as the objects
+ * are thicker than the margin. The boxes are thinned by a copy of the 
+ * options of the engine, without its listeners and checkpoint file, 
+ * since they would apply to each box in box coordinates.
+ *
+ */
+public final class IncrementalSkeletonizer
+{
+	/** default number of voxels added around each edited box */
+	public static final int DEFAULT_MARGIN = 8;
+
+	/** thinning engine of the boxes, without listeners nor checkpoints */
+	private final Skeletonizer engine;
+	/** number of voxels added around each edited box */
+	private int margin = DEFAULT_MARGIN;
+
+	/**
+	 * Create an incremental thinning.
+	 *
+	 * @param engine configured thinning engine, whose options are copied
+	 */
+	public IncrementalSkeletonizer(Skeletonizer engine)
+	{
+		this.engine = engine.copy();
+		this.engine.setProgressListener( null );
+		this.engine.setMetricsListener( null );
+		this.engine.setGraphListener( null );
+	}
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Set the number of voxels added around each edited box (8 by default).
+	 * The thinning of an edit can move the skeleton up to about the radius 
+	 * of the edited object away from it, so a margin larger than the 
+	 * thickness of the objects gets closer to the skeleton of the whole
+	 * volume, at the cost of larger boxes.
+	 *
+	 * @param margin number of voxels
+	 */
+	public void setMargin(int margin)
+	{
+		if( margin < 0 )
+			throw new IllegalArgumentException( "margin must not be negative: " + margin );
+		this.margin = margin;
+	} /* end setMargin */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Update a skeleton, in place, after edits of its mask.
+	 *
+	 * @param skeleton skeleton of the mask before the edits, updated
+	 * @param mask edited mask, only read
+	 * @param edits boxes holding all the edited voxels
+	 * @return boxes of the skeleton that were thinned again, grown and merged
+	 */
+	public BoundingBox[] rethin(BitVolume skeleton, BitVolume mask, BoundingBox... edits)
+	{
+		final int width = skeleton.getWidth(), height = skeleton.getHeight(), depth = skeleton.getDepth();
+		if( mask.getWidth() != width || mask.getHeight() != height || mask.getDepth() != depth )
+			throw new IllegalArgumentException( "Mask size " + mask.getWidth() + "x" + mask.getHeight() 
+					+ "x" + mask.getDepth() + " differs from skeleton size " + width + "x" + height + "x" + depth );
+
+		final List<BoundingBox> pending = new ArrayList<>();
+		for( BoundingBox edit : edits )
+		{
+			final BoundingBox region = grow( edit, margin, width, height, depth );
+			if( !region.isEmpty() )
+				pending.add( absorb( region, pending ) );
+		}
+
+		// thin the boxes in order; a box whose frame is no longer thin is
+		// grown, merged with all the boxes it then overlaps, thinned or not,
+		// and thinned again
+		final List<BoundingBox> regions = new ArrayList<>();
+		while( !pending.isEmpty() )
+		{
+			BoundingBox region = pending.remove( 0 );
+			if( rethin( skeleton, mask, region ) )
+			{
+				regions.add( region );
+				continue;
+			}
+			region = grow( region, Math.max( margin, 1 ), width, height, depth );
+			for( BoundingBox merged = null; !region.equals( merged ); )
+			{
+				merged = region;
+				region = absorb( absorb( region, regions ), pending );
+			}
+			pending.add( 0, region );
+		}
+		return regions.toArray( new BoundingBox[ regions.size() ] );
+	} /* end rethin */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Thin a box of a skeleton again from the mask.
+	 *
+	 * @param skeleton skeleton, updated
+	 * @param mask edited mask
+	 * @param region box to thin again, inside the volume
+	 * @return true if no voxel of the frame of the box can be deleted now
+	 */
+	private boolean rethin(BitVolume skeleton, BitVolume mask, BoundingBox region)
+	{
+		// box with its frame of skeleton voxels, clipped to the volume
+		final BoundingBox frame = grow( region, 1, skeleton.getWidth(), skeleton.getHeight(), 
+				skeleton.getDepth() );
+		final int x0 = frame.getMinX(), y0 = frame.getMinY(), z0 = frame.getMinZ();
+		final BitVolume local = new BitVolume( frame.getMaxX() + 1 - x0, frame.getMaxY() + 1 - y0,
+				frame.getMaxZ() + 1 - z0 );
+		final int regionWidth = region.getMaxX() + 1 - region.getMinX();
+		for( int z = z0; z <= frame.getMaxZ(); z++ )
+			for( int y = y0; y <= frame.getMaxY(); y++ )
+			{
+				local.copyRun( skeleton, x0, y, z, 0, y - y0, z - z0, local.getWidth() );
+				if( inside( region, y, z ) )
+					local.copyRun( mask, region.getMinX(), y, z, region.getMinX() - x0, y - y0, z - z0, 
+							regionWidth );
+			}
+
+		engine.thin( local, new BoundingBox( region.getMinX() - x0, region.getMinY() - y0, 
+				region.getMinZ() - z0, region.getMaxX() - x0, region.getMaxY() - y0, region.getMaxZ() - z0 ) );
+
+		for( int z = region.getMinZ(); z <= region.getMaxZ(); z++ )
+			for( int y = region.getMinY(); y <= region.getMaxY(); y++ )
+				skeleton.copyRun( local, region.getMinX() - x0, y - y0, z - z0, region.getMinX(), y, z, 
+						regionWidth );
+
+		// the frame was only read, check that it is still thin
+		final int numBorders = skeleton.getDepth() > 1 ? 6 : 4;
+		for( int z = z0; z <= frame.getMaxZ(); z++ )
+			for( int y = y0; y <= frame.getMaxY(); y++ )
+			{
+				final boolean inside = inside( region, y, z );
+				for( int x = x0; x <= frame.getMaxX(); x++ )
+				{
+					// skip the row of the box
+					if( inside && x == region.getMinX() )
+						x = region.getMaxX() + 1;
+					if( x > frame.getMaxX() || !skeleton.get( x, y, z ) )
+						continue;
+					final int neighborhood = skeleton.getNeighborhood( x, y, z );
+					for( int border = 0; border < numBorders; border++ )
+						if( Skeletonizer.isSimpleBorderPoint( neighborhood, Skeletonizer.BORDER_NEIGHBORS[ border ], 
+								engine.isMedialSurface() ) )
+							return false;
+				}
+			}
+		return true;
+	} /* end rethin */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Grow a box and clip it to a volume.
+	 *
+	 * @param box box to grow
+	 * @param margin number of voxels added on each side
+	 * @param width volume width
+	 * @param height volume height
+	 * @param depth volume depth
+	 * @return grown box, empty if it misses the volume
+	 */
+	private static BoundingBox grow(BoundingBox box, int margin, int width, int height, int depth)
+	{
+		if( box.isEmpty() )
+			return BoundingBox.EMPTY;
+		final BoundingBox grown = new BoundingBox( 
+				Math.max( box.getMinX() - margin, 0 ), Math.max( box.getMinY() - margin, 0 ), 
+				Math.max( box.getMinZ() - margin, 0 ), Math.min( box.getMaxX() + margin, width - 1 ), 
+				Math.min( box.getMaxY() + margin, height - 1 ), Math.min( box.getMaxZ() + margin, depth - 1 ) );
+		return grown.isEmpty() ? BoundingBox.EMPTY : grown;
+	} /* end grow */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Merge a box with the boxes of a list it overlaps, until it overlaps 
+	 * none of them. The merged boxes are removed from the list.
+	 *
+	 * @param region box to merge
+	 * @param boxes boxes that do not overlap each other, updated
+	 * @return merged box
+	 */
+	private static BoundingBox absorb(BoundingBox region, List<BoundingBox> boxes)
+	{
+		for( int i = 0; i < boxes.size(); )
+		{
+			if( overlap( region, boxes.get( i ) ) )
+			{
+				region = union( region, boxes.remove( i ) );
+				i = 0;
+			}
+			else
+				i++;
+		}
+		return region;
+	} /* end absorb */
+
+	/** @return true if a row of a volume crosses a box */
+	private static boolean inside(BoundingBox box, int y, int z)
+	{
+		return y >= box.getMinY() && y <= box.getMaxY() && z >= box.getMinZ() && z <= box.getMaxZ();
+	}
+
+	/** @return true if two non-empty boxes share a voxel */
+	private static boolean overlap(BoundingBox a, BoundingBox b)
+	{
+		return a.getMinX() <= b.getMaxX() && b.getMinX() <= a.getMaxX() 
+				&& a.getMinY() <= b.getMaxY() && b.getMinY() <= a.getMaxY() 
+				&& a.getMinZ() <= b.getMaxZ() && b.getMinZ() <= a.getMaxZ();
+	}
+
+	/** @return smallest box holding two boxes */
+	private static BoundingBox union(BoundingBox a, BoundingBox b)
+	{
+		return new BoundingBox( Math.min( a.getMinX(), b.getMinX() ), Math.min( a.getMinY(), b.getMinY() ),
+				Math.min( a.getMinZ(), b.getMinZ() ), Math.max( a.getMaxX(), b.getMaxX() ), 
+				Math.max( a.getMaxY(), b.getMaxY() ), Math.max( a.getMaxZ(), b.getMaxZ() ) );
+	}
+
+} /* end IncrementalSkeletonizer */
@@ -0,0 +1,236 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash set of non-negative longs, with linear probing and
+ * backward shift deletion, so it allocates nothing per key and needs no
+ * tombstones. The slots are exposed for iteration.
+ *
+ */
+final class LongHashSet
+{
+	/** value of the empty slots (never a key) */
+	static final long EMPTY = -1;
+	/** smallest number of slots */
+	private static final int MIN_CAPACITY = 16;
+
+	/** slots */
+	private long[] keys;
+	/** number of keys */
+	private int size = 0;
+	/** capacity - 1 */
+	private int mask;
+	/** shift of the hash to the slot index */
+	private int shift;
+
+	/**
+	 * Create an empty set.
+	 *
+	 * @param expected expected number of keys
+	 */
+	LongHashSet(int expected)
+	{
+		allocate( capacityFor( expected ) );
+	}
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Add a key.
+	 *
+	 * @param key non-negative key
+	 * @return true if the key was not in the set
+	 */
+	boolean add(long key)
+	{
+		int i = slot( key );
+		for( long k; ( k = keys[ i ] ) != EMPTY; i = ( i + 1 ) & mask )
+			if( k == key )
+				return false;
+		keys[ i ] = key;
+		if( ++size > ( keys.length >>> 1 ) )
+			rehash( capacityFor( size ) );
+		return true;
+	} /* end add */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Check if a key is in the set.
+	 *
+	 * @param key key
+	 * @return true if the key is in the set
+	 */
+	boolean contains(long key)
+	{
+		for( int i = slot( key );; i = ( i + 1 ) & mask )
+		{
+			final long k = keys[ i ];
+			if( k == key )
+				return true;
+			if( k == EMPTY )
+				return false;
+		}
+	} /* end contains */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Remove a key. The following keys of its probe sequence are shifted
+	 * back, so the other slots keep their keys but may change order.
+	 *
+	 * @param key key
+	 * @return true if the key was in the set
+	 */
+	boolean remove(long key)
+	{
+		int i = slot( key );
+		for( long k; ( k = keys[ i ] ) != key; i = ( i + 1 ) & mask )
+			if( k == EMPTY )
+				return false;
+		// move back the keys whose home slot is not between the hole and them
+		for( int j = ( i + 1 ) & mask;; j = ( j + 1 ) & mask )
+		{
+			final long k = keys[ j ];
+			if( k == EMPTY )
+				break;
+			final int home = slot( k );
+			if( ( ( j - home ) & mask ) >= ( ( j - i ) & mask ) )
+			{
+				keys[ i ] = k;
+				i = j;
+			}
+		}
+		keys[ i ] = EMPTY;
+		size--;
+		return true;
+	} /* end remove */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Shrink the slots to the current number of keys, if they are more than
+	 * needed.
+	 */
+	void trim()
+	{
+		final int capacity = capacityFor( size );
+		if( capacity < keys.length )
+			rehash( capacity );
+	} /* end trim */
+
+	/** @return number of keys */
+	int size()
+	{
+		return size;
+	}
+
+	/** @return number of slots */
+	int capacity()
+	{
+		return keys.length;
+	}
+
+	/**
+	 * Get the key of a slot.
+	 *
+	 * @param i slot index, from 0 to {@link #capacity()} - 1
+	 * @return key, or {@link #EMPTY}
+	 */
+	long getSlot(int i)
+	{
+		return keys[ i ];
+	}
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Get the home slot of a key.
+	 *
+	 * @param key key
+	 * @return slot index
+	 */
+	private int slot(long key)
+	{
+		return (int) ( ( key * 0x9E3779B97F4A7C15L ) >>> shift );
+	} /* end slot */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Move the keys to a new number of slots.
+	 *
+	 * @param capacity power of two number of slots
+	 */
+	private void rehash(int capacity)
+	{
+		final long[] old = keys;
+		allocate( capacity );
+		for( long key : old )
+			if( key != EMPTY )
+			{
+				int i = slot( key );
+				while( keys[ i ] != EMPTY )
+					i = ( i + 1 ) & mask;
+				keys[ i ] = key;
+			}
+	} /* end rehash */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Allocate empty slots.
+	 *
+	 * @param capacity power of two number of slots
+	 */
+	private void allocate(int capacity)
+	{
+		keys = new long[ capacity ];
+		Arrays.fill( keys, EMPTY );
+		mask = capacity - 1;
+		shift = 64 - Integer.numberOfTrailingZeros( capacity );
+	} /* end allocate */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Get the number of slots keeping a number of keys at most half full.
+	 *
+	 * @param numKeys number of keys
+	 * @return power of two number of slots
+	 */
+	private static int capacityFor(int numKeys)
+	{
+		if( numKeys > 1 << 29 )
+			throw new IllegalArgumentException( "Too many keys: " + numKeys );
+		return Math.max( MIN_CAPACITY, Integer.highestOneBit( Math.max( 1, 2 * numKeys - 1 ) ) << 1 );
+	} /* end capacityFor */
+
+} /* end LongHashSet */
@@ -0,0 +1,203 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+/**
+ * 3x3x3 window running along the rows of a {@link BitVolume}.
+ *
+ * <p>
+ * The window keeps the index of the current row, so the neighborhood of
+ * any point of the row is read as 9 groups of 3 bits at constant offsets
+ * and packed in 27 bits (bit i holding voxel i of
+ * {@link BitVolume#getNeighborhood}), and the border points of a
+ * whole 64-bit word of the row are found with a few bitwise operations.
+ * The zero halo of the volume makes all of these reads unchecked.
+ *
+ */
+final class NeighborhoodWindow
+{
+	/** volume the window runs on */
+	private final BitVolume volume;
+	/** words of the volume */
+	private final long[] words;
+	/** number of 64-bit words per row */
+	private final int wordsPerRow;
+	/** offset from a row to the same row of the next slice */
+	private final int sliceOffset;
+
+	/** index of the first word of the current row */
+	private int row = 0;
+
+	/**
+	 * Create a window over a volume.
+	 *
+	 * @param volume binary volume
+	 */
+	NeighborhoodWindow(BitVolume volume)
+	{
+		this.volume = volume;
+		this.words = volume.getWords();
+		this.wordsPerRow = volume.getWordsPerRow();
+		this.sliceOffset = volume.getRowOffsets()[ 7 ];
+	}
+
+	/** @return volume the window runs on */
+	BitVolume getVolume()
+	{
+		return volume;
+	}
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Place the window on a row of the volume.
+	 *
+	 * @param y y- coordinate of the row
+	 * @param z z- coordinate of the row (0-based slice index)
+	 */
+	void setRow(int y, int z)
+	{
+		row = volume.getRowIndex( y, z );
+	} /* end setRow */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Get the neighborhood of a point of the current row.
+	 *
+	 * @param x x- coordinate
+	 * @return packed 27-voxels neighborhood
+	 */
+	int getNeighborhood(int x)
+	{
+		return volume.getNeighborhood( row, x );
+	} /* end getNeighborhood */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Get the border points of a given type in one word of the current row,
+	 * i.e. the foreground points whose 6-neighbor in the border direction
+	 * is background. Bit b of the result is the point x = 64 * word + b - 1.
+	 *
+	 * @param word index of the word in the row
+	 * @param currentBorder border type (1..6 for N, S, E, W, U, B)
+	 * @return border points of the word
+	 */
+	long getBorderPoints(int word, int currentBorder)
+	{
+		final long[] words = this.words;
+		final int i = row + word;
+		final long foreground = words[ i ];
+		if( foreground == 0 )
+			return 0;
+		// east and west only shift in the margin bit of the neighboring
+		// word, which is 0, so the ends of the row need no checks
+		final long neighbors;
+		switch( currentBorder )
+		{
+			case 1: // North
+				neighbors = words[ i - wordsPerRow ];
+				break;
+			case 2: // South
+				neighbors = words[ i + wordsPerRow ];
+				break;
+			case 3: // East
+				neighbors = ( foreground >>> 1 ) | ( words[ i + 1 ] << 63 );
+				break;
+			case 4: // West
+				neighbors = ( foreground << 1 ) | ( words[ i - 1 ] >>> 63 );
+				break;
+			case 5: // Up
+				neighbors = words[ i + sliceOffset ];
+				break;
+			default: // Bottom
+				neighbors = words[ i - sliceOffset ];
+				break;
+		}
+		return foreground & ~neighbors;
+	} /* end getBorderPoints */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Get the border points of a given type in a range of words of the 
+	 * current row, word by word as {@link #getBorderPoints(int, int)}. The 
+	 * border direction is chosen once per row, and each direction is a plain
+	 * loop over the words of the row and of its neighbor row (or of the row
+	 * itself shifted by one voxel for east and west), which the JIT compiles
+	 * to SIMD instructions.
+	 *
+	 * @param currentBorder border type (1..6 for N, S, E, W, U, B)
+	 * @param firstWord index of the first word of the range
+	 * @param endWord index after the last word of the range
+	 * @param borderPoints output border points, indexed as the row words
+	 * @return true if the range has at least one border point
+	 */
+	boolean getBorderPoints(int currentBorder, int firstWord, int endWord, long[] borderPoints)
+	{
+		final long[] words = this.words;
+		final int row = this.row;
+		long any = 0;
+		switch( currentBorder )
+		{
+			case 3: // East
+				for( int w = firstWord; w < endWord; w++ )
+				{
+					final long foreground = words[ row + w ];
+					final long points = foreground & ~( ( foreground >>> 1 ) | ( words[ row + w + 1 ] << 63 ) );
+					borderPoints[ w ] = points;
+					any |= points;
+				}
+				break;
+			case 4: // West
+				for( int w = firstWord; w < endWord; w++ )
+				{
+					final long foreground = words[ row + w ];
+					final long points = foreground & ~( ( foreground << 1 ) | ( words[ row + w - 1 ] >>> 63 ) );
+					borderPoints[ w ] = points;
+					any |= points;
+				}
+				break;
+			default: // North, South, Up and Bottom: the same word of another row
+				final int neighbor = row + ( currentBorder == 1 ? -wordsPerRow 
+						: currentBorder == 2 ? wordsPerRow : currentBorder == 5 ? sliceOffset : -sliceOffset );
+				for( int w = firstWord; w < endWord; w++ )
+				{
+					final long points = words[ row + w ] & ~words[ neighbor + w ];
+					borderPoints[ w ] = points;
+					any |= points;
+				}
+				break;
+		}
+		return any != 0;
+	} /* end getBorderPoints */
+
+} /* end NeighborhoodWindow */
@@ -0,0 +1,533 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Out-of-core thinning of a binary volume stored in a file, for volumes
+ * larger than the heap.
+ *
+ * <p>
+ * The file holds the slices one after the other, either as raw 8-bit
+ * voxels (non-zero being foreground) or bit-packed (each row padded to a
+ * whole number of bytes, voxel x being bit x%8 of byte x/8). Only a window
+ * of consecutive slices is kept in memory, as a {@link BitVolume}; slices
+ * are read when the scan reaches them and the deleted voxels are written
+ * back to the file when they leave the window, so memory use is bounded by
+ * the window size and not by the volume size.
+ * <p>
+ * Each border subiteration of [Lee94] is a single pass over the slices:
+ * the candidates of slice z are searched while the candidates of slice
+ * z-2 are re-checked and deleted. The search of slice z reads slices
+ * z-1..z+1 before any deletion of the pass reaches them and the candidates
+ * are re-checked in (z, y, x) order, so the skeleton is identical to the
+ * one of {@link Skeletonizer}. After the first iteration only the slices
+ * next to a slice changed in the last six subiterations are searched, and
+ * a volume that fits in the window is read and written only once.
+ *
+ */
+public class OutOfCoreSkeletonizer
+{
+	/** voxel storage formats of the volume file */
+	public enum Format
+	{
+		/** one byte per voxel, non-zero for foreground */
+		RAW_8BIT,
+		/** one bit per voxel, rows padded to bytes, least significant bit first */
+		BIT_PACKED
+	}
+
+	/** default window size in bytes */
+	public static final long DEFAULT_WINDOW_BYTES = 64L << 20;
+
+	/** volume file */
+	private final Path file;
+	/** voxel format of the file */
+	private final Format format;
+	/** volume width */
+	private final int width;
+	/** volume height */
+	private final int height;
+	/** volume depth */
+	private final int depth;
+	/** number of bytes of a row in the file */
+	private final int rowBytes;
+	/** number of bytes of a slice in the file */
+	private final int sliceBytes;
+
+	/** maximum number of bytes of the slice window */
+	private long windowBytes = DEFAULT_WINDOW_BYTES;
+	/** re-examine only the slices next to changed slices after the first iteration */
+	private boolean activeFront = true;
+	/** keep the surface end points to compute a medial surface instead of medial axes */
+	private boolean medialSurface = false;
+
+	/** open volume file while thinning */
+	private FileChannel channel;
+	/** buffer of one slice of the file */
+	private ByteBuffer buffer;
+	/** slices in memory (slice z of the file is slice z-base of the window) */
+	private BitVolume window;
+	/** first slice of the file in the window */
+	private int base;
+	/** slices of the window read from the file */
+	private boolean[] loaded;
+	/** slices of the window with deletions not yet written to the file */
+	private boolean[] dirty;
+
+	/**
+	 * Create a thinning of a volume file.
+	 *
+	 * @param file volume file, thinned in place
+	 * @param format voxel format of the file
+	 * @param width volume width
+	 * @param height volume height
+	 * @param depth volume depth (number of slices)
+	 */
+	public OutOfCoreSkeletonizer(Path file, Format format, int width, int height, int depth)
+	{
+		if( width < 1 || height < 1 || depth < 1 )
+			throw new IllegalArgumentException( "Invalid volume size: " + width + "x" + height + "x" + depth );
+		this.file = file;
+		this.format = format;
+		this.width = width;
+		this.height = height;
+		this.depth = depth;
+		this.rowBytes = format == Format.RAW_8BIT ? width : ( width + 7 ) >>> 3;
+		final long slice = (long) rowBytes * height;
+		if( slice > Integer.MAX_VALUE - 8 )
+			throw new IllegalArgumentException( "Slice too large: " + width + "x" + height );
+		this.sliceBytes = (int) slice;
+	}
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Set the maximum memory of the slice window (64 MB by default). The
+	 * window always holds at least 5 slices.
+	 *
+	 * @param windowBytes window size in bytes
+	 */
+	public void setWindowBytes(long windowBytes)
+	{
+		if( windowBytes < 1 )
+			throw new IllegalArgumentException( "window size must be positive: " + windowBytes );
+		this.windowBytes = windowBytes;
+	} /* end setWindowBytes */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Enable or disable the active front (enabled by default). When enabled,
+	 * the iterations after the first one skip the slices whose neighborhood
+	 * did not change since the previous subiteration of the same border
+	 * type. The result is the same.
+	 *
+	 * @param activeFront true to examine only the changed slices
+	 */
+	public void setActiveFront(boolean activeFront)
+	{
+		this.activeFront = activeFront;
+	} /* end setActiveFront */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Enable or disable the medial surface thinning (disabled by default).
+	 *
+	 * @param medialSurface true to compute medial surfaces
+	 * @see Skeletonizer#setMedialSurface
+	 */
+	public void setMedialSurface(boolean medialSurface)
+	{
+		this.medialSurface = medialSurface;
+	} /* end setMedialSurface */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Thin the volume file in place.
+	 *
+	 * @throws IOException if the file cannot be read or written, or is
+	 * smaller than the volume
+	 */
+	public void thin() throws IOException
+	{
+		try( FileChannel channel = FileChannel.open( file, StandardOpenOption.READ, StandardOpenOption.WRITE ) )
+		{
+			if( channel.size() < (long) sliceBytes * depth )
+				throw new EOFException( "Volume file too small: " + channel.size() + " bytes for " 
+						+ width + "x" + height + "x" + depth + " voxels" );
+			this.channel = channel;
+			this.buffer = ByteBuffer.allocate( sliceBytes );
+			
+			// slices of the window, the 2 halo slices included in the budget
+			final BitVolume probe = new BitVolume( width, height, 1 );
+			final long bytesPerSlice = 8L * probe.getWordsPerRow() * ( height + 2 );
+			final int windowSlices = (int) Math.max( 5, Math.min( depth, windowBytes / bytesPerSlice - 2 ) );
+			this.window = new BitVolume( width, height, windowSlices );
+			this.base = 0;
+			this.loaded = new boolean[ windowSlices ];
+			this.dirty = new boolean[ windowSlices ];
+			
+			computeThinImage();
+			flush();
+		}
+		finally
+		{
+			this.channel = null;
+			this.buffer = null;
+			this.window = null;
+			this.loaded = null;
+			this.dirty = null;
+		}
+	} /* end thin */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Thin the volume through the slice window.
+	 *
+	 * @throws IOException if the file cannot be read or written
+	 */
+	private void computeThinImage() throws IOException
+	{
+		// slices with deletions in the last subiteration of each border type
+		final boolean[][] changed = new boolean[ 6 ][ depth ];
+		final boolean[] scan = new boolean[ depth ];
+
+		int iter = 1;
+		// Loop through the image several times until there is no change.
+		int unchangedBorders = 0;
+		while( unchangedBorders < 6 )  // loop until no change for all the six border types
+		{
+			unchangedBorders = 0;
+			for( int currentBorder = 1; currentBorder <= 6; currentBorder++ )
+			{
+				// Up and bottom borders only exist in 3D images
+				if( currentBorder > 4 && depth <= 1 )
+				{
+					unchangedBorders++;
+					continue;
+				}
+
+				// slices to search: all of them, or the neighbors of the
+				// slices changed since the last subiteration of this border
+				for( int z = 0; z < depth; z++ )
+				{
+					boolean s = iter == 1 || !activeFront;
+					for( int b = 0; b < 6 && !s; b++ )
+						for( int k = Math.max( 0, z - 1 ); k <= Math.min( depth - 1, z + 1 ) && !s; k++ )
+							s = changed[ b ][ k ];
+					scan[ z ] = s;
+				}
+				Arrays.fill( changed[ currentBorder - 1 ], false );
+
+				if( !thinBorder( currentBorder, scan, changed[ currentBorder - 1 ] ) )
+					unchangedBorders++;
+			}
+			iter++;
+		}
+	} /* end computeThinImage */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Delete the simple border points of one border type in a single pass
+	 * over the slices, re-checking the candidates two slices behind the
+	 * search.
+	 *
+	 * @param currentBorder border type of the subiteration
+	 * @param scan slices to search for candidates
+	 * @param changed output flags of the slices with deleted points
+	 * @return true if at least one point was deleted
+	 * @throws IOException if the file cannot be read or written
+	 */
+	private boolean thinBorder(int currentBorder, boolean[] scan, boolean[] changed) throws IOException
+	{
+		final int borderNeighbor = Skeletonizer.BORDER_NEIGHBORS[ currentBorder - 1 ];
+		final int wordsPerRow = window.getWordsPerRow();
+		final NeighborhoodWindow neighborhoods = new NeighborhoodWindow( window );
+		final long[] rowBorderPoints = new long[ wordsPerRow ];
+
+		// candidates of the last 3 searched slices, one bit per point as
+		// in the rows of the window
+		final long[][] candidates = new long[ 3 ][ height * wordsPerRow ];
+		final boolean[] hasCandidates = new boolean[ 3 ];
+
+		boolean noChange = true;
+		for( int z = 0; z < depth + 2; z++ )
+		{
+			// search slice z
+			if( z < depth )
+			{
+				final long[] slice = candidates[ z % 3 ];
+				Arrays.fill( slice, 0 );
+				hasCandidates[ z % 3 ] = false;
+				if( scan[ z ] )
+				{
+					// keep the slices re-checked next in the window as well
+					ensureWindow( z - 3, z + 1 );
+					for( int y = 0; y < height; y++ )
+					{
+						neighborhoods.setRow( y, z - base );
+						if( !neighborhoods.getBorderPoints( currentBorder, 0, wordsPerRow, rowBorderPoints ) )
+							continue;
+						for( int word = 0; word < wordsPerRow; word++ )
+						{
+							long borderPoints = rowBorderPoints[ word ];
+							long points = 0;
+							while( borderPoints != 0 )
+							{
+								final long bit = borderPoints & -borderPoints;
+								borderPoints &= borderPoints - 1;
+								final int x = ( word << 6 ) + Long.numberOfTrailingZeros( bit ) - 1;
+								if( Skeletonizer.isSimpleBorderPoint( 
+										neighborhoods.getNeighborhood( x ), borderNeighbor, medialSurface ) )
+									points |= bit;
+							}
+							slice[ y * wordsPerRow + word ] = points;
+							hasCandidates[ z % 3 ] |= points != 0;
+						}
+					}
+				}
+			}
+
+			// sequential re-checking of the candidates of slice z-2, whose
+			// deletions do not reach slice z
+			final int c = z - 2;
+			if( c >= 0 && hasCandidates[ c % 3 ] )
+			{
+				ensureWindow( c - 1, c + 1 );
+				final long[] slice = candidates[ c % 3 ];
+				for( int y = 0; y < height; y++ )
+					for( int word = 0; word < wordsPerRow; word++ )
+						for( long points = slice[ y * wordsPerRow + word ]; points != 0; points &= points - 1 )
+						{
+							final int x = ( word << 6 ) + Long.numberOfTrailingZeros( points ) - 1;
+							if( SimplePointLUT.isSimple( SimplePointLUT.getConfiguration( 
+									window.getNeighborhood( x, y, c - base ) ) ) )
+							{
+								window.set( x, y, c - base, false );
+								dirty[ c - base ] = true;
+								changed[ c ] = true;
+								noChange = false;
+							}
+						}
+			}
+		}
+		return !noChange;
+	} /* end thinBorder */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Make sure a range of slices is in the window, moving the window
+	 * forward (or back to the start) if needed. Slices out of the volume
+	 * stay background.
+	 *
+	 * @param zMin first slice of the range
+	 * @param zMax last slice of the range
+	 * @throws IOException if the file cannot be read or written
+	 */
+	private void ensureWindow(int zMin, int zMax) throws IOException
+	{
+		zMin = Math.max( zMin, 0 );
+		zMax = Math.min( zMax, depth - 1 );
+		if( zMin < base || zMax >= base + loaded.length )
+			moveWindow( zMin );
+		for( int z = zMin; z <= zMax; z++ )
+			if( !loaded[ z - base ] )
+			{
+				readSlice( z );
+				loaded[ z - base ] = true;
+			}
+	} /* end ensureWindow */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Move the window so it starts at a given slice. The slices leaving
+	 * the window are written to the file and the slices kept by a forward
+	 * move are shifted in memory instead of being read again.
+	 *
+	 * @param newBase first slice of the window after the move
+	 * @throws IOException if the file cannot be written
+	 */
+	private void moveWindow(int newBase) throws IOException
+	{
+		final int size = loaded.length;
+		final int shift = newBase - base;
+		if( shift <= 0 || shift >= size )
+		{
+			flush();
+			window.clear();
+			Arrays.fill( loaded, false );
+			base = newBase;
+			return;
+		}
+		for( int i = 0; i < shift; i++ )
+			if( dirty[ i ] )
+				writeSlice( base + i );
+
+		// slices are contiguous in the window words, halo rows included
+		final long[] words = window.getWords();
+		final int first = window.getRowIndex( -1, 0 );
+		final int sliceWords = window.getRowIndex( -1, 1 ) - first;
+		System.arraycopy( words, first + shift * sliceWords, words, first, ( size - shift ) * sliceWords );
+		Arrays.fill( words, first + ( size - shift ) * sliceWords, first + size * sliceWords, 0 );
+		System.arraycopy( loaded, shift, loaded, 0, size - shift );
+		Arrays.fill( loaded, size - shift, size, false );
+		System.arraycopy( dirty, shift, dirty, 0, size - shift );
+		Arrays.fill( dirty, size - shift, size, false );
+		base = newBase;
+	} /* end moveWindow */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Write the deletions of the window slices to the file.
+	 *
+	 * @throws IOException if the file cannot be read or written
+	 */
+	private void flush() throws IOException
+	{
+		for( int i = 0; i < dirty.length; i++ )
+			if( dirty[ i ] )
+			{
+				writeSlice( base + i );
+				dirty[ i ] = false;
+			}
+	} /* end flush */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Read a slice of the file into the window.
+	 *
+	 * @param z slice index
+	 * @throws IOException if the file cannot be read
+	 */
+	private void readSlice(int z) throws IOException
+	{
+		read( z );
+		final long[] words = window.getWords();
+		final byte[] bytes = buffer.array();
+		for( int y = 0; y < height; y++ )
+		{
+			final int row = window.getRowIndex( y, z - base );
+			final int offset = y * rowBytes;
+			if( format == Format.RAW_8BIT )
+			{
+				for( int x = 0; x < width; x++ )
+					if( bytes[ offset + x ] != 0 )
+						words[ row + ( ( x + 1 ) >>> 6 ) ] |= 1L << ( x + 1 );
+			}
+			else
+			{
+				for( int i = 0; i < rowBytes; i++ )
+				{
+					final long bits = bytes[ offset + i ] & ( i == rowBytes - 1 ? lastByteMask() : 0xFF );
+					final int b = ( i << 3 ) + 1;
+					words[ row + ( b >>> 6 ) ] |= bits << b;
+					if( ( b & 63 ) > 56 )
+						words[ row + ( b >>> 6 ) + 1 ] |= bits >>> ( 64 - ( b & 63 ) );
+				}
+			}
+		}
+	} /* end readSlice */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Clear in the file the voxels of a slice deleted in the window.
+	 *
+	 * @param z slice index
+	 * @throws IOException if the file cannot be read or written
+	 */
+	private void writeSlice(int z) throws IOException
+	{
+		read( z );
+		final long[] words = window.getWords();
+		final byte[] bytes = buffer.array();
+		for( int y = 0; y < height; y++ )
+		{
+			final int row = window.getRowIndex( y, z - base );
+			final int offset = y * rowBytes;
+			if( format == Format.RAW_8BIT )
+			{
+				for( int x = 0; x < width; x++ )
+					if( ( words[ row + ( ( x + 1 ) >>> 6 ) ] & ( 1L << ( x + 1 ) ) ) == 0 )
+						bytes[ offset + x ] = 0;
+			}
+			else
+			{
+				// padding bits of the last byte of a row are kept
+				for( int i = 0; i < rowBytes; i++ )
+				{
+					final int b = ( i << 3 ) + 1;
+					long bits = words[ row + ( b >>> 6 ) ] >>> b;
+					if( ( b & 63 ) > 56 )
+						bits |= words[ row + ( b >>> 6 ) + 1 ] << ( 64 - ( b & 63 ) );
+					final int mask = i == rowBytes - 1 ? lastByteMask() : 0xFF;
+					bytes[ offset + i ] = (byte) ( ( bytes[ offset + i ] & ~mask ) | ( bits & mask ) );
+				}
+			}
+		}
+		buffer.clear();
+		final long position = (long) z * sliceBytes;
+		while( buffer.hasRemaining() )
+			channel.write( buffer, position + buffer.position() );
+	} /* end writeSlice */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Read a slice of the file into the slice buffer.
+	 *
+	 * @param z slice index
+	 * @throws IOException if the file cannot be read
+	 */
+	private void read(int z) throws IOException
+	{
+		buffer.clear();
+		final long position = (long) z * sliceBytes;
+		while( buffer.hasRemaining() )
+			if( channel.read( buffer, position + buffer.position() ) < 0 )
+				throw new EOFException( "Unexpected end of volume file at slice " + z );
+	} /* end read */
+
+	/** @return mask of the voxel bits of the last byte of a bit-packed row */
+	private int lastByteMask()
+	{
+		return 0xFF >>> ( ( 8 - ( width & 7 ) ) & 7 );
+	}
+
+} /* end OutOfCoreSkeletonizer */
@@ -0,0 +1,124 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+import java.util.Arrays;
+
+/**
+ * Growable list of 3D points stored as (x, y, z) triples in a primitive
+ * array, so collecting thinning candidates allocates nothing per point.
+ *
+ */
+final class PointList
+{
+	/** point coordinates, 3 ints per point */
+	private int[] coordinates;
+	/** number of points in the list */
+	private int size = 0;
+
+	/**
+	 * Create an empty list.
+	 */
+	PointList()
+	{
+		this.coordinates = new int[ 3 * 1024 ];
+	}
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Append a point to the list.
+	 *
+	 * @param x x- coordinate
+	 * @param y y- coordinate
+	 * @param z z- coordinate
+	 */
+	void add(int x, int y, int z)
+	{
+		final int i = 3 * size;
+		if( i + 3 > coordinates.length )
+			coordinates = Arrays.copyOf( coordinates, 2 * coordinates.length );
+		coordinates[ i     ] = x;
+		coordinates[ i + 1 ] = y;
+		coordinates[ i + 2 ] = z;
+		size++;
+	} /* end add */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Append all points of another list, in order.
+	 *
+	 * @param points points to append
+	 */
+	void addAll(PointList points)
+	{
+		final int n = 3 * size + 3 * points.size;
+		if( n > coordinates.length )
+			coordinates = Arrays.copyOf( coordinates, Math.max( n, 2 * coordinates.length ) );
+		System.arraycopy( points.coordinates, 0, coordinates, 3 * size, 3 * points.size );
+		size += points.size;
+	} /* end addAll */
+
+	/** @return number of points in the list */
+	int size()
+	{
+		return size;
+	}
+
+	/** @return x- coordinate of the i-th point */
+	int getX(int i)
+	{
+		return coordinates[ 3 * i ];
+	}
+
+	/** @return y- coordinate of the i-th point */
+	int getY(int i)
+	{
+		return coordinates[ 3 * i + 1 ];
+	}
+
+	/** @return z- coordinate of the i-th point */
+	int getZ(int i)
+	{
+		return coordinates[ 3 * i + 2 ];
+	}
+
+	/**
+	 * Remove all points, keeping the allocated storage.
+	 */
+	void clear()
+	{
+		size = 0;
+	}
+
+} /* end PointList */
@@ -0,0 +1,336 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Look-up table of simple points.
+ *
+ * <p>
+ * Stores one bit for each of the 2^26 possible configurations of the
+ * 26-neighborhood of a point (the center pixel is excluded, see [Lee94]),
+ * set when the point is simple, i.e. when its removal does not change the
+ * number of connected objects in the neighborhood. The table (8 MB) is
+ * built once on first use and shared by all instances. If a table resource
+ * is bundled next to this class it is loaded instead of being generated;
+ * a resource that is truncated or disagrees with the generation on a 
+ * sample of its words is rejected with an error rather than replaced, so
+ * a broken build is noticed. The whole table is checked by 
+ * {@link #verify()}.
+ * <p>
+ * Configurations are indexed as in {@link BitVolume#getNeighborhood}
+ * with the center pixel removed: bit i holds neighbor i for i = 0..12 and
+ * neighbor i+1 for i = 13..25.
+ *
+ */
+public final class SimplePointLUT
+{
+	/** number of possible 26-neighborhood configurations */
+	public static final int NUM_CONFIGURATIONS = 1 << 26;
+	/** name of the (optional) bundled table resource, gzipped big-endian longs */
+	public static final String RESOURCE_NAME = "simplePointLUT.bin.gz";
+
+	/** the loaded words of index multiple of this stride are checked against the generation */
+	private static final int CHECK_STRIDE = 509;
+
+	/** 26-adjacency of the neighbors inside the 3x3x3 cube (center excluded) */
+	private static final int[] ADJACENCY = createAdjacency();
+
+	/**
+	 * Lazy holder of the table, so it is only built (or loaded) the first
+	 * time a simple point test is requested.
+	 */
+	private static final class Holder
+	{
+		static final long[] TABLE = load();
+	}
+
+	private SimplePointLUT()
+	{
+	}
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Check if a point is simple from its 26-neighborhood configuration.
+	 *
+	 * @param configuration 26-bit neighborhood configuration (center excluded)
+	 * @return true or false if the point is simple or not
+	 */
+	public static boolean isSimple(int configuration)
+	{
+		return ( Holder.TABLE[ configuration >>> 6 ] & ( 1L << configuration ) ) != 0;
+	} /* end isSimple */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Check if a point is simple from its 27-pixels neighborhood.
+	 *
+	 * @param neighbors neighbor pixels of the point
+	 * @return true or false if the point is simple or not
+	 */
+	public static boolean isSimplePoint(byte[] neighbors)
+	{
+		return isSimple( getConfiguration( neighbors ) );
+	} /* end isSimplePoint */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Pack a 27-pixels neighborhood into its 26-bit configuration index.
+	 *
+	 * @param neighbors neighbor pixels of the point
+	 * @return configuration index (center pixel ignored)
+	 */
+	public static int getConfiguration(byte[] neighbors)
+	{
+		int configuration = 0;
+		for( int i = 0; i < 13; i++ )
+			if( neighbors[ i ] == 1 )
+				configuration |= 1 << i;
+		for( int i = 14; i < 27; i++ )
+			if( neighbors[ i ] == 1 )
+				configuration |= 1 << ( i - 1 );
+		return configuration;
+	} /* end getConfiguration */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Drop the center pixel of a neighborhood packed in 27 bits (bit i
+	 * holding pixel i of {@link BitVolume#getNeighborhood}).
+	 *
+	 * @param neighborhood packed 27-pixels neighborhood
+	 * @return configuration index (center pixel ignored)
+	 */
+	public static int getConfiguration(int neighborhood)
+	{
+		return ( neighborhood & 0x1FFF ) | ( neighborhood >>> 14 ) << 13;
+	} /* end getConfiguration */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Load the table from the bundled resource, or generate it if there is
+	 * no resource.
+	 *
+	 * @return bit-packed simple point table
+	 * @throws IllegalStateException if the resource is not a valid table
+	 */
+	private static long[] load()
+	{
+		final InputStream is = SimplePointLUT.class.getResourceAsStream( RESOURCE_NAME );
+		if( is == null )
+			return generate();
+		try
+		{
+			return read( is );
+		}
+		catch( IOException e )
+		{
+			throw new IllegalStateException( "Invalid simple point table resource " + RESOURCE_NAME 
+					+ ", regenerate it with SimplePointLUT.main", e );
+		}
+	} /* end load */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Read a table written by {@link #write}, and check every 
+	 * {@link #CHECK_STRIDE}-th word against the generation.
+	 *
+	 * @param is input stream (closed on return)
+	 * @return bit-packed simple point table
+	 * @throws IOException if the stream is not a complete table or a 
+	 *         checked word is wrong
+	 */
+	static long[] read(InputStream is) throws IOException
+	{
+		final long[] table = new long[ NUM_CONFIGURATIONS >>> 6 ];
+		try( DataInputStream in = new DataInputStream(
+				new BufferedInputStream( new GZIPInputStream( is ) ) ) )
+		{
+			for( int i = 0; i < table.length; i++ )
+				table[ i ] = in.readLong();
+			if( in.read() != -1 )
+				throw new IOException( "Simple point table longer than " + table.length + " words" );
+		}
+		for( int w = 0; w < table.length; w += CHECK_STRIDE )
+			if( table[ w ] != generateWord( w ) )
+				throw new IOException( "Wrong simple point table word " + w );
+		return table;
+	} /* end read */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Write the table so it can be bundled as {@link #RESOURCE_NAME}.
+	 *
+	 * @param path output file path
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void write(String path) throws IOException
+	{
+		final long[] table = Holder.TABLE;
+		try( DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream( new GZIPOutputStream( new FileOutputStream( path ) ) ) ) )
+		{
+			for( int i = 0; i < table.length; i++ )
+				out.writeLong( table[ i ] );
+		}
+	} /* end write */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Generate the table. Each configuration is labeled with a bit-parallel
+	 * flood fill: the point is simple when the 26-connected component of
+	 * the lowest neighbor covers all neighbors (0 or 1 objects).
+	 *
+	 * @return bit-packed simple point table
+	 */
+	static long[] generate()
+	{
+		final long[] table = new long[ NUM_CONFIGURATIONS >>> 6 ];
+		IntStream.range( 0, table.length ).parallel().forEach( w -> table[ w ] = generateWord( w ) );
+		return table;
+	} /* end generate */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Generate a word of the table.
+	 *
+	 * @param w word index
+	 * @return simple point bits of configurations 64*w..64*w+63
+	 */
+	private static long generateWord(int w)
+	{
+		long word = 0;
+		final int base = w << 6;
+		for( int b = 0; b < 64; b++ )
+			if( countObjects( base | b ) <= 1 )
+				word |= 1L << b;
+		return word;
+	} /* end generateWord */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Count the 26-connected objects in a neighborhood configuration,
+	 * stopping at 2.
+	 *
+	 * @param configuration 26-bit neighborhood configuration
+	 * @return 0, 1 or 2 (two or more objects)
+	 */
+	private static int countObjects(int configuration)
+	{
+		if( configuration == 0 )
+			return 0;
+		int object = configuration & -configuration;
+		int front = object;
+		while( front != 0 )
+		{
+			int grown = 0;
+			for( int f = front; f != 0; f &= f - 1 )
+				grown |= ADJACENCY[ Integer.numberOfTrailingZeros( f ) ];
+			front = grown & configuration & ~object;
+			object |= front;
+		}
+		return object == configuration ? 1 : 2;
+	} /* end countObjects */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Create the 26-adjacency masks of the neighbors in the 3x3x3 cube.
+	 *
+	 * @return adjacency mask of every configuration bit
+	 */
+	private static int[] createAdjacency()
+	{
+		final int[] adjacency = new int[ 26 ];
+		for( int i = 0; i < 26; i++ )
+		{
+			final int p = i < 13 ? i : i + 1;
+			for( int j = 0; j < 26; j++ )
+			{
+				final int q = j < 13 ? j : j + 1;
+				if( i != j
+						&& Math.abs( p % 3 - q % 3 ) <= 1
+						&& Math.abs( p / 3 % 3 - q / 3 % 3 ) <= 1
+						&& Math.abs( p / 9 - q / 9 ) <= 1 )
+					adjacency[ i ] |= 1 << j;
+			}
+		}
+		return adjacency;
+	} /* end createAdjacency */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Verify the table against the octree labeling of [Lee94] on every
+	 * neighborhood configuration.
+	 *
+	 * @return number of configurations where table and labeling disagree
+	 */
+	public static long verify()
+	{
+		return IntStream.range( 0, NUM_CONFIGURATIONS ).parallel().filter( c -> {
+			final byte[] neighbors = new byte[ 27 ];
+			for( int i = 0; i < 26; i++ )
+				if( ( c & ( 1 << i ) ) != 0 )
+					neighbors[ i < 13 ? i : i + 1 ] = 1;
+			neighbors[ 13 ] = 1;
+			return isSimple( c ) != Skeletonizer.isSimplePoint( neighbors );
+		}).count();
+	} /* end verify */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Verify the table and optionally write it to a file to be bundled.
+	 *
+	 * @param args optional output path of the table resource
+	 * @throws IOException if the table cannot be written
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		final long mismatches = verify();
+		System.out.println( "Simple point LUT: " + mismatches + " mismatches against octree labeling." );
+		if( args.length > 0 && mismatches == 0 )
+			write( args[ 0 ] );
+		if( mismatches != 0 )
+			System.exit( 1 );
+	} /* end main */
+
+} /* end SimplePointLUT */
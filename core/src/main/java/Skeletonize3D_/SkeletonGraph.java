@@ -0,0 +1,611 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+import java.util.Arrays;
+
+/**
+ * Graph of a skeleton: its nodes (end points, junctions, isolated points)
+ * and the branches between them, with their voxel paths and lengths, all
+ * stored in primitive arrays.
+ * <p>
+ * The skeleton voxels are classified by their number of 26-neighbors, as
+ * in the end point test of the thinning: 0 for an isolated point, 1 for
+ * an end point, 2 for a branch (slab) voxel and more for a junction. 
+ * Adjacent junction voxels are merged into a single node. Each chain of
+ * slab voxels between two nodes is an edge, whose length is the sum of 
+ * the Euclidean steps from the voxel of its source node to the voxel of 
+ * its target node. A closed curve without node gets a node of type 
+ * {@link #CYCLE} on one of its voxels.
+ * <p>
+ * The graph is extracted in one streaming pass over the foreground words
+ * of the volume, in (z, y, x) order, followed by the tracing of the chains,
+ * and takes about 30 bytes per skeleton voxel.
+ *
+ */
+public final class SkeletonGraph
+{
+	/** type of a node without neighbor */
+	public static final int ISOLATED = 0;
+	/** type of a node with a single neighbor */
+	public static final int END_POINT = 1;
+	/** type of a node placed on a closed curve without other node */
+	public static final int CYCLE = 2;
+	/** type of a node made of voxels with more than 2 neighbors */
+	public static final int JUNCTION = 3;
+
+	/** Euclidean length of the step to each bit of a packed neighborhood */
+	private static final double[] STEP_LENGTH = new double[ 27 ];
+	static
+	{
+		for( int bit = 0; bit < 27; bit++ )
+		{
+			final int dx = bit % 3 - 1;
+			final int dy = bit / 3 % 3 - 1;
+			final int dz = bit / 9 - 1;
+			STEP_LENGTH[ bit ] = Math.sqrt( dx * dx + dy * dy + dz * dz );
+		}
+	}
+
+	/** type of each node */
+	private final byte[] nodeTypes;
+	/** number of edge ends of each node */
+	private final int[] nodeDegrees;
+	/** first voxel of each node, and total number of node voxels at the end */
+	private final int[] nodeVoxelStarts;
+	/** coordinates of the node voxels, 3 ints per voxel */
+	private final int[] nodeVoxels;
+	/** source node of each edge */
+	private final int[] edgeSources;
+	/** target node of each edge */
+	private final int[] edgeTargets;
+	/** length of each edge */
+	private final double[] edgeLengths;
+	/** first voxel of each edge, and total number of edge voxels at the end */
+	private final int[] edgeVoxelStarts;
+	/** coordinates of the slab voxels of the edges, 3 ints per voxel, from source to target */
+	private final int[] edgeVoxels;
+
+	private SkeletonGraph(byte[] nodeTypes, int[] nodeDegrees, int[] nodeVoxelStarts, int[] nodeVoxels,
+			int[] edgeSources, int[] edgeTargets, double[] edgeLengths, int[] edgeVoxelStarts, int[] edgeVoxels)
+	{
+		this.nodeTypes = nodeTypes;
+		this.nodeDegrees = nodeDegrees;
+		this.nodeVoxelStarts = nodeVoxelStarts;
+		this.nodeVoxels = nodeVoxels;
+		this.edgeSources = edgeSources;
+		this.edgeTargets = edgeTargets;
+		this.edgeLengths = edgeLengths;
+		this.edgeVoxelStarts = edgeVoxelStarts;
+		this.edgeVoxels = edgeVoxels;
+	}
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Extract the graph of a skeleton.
+	 *
+	 * @param skeleton thinned volume
+	 * @return graph of the skeleton
+	 * @throws IllegalArgumentException if the skeleton has too many voxels
+	 */
+	public static SkeletonGraph extract(BitVolume skeleton)
+	{
+		return new Builder( skeleton ).build();
+	} /* end extract */
+
+	/** @return number of nodes */
+	public int getNodeCount()
+	{
+		return nodeTypes.length;
+	}
+
+	/**
+	 * @param node node index
+	 * @return type of the node ({@link #ISOLATED}, {@link #END_POINT}, {@link #CYCLE} or {@link #JUNCTION})
+	 */
+	public int getNodeType(int node)
+	{
+		return nodeTypes[ node ];
+	}
+
+	/**
+	 * @param node node index
+	 * @return number of edge ends at the node (a loop counts twice)
+	 */
+	public int getNodeDegree(int node)
+	{
+		return nodeDegrees[ node ];
+	}
+
+	/**
+	 * @param node node index
+	 * @return number of voxels of the node
+	 */
+	public int getNodeVoxelCount(int node)
+	{
+		return nodeVoxelStarts[ node + 1 ] - nodeVoxelStarts[ node ];
+	}
+
+	/** @return x- coordinate of the i-th voxel of a node */
+	public int getNodeX(int node, int i)
+	{
+		return nodeVoxels[ 3 * ( nodeVoxelStarts[ node ] + i ) ];
+	}
+
+	/** @return y- coordinate of the i-th voxel of a node */
+	public int getNodeY(int node, int i)
+	{
+		return nodeVoxels[ 3 * ( nodeVoxelStarts[ node ] + i ) + 1 ];
+	}
+
+	/** @return z- coordinate of the i-th voxel of a node */
+	public int getNodeZ(int node, int i)
+	{
+		return nodeVoxels[ 3 * ( nodeVoxelStarts[ node ] + i ) + 2 ];
+	}
+
+	/** @return number of edges */
+	public int getEdgeCount()
+	{
+		return edgeSources.length;
+	}
+
+	/**
+	 * @param edge edge index
+	 * @return node at the start of the edge
+	 */
+	public int getEdgeSource(int edge)
+	{
+		return edgeSources[ edge ];
+	}
+
+	/**
+	 * @param edge edge index
+	 * @return node at the end of the edge
+	 */
+	public int getEdgeTarget(int edge)
+	{
+		return edgeTargets[ edge ];
+	}
+
+	/**
+	 * @param edge edge index
+	 * @return Euclidean length of the path of the edge, in voxels
+	 */
+	public double getEdgeLength(int edge)
+	{
+		return edgeLengths[ edge ];
+	}
+
+	/**
+	 * @param edge edge index
+	 * @return number of slab voxels of the edge (0 between adjacent nodes)
+	 */
+	public int getEdgeVoxelCount(int edge)
+	{
+		return edgeVoxelStarts[ edge + 1 ] - edgeVoxelStarts[ edge ];
+	}
+
+	/** @return x- coordinate of the i-th slab voxel of an edge, from its source */
+	public int getEdgeX(int edge, int i)
+	{
+		return edgeVoxels[ 3 * ( edgeVoxelStarts[ edge ] + i ) ];
+	}
+
+	/** @return y- coordinate of the i-th slab voxel of an edge, from its source */
+	public int getEdgeY(int edge, int i)
+	{
+		return edgeVoxels[ 3 * ( edgeVoxelStarts[ edge ] + i ) + 1 ];
+	}
+
+	/** @return z- coordinate of the i-th slab voxel of an edge, from its source */
+	public int getEdgeZ(int edge, int i)
+	{
+		return edgeVoxels[ 3 * ( edgeVoxelStarts[ edge ] + i ) + 2 ];
+	}
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Count the nodes of a type.
+	 *
+	 * @param type node type
+	 * @return number of nodes of the type
+	 */
+	public int countNodes(int type)
+	{
+		int n = 0;
+		for( byte t : nodeTypes )
+			if( t == type )
+				n++;
+		return n;
+	} /* end countNodes */
+
+	/** @return sum of the lengths of the edges */
+	public double getTotalLength()
+	{
+		double length = 0;
+		for( double l : edgeLengths )
+			length += l;
+		return length;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format( "%d nodes (%d end points, %d junctions, %d isolated, %d cycles), "
+				+ "%d edges, total length %.1f", getNodeCount(), countNodes( END_POINT ), 
+				countNodes( JUNCTION ), countNodes( ISOLATED ), countNodes( CYCLE ), 
+				getEdgeCount(), getTotalLength() );
+	}
+
+	/**
+	 * Extraction of the graph of a skeleton. The skeleton voxels are 
+	 * identified by their linear index in stream order, so the neighbors 
+	 * of a voxel are found by binary search.
+	 */
+	private static final class Builder
+	{
+		/** thinned volume */
+		private final BitVolume skeleton;
+		/** volume width */
+		private final int width;
+		/** number of voxels per slice */
+		private final long sliceLength;
+		/** linear index offset to each bit of a packed neighborhood */
+		private final long[] neighborOffsets = new long[ 27 ];
+
+		/** linear indices of the skeleton voxels, in increasing order */
+		private long[] voxels = new long[ 1024 ];
+		/** packed neighborhood of each skeleton voxel */
+		private int[] neighborhoods = new int[ 1024 ];
+		/** number of skeleton voxels */
+		private int numVoxels = 0;
+		/** node of each skeleton voxel (union-find parent of the junction voxels while streaming), -1 for slab voxels */
+		private int[] nodes;
+		/** true for the slab voxels already added to an edge */
+		private boolean[] traced;
+
+		/** type of each node */
+		private byte[] nodeTypes;
+		/** number of edge ends of each node */
+		private int[] nodeDegrees;
+		/** number of edges */
+		private int numEdges = 0;
+		/** source node of each edge */
+		private int[] edgeSources = new int[ 256 ];
+		/** target node of each edge */
+		private int[] edgeTargets = new int[ 256 ];
+		/** length of each edge */
+		private double[] edgeLengths = new double[ 256 ];
+		/** first voxel of each edge */
+		private int[] edgeVoxelStarts = new int[ 257 ];
+		/** slab voxels of the edges */
+		private final PointList edgeVoxels = new PointList();
+
+		Builder(BitVolume skeleton)
+		{
+			this.skeleton = skeleton;
+			this.width = skeleton.getWidth();
+			this.sliceLength = (long) width * skeleton.getHeight();
+			for( int bit = 0; bit < 27; bit++ )
+				neighborOffsets[ bit ] = ( bit % 3 - 1 ) + ( bit / 3 % 3 - 1 ) * (long) width 
+						+ ( bit / 9 - 1 ) * sliceLength;
+		}
+
+		/* -------------------------------------------------------------------*/
+		/**
+		 * Classify the voxels, merge the junctions and trace the edges.
+		 *
+		 * @return graph of the skeleton
+		 */
+		SkeletonGraph build()
+		{
+			stream();
+			final int numNodes = labelNodes();
+
+			// Trace the chains from the nodes, then the closed curves left
+			nodeDegrees = new int[ numNodes ];
+			traced = new boolean[ numVoxels ];
+			for( int i = 0; i < numVoxels; i++ )
+				if( nodes[ i ] >= 0 )
+					traceEdges( i );
+			int numCycles = 0;
+			for( int i = 0; i < numVoxels; i++ )
+				if( nodes[ i ] < 0 && !traced[ i ] )
+				{
+					nodes[ i ] = numNodes + numCycles++;
+					nodeDegrees = Arrays.copyOf( nodeDegrees, numNodes + numCycles );
+					traceEdges( i );
+				}
+			if( numCycles > 0 )
+			{
+				nodeTypes = Arrays.copyOf( nodeTypes, numNodes + numCycles );
+				Arrays.fill( nodeTypes, numNodes, numNodes + numCycles, (byte) CYCLE );
+			}
+
+			// Group the node voxels by node
+			final int[] nodeVoxelStarts = new int[ nodeTypes.length + 1 ];
+			for( int i = 0; i < numVoxels; i++ )
+				if( nodes[ i ] >= 0 )
+					nodeVoxelStarts[ nodes[ i ] + 1 ]++;
+			for( int n = 0; n < nodeTypes.length; n++ )
+				nodeVoxelStarts[ n + 1 ] += nodeVoxelStarts[ n ];
+			final int[] next = Arrays.copyOf( nodeVoxelStarts, nodeTypes.length );
+			final int[] nodeVoxels = new int[ 3 * nodeVoxelStarts[ nodeTypes.length ] ];
+			for( int i = 0; i < numVoxels; i++ )
+				if( nodes[ i ] >= 0 )
+				{
+					final int j = 3 * next[ nodes[ i ] ]++;
+					final long v = voxels[ i ];
+					nodeVoxels[ j     ] = (int) ( v % width );
+					nodeVoxels[ j + 1 ] = (int) ( v % sliceLength / width );
+					nodeVoxels[ j + 2 ] = (int) ( v / sliceLength );
+				}
+
+			final int[] coordinates = new int[ 3 * edgeVoxels.size() ];
+			for( int i = 0; i < edgeVoxels.size(); i++ )
+			{
+				coordinates[ 3 * i     ] = edgeVoxels.getX( i );
+				coordinates[ 3 * i + 1 ] = edgeVoxels.getY( i );
+				coordinates[ 3 * i + 2 ] = edgeVoxels.getZ( i );
+			}
+			return new SkeletonGraph( nodeTypes, nodeDegrees, nodeVoxelStarts, nodeVoxels,
+					Arrays.copyOf( edgeSources, numEdges ), Arrays.copyOf( edgeTargets, numEdges ),
+					Arrays.copyOf( edgeLengths, numEdges ), Arrays.copyOf( edgeVoxelStarts, numEdges + 1 ),
+					coordinates );
+		} /* end build */
+
+		/* -------------------------------------------------------------------*/
+		/**
+		 * Collect the skeleton voxels and their neighborhoods in stream 
+		 * order, and merge each junction voxel with its junction neighbors
+		 * already streamed.
+		 */
+		private void stream()
+		{
+			final long[] words = skeleton.getWords();
+			final int wordsPerRow = skeleton.getWordsPerRow();
+			nodes = new int[ 1024 ];
+			for( int z = 0; z < skeleton.getDepth(); z++ )
+				for( int y = 0; y < skeleton.getHeight(); y++ )
+				{
+					final int row = skeleton.getRowIndex( y, z );
+					final long rowStart = z * sliceLength + (long) y * width;
+					for( int w = 0; w < wordsPerRow; w++ )
+					{
+						// skip the empty words, most of a skeleton
+						for( long bits = words[ row + w ]; bits != 0; bits &= bits - 1 )
+						{
+							final int x = ( w << 6 ) + Long.numberOfTrailingZeros( bits ) - 1;
+							add( rowStart + x, skeleton.getNeighborhood( row, x ) );
+						}
+					}
+				}
+		} /* end stream */
+
+		/* -------------------------------------------------------------------*/
+		/**
+		 * Append a skeleton voxel.
+		 *
+		 * @param voxel linear index of the voxel
+		 * @param neighborhood packed neighborhood of the voxel
+		 */
+		private void add(long voxel, int neighborhood)
+		{
+			if( numVoxels == voxels.length )
+			{
+				if( numVoxels > Integer.MAX_VALUE / 2 - 8 )
+					throw new IllegalArgumentException( "Skeleton too large: " + numVoxels + " voxels" );
+				voxels = Arrays.copyOf( voxels, 2 * numVoxels );
+				neighborhoods = Arrays.copyOf( neighborhoods, 2 * numVoxels );
+				nodes = Arrays.copyOf( nodes, 2 * numVoxels );
+			}
+			final int i = numVoxels++;
+			voxels[ i ] = voxel;
+			neighborhoods[ i ] = neighborhood;
+			nodes[ i ] = Integer.bitCount( neighborhood ) - 1 == 2 ? -1 : i;
+			if( isJunction( neighborhood ) )
+			{
+				// the neighbors before the center (bits 0..12) are already streamed
+				for( int bits = neighborhood & 0x1FFF; bits != 0; bits &= bits - 1 )
+				{
+					final int j = find( voxel + neighborOffsets[ Integer.numberOfTrailingZeros( bits ) ] );
+					if( isJunction( neighborhoods[ j ] ) )
+						union( i, j );
+				}
+			}
+		} /* end add */
+
+		/* -------------------------------------------------------------------*/
+		/**
+		 * Number the nodes: one per junction cluster, end point or isolated
+		 * point, in stream order of their first voxel.
+		 *
+		 * @return number of nodes
+		 */
+		private int labelNodes()
+		{
+			for( int i = 0; i < numVoxels; i++ )
+				if( nodes[ i ] >= 0 )
+					nodes[ i ] = root( i );
+
+			// The roots come first in stream order, so they are numbered 
+			// before the other voxels of their cluster read their number
+			// (stored as -2 - node meanwhile)
+			int numNodes = 0;
+			nodeTypes = new byte[ 256 ];
+			for( int i = 0; i < numVoxels; i++ )
+			{
+				if( nodes[ i ] < 0 )
+					continue;
+				if( nodes[ i ] == i )
+				{
+					if( numNodes == nodeTypes.length )
+						nodeTypes = Arrays.copyOf( nodeTypes, 2 * numNodes );
+					final int count = Integer.bitCount( neighborhoods[ i ] ) - 1;
+					nodeTypes[ numNodes ] = (byte) ( count == 0 ? ISOLATED : count == 1 ? END_POINT : JUNCTION );
+					nodes[ i ] = -2 - numNodes++;
+				}
+				else
+					nodes[ i ] = nodes[ nodes[ i ] ];
+			}
+			for( int i = 0; i < numVoxels; i++ )
+				if( nodes[ i ] < -1 )
+					nodes[ i ] = -2 - nodes[ i ];
+			nodeTypes = Arrays.copyOf( nodeTypes, numNodes );
+			return numNodes;
+		} /* end labelNodes */
+
+		/* -------------------------------------------------------------------*/
+		/**
+		 * Trace the edges leaving a node voxel: one per untraced slab 
+		 * neighbor, and one per neighbor voxel of another node found 
+		 * after it in stream order.
+		 *
+		 * @param start index of the node voxel
+		 */
+		private void traceEdges(int start)
+		{
+			final int node = nodes[ start ];
+			for( int bits = neighborhoods[ start ] & ~( 1 << 13 ); bits != 0; bits &= bits - 1 )
+			{
+				final int bit = Integer.numberOfTrailingZeros( bits );
+				final int next = find( voxels[ start ] + neighborOffsets[ bit ] );
+				if( nodes[ next ] >= 0 )
+				{
+					if( next > start && nodes[ next ] != node )
+						addEdge( node, nodes[ next ], STEP_LENGTH[ bit ], edgeVoxels.size() );
+					continue;
+				}
+				if( traced[ next ] )
+					continue;
+
+				// Follow the chain of slab voxels up to a node voxel
+				final int firstVoxel = edgeVoxels.size();
+				double length = STEP_LENGTH[ bit ];
+				int previous = start;
+				int current = next;
+				while( true )
+				{
+					traced[ current ] = true;
+					final long v = voxels[ current ];
+					edgeVoxels.add( (int) ( v % width ), (int) ( v % sliceLength / width ), (int) ( v / sliceLength ) );
+					int step = -1;
+					int following = -1;
+					for( int b = neighborhoods[ current ] & ~( 1 << 13 ); b != 0; b &= b - 1 )
+					{
+						step = Integer.numberOfTrailingZeros( b );
+						following = find( v + neighborOffsets[ step ] );
+						if( following != previous )
+							break;
+					}
+					length += STEP_LENGTH[ step ];
+					if( nodes[ following ] >= 0 )
+					{
+						addEdge( node, nodes[ following ], length, firstVoxel );
+						break;
+					}
+					previous = current;
+					current = following;
+				}
+			}
+		} /* end traceEdges */
+
+		/* -------------------------------------------------------------------*/
+		/**
+		 * Append an edge whose slab voxels were just added.
+		 *
+		 * @param source source node
+		 * @param target target node
+		 * @param length length of the edge
+		 * @param firstVoxel index of its first slab voxel
+		 */
+		private void addEdge(int source, int target, double length, int firstVoxel)
+		{
+			if( numEdges == edgeSources.length )
+			{
+				edgeSources = Arrays.copyOf( edgeSources, 2 * numEdges );
+				edgeTargets = Arrays.copyOf( edgeTargets, 2 * numEdges );
+				edgeLengths = Arrays.copyOf( edgeLengths, 2 * numEdges );
+				edgeVoxelStarts = Arrays.copyOf( edgeVoxelStarts, 2 * numEdges + 1 );
+			}
+			edgeSources[ numEdges ] = source;
+			edgeTargets[ numEdges ] = target;
+			edgeLengths[ numEdges ] = length;
+			edgeVoxelStarts[ numEdges ] = firstVoxel;
+			edgeVoxelStarts[ ++numEdges ] = edgeVoxels.size();
+			nodeDegrees[ source ]++;
+			nodeDegrees[ target ]++;
+		} /* end addEdge */
+
+		/**
+		 * @param voxel linear index of a skeleton voxel
+		 * @return index of the voxel in stream order
+		 */
+		private int find(long voxel)
+		{
+			return Arrays.binarySearch( voxels, 0, numVoxels, voxel );
+		}
+
+		/** @return root of the junction cluster of a voxel, with path halving */
+		private int root(int i)
+		{
+			while( nodes[ i ] != i )
+			{
+				nodes[ i ] = nodes[ nodes[ i ] ];
+				i = nodes[ i ];
+			}
+			return i;
+		}
+
+		/** merge the junction clusters of two voxels, keeping the first root in stream order */
+		private void union(int i, int j)
+		{
+			final int a = root( i );
+			final int b = root( j );
+			if( a < b )
+				nodes[ b ] = a;
+			else if( b < a )
+				nodes[ a ] = b;
+		}
+
+		/** @return true if a packed neighborhood is the one of a junction voxel */
+		private static boolean isJunction(int neighborhood)
+		{
+			return Integer.bitCount( neighborhood ) - 1 > 2;
+		}
+	} /* end Builder */
+
+} /* end SkeletonGraph */
@@ -0,0 +1,1932 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * Thinning (skeletonization) of binary 3D images, without ImageJ.
+ *
+ * <p>
+ * This is the engine of the Skeletonize3D_ ImageJ plugin, an
+ * implementation of the 3D thinning algorithm from [Lee94]:
+ * T.-C. Lee, R.L. Kashyap, and C.-N. Chu. Building skeleton models via 3-D
+ * medial surface/axis thinning algorithms. Computer Vision, Graphics, and
+ * Image Processing, 56(6):462-478, 1994.
+ * <p>
+ * Images are given as slices ({@code byte[][]}), as a flat buffer plus
+ * dimensions or as a {@link BitVolume}. The thinning keeps all its working
+ * data local to each call, so once configured an instance can thin several
+ * images concurrently, unless it saves checkpoints (see 
+ * {@link #setCheckpoint(Path, long)}).
+ *
+ */
+public class Skeletonizer
+{
+	/** receiver of the progress of a thinning */
+	public interface ProgressListener
+	{
+		/**
+		 * Show a status message.
+		 *
+		 * @param message status message
+		 */
+		void showStatus(String message);
+
+		/**
+		 * Show the progress of the current scan. May be called from the
+		 * threads searching for deletion candidates.
+		 *
+		 * @param done number of scanned slices
+		 * @param total number of slices to scan
+		 */
+		void showProgress(int done, int total);
+	}
+
+	/** receiver of the measurements of each subiteration */
+	public interface MetricsListener
+	{
+		/**
+		 * Receive the measurements of a subiteration, once its candidates
+		 * have been re-checked. Called from the thinning thread.
+		 *
+		 * @param metrics measurements of the subiteration
+		 */
+		void subiterationDone(SubiterationMetrics metrics);
+	}
+
+	/** receiver of the graph of each skeleton */
+	public interface GraphListener
+	{
+		/**
+		 * Receive the graph of a skeleton, once the thinning is over.
+		 * Called from the thinning thread.
+		 *
+		 * @param graph graph of the skeleton
+		 */
+		void graphExtracted(SkeletonGraph graph);
+	}
+
+	/** re-examine only the neighbors of deleted points after the first iteration */
+	private boolean activeFront = true;
+	/** number of threads searching for deletion candidates */
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	/** re-check and delete the candidates by parity subfields, in parallel */
+	private boolean subfields = false;
+	/** keep the surface end points to compute a medial surface instead of medial axes */
+	private boolean medialSurface = false;
+	/** receiver of the progress (null for none) */
+	private ProgressListener progressListener = null;
+	/** receiver of the subiteration measurements (null for none) */
+	private MetricsListener metricsListener = null;
+	/** receiver of the skeleton graphs */
+	private GraphListener graphListener = null;
+	/** checkpoint file (null for no checkpoints) */
+	private Path checkpointFile = null;
+	/** minimum time between two checkpoints, in milliseconds */
+	private long checkpointInterval = 0;
+	
+	/** bits of the N, S, E, W, U and B 6-neighbors in a packed neighborhood */
+	static final int[] BORDER_NEIGHBORS = { 1 << 10, 1 << 16, 1 << 14, 1 << 12, 1 << 22, 1 << 4 };
+	
+	/** 
+	 * Octant indices (as in the Euler LUT) that do not prevent a point from 
+	 * being a surface end point, see {@link #isSurfacePoint(byte[], int[])}
+	 */
+	private static final boolean[] SURFACE_OCTANT = new boolean[ 256 ];
+	static
+	{
+		final int[] pointsLUT = new int[ 256 ];
+		fillnumOfPointsLUT( pointsLUT );
+		for( int n = 0; n < 256; n++ )
+			SURFACE_OCTANT[ n ] = isSurfaceOctant( n, pointsLUT );
+	}
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Enable or disable the active front thinning. When enabled (default),
+	 * the iterations after the first one only examine the neighbors of the
+	 * points deleted in the previous iteration instead of the whole image.
+	 * The result is the same, at the cost of one bit of memory per voxel.
+	 * 
+	 * @param activeFront true to examine only the active front
+	 */
+	public void setActiveFront(boolean activeFront)
+	{
+		this.activeFront = activeFront;
+	} /* end setActiveFront */
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Set the number of threads used to search for deletion candidates
+	 * (the number of processors by default). The points are still deleted
+	 * sequentially in (z, y, x) order, so the result does not depend on it.
+	 * 
+	 * @param parallelism number of threads (1 to run in the calling thread)
+	 */
+	public void setParallelism(int parallelism)
+	{
+		if( parallelism < 1 )
+			throw new IllegalArgumentException( "parallelism must be positive: " + parallelism );
+		this.parallelism = parallelism;
+	} /* end setParallelism */
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Enable or disable the subfield re-check (disabled by default).
+	 * <p>
+	 * By default the candidates of each subiteration are re-checked and 
+	 * deleted sequentially in (z, y, x) order. With subfields, they are 
+	 * split into the 8 parity classes of (x%2, y%2, z%2) and each class is 
+	 * re-checked and deleted in parallel, one class after the other. Every 
+	 * deleted point is still simple when it is deleted, so topology is 
+	 * preserved, but since the deletion order changes the skeleton may 
+	 * differ by a few voxels from the sequential one (e.g. which of two 
+	 * equivalent voxels of a 2-voxel thick branch is kept). Small objects
+	 * that the sequential re-check deletes completely, because it only 
+	 * re-checks simplicity, may also be kept as a single voxel.
+	 * 
+	 * @param subfields true to delete the candidates by subfields
+	 */
+	public void setSubfields(boolean subfields)
+	{
+		this.subfields = subfields;
+	} /* end setSubfields */
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Enable or disable the medial surface thinning (disabled by default).
+	 * <p>
+	 * By default the thinning keeps the end points of arcs, which reduces
+	 * objects to medial axes. With the medial surface thinning it keeps the
+	 * surface end points instead (see {@link #isSurfacePoint(int)}), so 
+	 * plate-like parts of the objects are reduced to surfaces.
+	 * 
+	 * @param medialSurface true to compute medial surfaces
+	 */
+	public void setMedialSurface(boolean medialSurface)
+	{
+		this.medialSurface = medialSurface;
+	} /* end setMedialSurface */
+	
+	/** @return true if the surface end points are kept instead of the arc end points */
+	boolean isMedialSurface()
+	{
+		return medialSurface;
+	}
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Set the receiver of the thinning progress (none by default).
+	 * 
+	 * @param progressListener progress receiver, or null
+	 */
+	public void setProgressListener(ProgressListener progressListener)
+	{
+		this.progressListener = progressListener;
+	} /* end setProgressListener */
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Set the receiver of the measurements of each subiteration (none by
+	 * default). The same measurements are recorded as 
+	 * {@code Skeletonize3D_.Subiteration} flight recorder events when a
+	 * recording enables them. Without listener nor recording, the thinning
+	 * does not even read the clock.
+	 * 
+	 * @param metricsListener measurement receiver, or null
+	 */
+	public void setMetricsListener(MetricsListener metricsListener)
+	{
+		this.metricsListener = metricsListener;
+	} /* end setMetricsListener */
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Set the receiver of the graph of each skeleton (none by default).
+	 * With a receiver, once a thinning is over its end points, junctions
+	 * and branches are extracted in one more pass over the foreground 
+	 * words of the volume (see {@link SkeletonGraph}), so no separate 
+	 * analysis of the skeleton is needed. The graph covers the whole volume,
+	 * also when only a range of slices is thinned.
+	 * 
+	 * @param graphListener graph receiver, or null
+	 */
+	public void setGraphListener(GraphListener graphListener)
+	{
+		this.graphListener = graphListener;
+	} /* end setGraphListener */
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Save checkpoints of the thinning to a file (none by default).
+	 * <p>
+	 * Between two subiterations, once the interval has elapsed since the 
+	 * start of the thinning or the last checkpoint, the state of the 
+	 * thinning is written to the file: the current volume, deflated, and
+	 * the position and active front of the next subiteration. If the file
+	 * exists when a thinning starts, the thinning resumes from it instead
+	 * of starting over, with the same result, and the file is deleted once
+	 * the thinning is over. A checkpoint is only accepted from a thinning of
+	 * the same image with the same options. The time taken by each 
+	 * checkpoint is reported in the {@link SubiterationMetrics}.
+	 * <p>
+	 * The file belongs to a single thinning at a time, so an instance 
+	 * saving checkpoints must not thin several images concurrently.
+	 * 
+	 * @param checkpointFile checkpoint file, or null for no checkpoints
+	 * @param intervalMillis minimum time between two checkpoints in milliseconds
+	 */
+	public void setCheckpoint(Path checkpointFile, long intervalMillis)
+	{
+		if( intervalMillis < 0 )
+			throw new IllegalArgumentException( "Invalid checkpoint interval: " + intervalMillis );
+		this.checkpointFile = checkpointFile;
+		this.checkpointInterval = intervalMillis;
+	} /* end setCheckpoint */
+	
+	/** @return checkpoint file, or null for no checkpoints */
+	Path getCheckpointFile()
+	{
+		return checkpointFile;
+	}
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Copy the options and the listeners of this engine, but not its 
+	 * checkpoint file, into a new engine that can be changed without 
+	 * changing this one.
+	 * 
+	 * @return new engine
+	 */
+	Skeletonizer copy()
+	{
+		final Skeletonizer copy = new Skeletonizer();
+		copy.activeFront = this.activeFront;
+		copy.parallelism = this.parallelism;
+		copy.subfields = this.subfields;
+		copy.medialSurface = this.medialSurface;
+		copy.progressListener = this.progressListener;
+		copy.metricsListener = this.metricsListener;
+		copy.graphListener = this.graphListener;
+		return copy;
+	} /* end copy */
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Thin an image given as slices, in place. Non-zero pixels are 
+	 * foreground; the deleted ones are set to 0 and the others are left 
+	 * unchanged.
+	 * 
+	 * @param slices pixels of each slice, x fastest then y
+	 * @param width image width
+	 * @param height image height
+	 */
+	public void thin(byte[][] slices, int width, int height)
+	{
+		final BitVolume volume = load( slices, width, height );
+		thin( volume );
+		forEachSlice( slices.length, z -> volume.clearBackground( z, slices[ z ], 0 ) );
+	} /* end thin */
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Thin an image given as slices, in place, and binarize it. Non-zero 
+	 * pixels are foreground; the pixels of the skeleton are set to a value
+	 * and all the others to 0. The binarization is done while reading and 
+	 * writing the slices, so each pixel is only read and written once 
+	 * besides the thinning itself.
+	 * 
+	 * @param slices pixels of each slice, x fastest then y
+	 * @param width image width
+	 * @param height image height
+	 * @param skeletonValue value of the skeleton pixels (e.g. (byte) 255)
+	 */
+	public void thin(byte[][] slices, int width, int height, byte skeletonValue)
+	{
+		final BitVolume volume = load( slices, width, height );
+		thin( volume );
+		forEachSlice( slices.length, z -> volume.writeSlice( z, slices[ z ], 0, skeletonValue ) );
+	} /* end thin */
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Thin an image given as a flat buffer, in place. Non-zero voxels are
+	 * foreground; the deleted ones are set to 0 and the others are left 
+	 * unchanged.
+	 * 
+	 * @param voxels voxels of the image, x fastest then y then z
+	 * @param width image width
+	 * @param height image height
+	 * @param depth image depth
+	 */
+	public void thin(byte[] voxels, int width, int height, int depth)
+	{
+		if( (long) width * height * depth != voxels.length )
+			throw new IllegalArgumentException( "Invalid buffer length: " + voxels.length 
+					+ " for " + width + "x" + height + "x" + depth + " voxels" );
+		final BitVolume volume = new BitVolume( width, height, depth );
+		final int sliceSize = width * height;
+		forEachSlice( depth, z -> volume.setSlice( z, voxels, z * sliceSize, value -> value != 0 ) );
+		thin( volume );
+		forEachSlice( depth, z -> volume.clearBackground( z, voxels, z * sliceSize ) );
+	} /* end thin */
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Read the non-zero pixels of slices into a new bit volume.
+	 * 
+	 * @param slices pixels of each slice, x fastest then y
+	 * @param width image width
+	 * @param height image height
+	 * @return bit volume of the non-zero pixels
+	 */
+	private BitVolume load(byte[][] slices, int width, int height)
+	{
+		for( byte[] pixels : slices )
+			if( pixels.length != width * height )
+				throw new IllegalArgumentException( "Invalid slice length: " + pixels.length );
+		final BitVolume volume = new BitVolume( width, height, slices.length );
+		forEachSlice( slices.length, z -> volume.setSlice( z, slices[ z ], 0, value -> value != 0 ) );
+		return volume;
+	} /* end load */
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Run a task on every slice of an image, in parallel slabs of slices 
+	 * when the parallelism allows it. This is the single entry point of
+	 * the per-slice passes that load and write back images, also used by
+	 * the ImageJ plugin.
+	 * 
+	 * @param depth number of slices
+	 * @param task task to run with the slice index, for different slices concurrently
+	 */
+	void forEachSlice(int depth, IntConsumer task)
+	{
+		final int numSlabs = this.parallelism > 1 ? Math.min( depth, 4 * this.parallelism ) : 1;
+		final ForkJoinPool pool = numSlabs > 1 ? new ForkJoinPool( this.parallelism ) : null;
+		try
+		{
+			runSlabs( pool, numSlabs, slab -> {
+				for( int z = slab * depth / numSlabs; z < ( slab + 1 ) * depth / numSlabs; z++ )
+					task.accept( z );
+			});
+		}
+		finally
+		{
+			if( pool != null )
+				pool.shutdown();
+		}
+	} /* end forEachSlice */
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Thin a bit volume, in place.
+	 * 
+	 * @param volume binary volume
+	 */
+	public void thin(BitVolume volume) 
+	{
+		thin( volume, 0, volume.getDepth() );
+	} /* end thin */
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Thin a range of slices of a bit volume, in place. 
+	 * Only the points of slices zStart..zEnd-1 are deleted, the other 
+	 * slices are only read as the neighborhood of the range. 
+	 * 
+	 * @param volume binary volume
+	 * @param zStart first slice that can be thinned
+	 * @param zEnd slice after the last slice that can be thinned
+	 * @throws UncheckedIOException if a checkpoint cannot be read or written
+	 */
+	public void thin(BitVolume volume, int zStart, int zEnd) 
+	{
+		if( zStart < 0 || zEnd > volume.getDepth() || zStart > zEnd )
+			throw new IllegalArgumentException( "Invalid slice range: " + zStart + ".." + zEnd );
+		if( zStart == zEnd )
+			return;
+		thin( volume, new BoundingBox( 0, 0, zStart, volume.getWidth() - 1, volume.getHeight() - 1, zEnd - 1 ) );
+	} /* end thin */
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Thin a box of a bit volume, in place. Only the points of the box are
+	 * deleted, the points around it are only read as the neighborhood of 
+	 * the box, so the box can be thinned again without touching the rest
+	 * of a skeleton (see {@link IncrementalSkeletonizer}).
+	 * 
+	 * @param volume binary volume
+	 * @param region box of the points that can be thinned, inside the volume
+	 * @throws UncheckedIOException if a checkpoint cannot be read or written
+	 */
+	public void thin(BitVolume volume, BoundingBox region) 
+	{
+		if( region.getMinX() < 0 || region.getMinY() < 0 || region.getMinZ() < 0 
+				|| region.getMaxX() >= volume.getWidth() || region.getMaxY() >= volume.getHeight() 
+				|| region.getMaxZ() >= volume.getDepth() )
+			throw new IllegalArgumentException( "Box outside the volume: " + region );
+		if( region.isEmpty() )
+			return;
+		
+		showStatus( "Computing thin image ..." );
+		
+		final int depth = volume.getDepth();
+		final int numSlices = region.getMaxZ() + 1 - region.getMinZ();
+		
+		final PointList simpleBorderPoints = new PointList();
+		
+		// Points to re-examine after the first iteration (full scans if null)
+		final ActiveFront front = this.activeFront ? new ActiveFront( volume ) : null;
+		
+		// Resume from the last checkpoint, if any
+		final Path checkpointFile = this.checkpointFile;
+		final int options = ( this.medialSurface ? 1 : 0 ) | ( this.subfields ? 2 : 0 );
+		ThinningCheckpoint checkpoint = null;
+		if( checkpointFile != null && Files.exists( checkpointFile ) )
+		{
+			try
+			{
+				checkpoint = ThinningCheckpoint.read( checkpointFile, volume, region, options, front );
+			}
+			catch( IOException e )
+			{
+				throw new UncheckedIOException( e );
+			}
+			showStatus( "Resuming thinning at iteration " + checkpoint.getIteration() + " ..." );
+		}
+		long lastCheckpoint = System.nanoTime();
+		
+		// Full scans only examine the bounding box of the foreground, which
+		// shrinks as the points are deleted
+		final ForegroundBounds bounds = new ForegroundBounds( volume, region );
+		
+		// The candidates are searched in parallel in slabs of slices (or
+		// chunks of the active front), each with its own window and list
+		final int numSlabs = this.parallelism > 1 ? Math.min( numSlices, 4 * this.parallelism ) : 1;
+		final NeighborhoodWindow[] windows = new NeighborhoodWindow[ numSlabs ];
+		final PointList[] slabPoints = new PointList[ numSlabs ];
+		for( int slab = 0; slab < numSlabs; slab++ )
+		{
+			windows[ slab ] = new NeighborhoodWindow( volume );
+			slabPoints[ slab ] = new PointList();
+		}
+		final ForkJoinPool pool = numSlabs > 1 ? new ForkJoinPool( this.parallelism ) : null;
+		
+		// Candidates split by parity class for the subfield re-check
+		final PointList[] subfieldPoints = new PointList[ this.subfields ? 8 : 0 ];
+		for( int i = 0; i < subfieldPoints.length; i++ )
+			subfieldPoints[ i ] = new PointList();
+		
+		try
+		{
+			int iter = checkpoint != null ? checkpoint.getIteration() : 1;
+			int firstBorder = checkpoint != null ? checkpoint.getBorder() : 1;
+			// Loop through the image several times until there is no change.
+			int unchangedBorders = checkpoint != null ? checkpoint.getUnchangedBorders() : 0;
+			while( true )  // loop until no change for all the six border types
+			{						
+				for( int currentBorder = firstBorder; currentBorder <= 6; currentBorder++)
+				{
+					// build the message only if someone listens
+					if( this.progressListener != null )
+						showStatus( "Thinning iteration " + iter + " (" + currentBorder +"/6 borders) ..." );
+				
+					// Up and bottom borders only exist in 3D images
+					if( currentBorder > 4 && depth <= 1 )
+					{
+						unchangedBorders++;
+						continue;
+					}
+				
+					// border type of this subiteration, for the scan tasks
+					final int border = currentBorder;
+				
+					// measure only if someone listens
+					final SubiterationEvent event = new SubiterationEvent();
+					final boolean measure = this.metricsListener != null || event.isEnabled();
+					event.begin();
+					final long scanStart = measure ? System.nanoTime() : 0;
+					final long foreground = bounds.getCount();
+					final BoundingBox foregroundBox = measure ? bounds.getBox() : null;
+				
+					if( front == null || iter == 1 )
+					{
+						// Loop through the foreground box, one slab of slices per task
+						final AtomicInteger scannedSlices = new AtomicInteger();
+						final int boxStart = bounds.getMinZ();
+						final int boxSlices = Math.max( 0, bounds.getMaxZ() + 1 - boxStart );
+						runSlabs( pool, numSlabs, slab -> {
+							slabPoints[ slab ].clear();
+							findSimpleBorderPoints( boxStart + slab * boxSlices / numSlabs, 
+									boxStart + ( slab + 1 ) * boxSlices / numSlabs, bounds, region, windows[ slab ], 
+									border, slabPoints[ slab ], scannedSlices, boxSlices );
+						});
+					}
+					else
+					{
+						// Loop through the points whose neighborhood changed
+						// since the last subiteration of this border type
+						final int frontSize = front.collect( currentBorder );
+						runSlabs( pool, numSlabs, slab -> {
+							slabPoints[ slab ].clear();
+							findSimpleBorderPoints( front, (int) ( (long) slab * frontSize / numSlabs ), 
+									(int) ( (long) ( slab + 1 ) * frontSize / numSlabs ), region, 
+									windows[ slab ], border, slabPoints[ slab ] );
+						});
+					}
+				
+					// merge the candidates of all slabs in (z, y, x) order
+					for( int slab = 0; slab < numSlabs; slab++ )
+						simpleBorderPoints.addAll( slabPoints[ slab ] );
+
+					final long recheckStart = measure ? System.nanoTime() : 0;
+					int deleted = 0;
+
+					if( this.subfields )
+					{
+						// re-check each parity class in parallel, one class after the other
+						deleted = deleteSubfields( simpleBorderPoints, subfieldPoints, pool, numSlabs, 
+								slabPoints, volume, front, bounds, currentBorder );
+					}
+					else
+					{
+						// sequential re-checking to preserve connectivity when
+						// deleting in a parallel way
+				
+						for(int i = 0; 	i < simpleBorderPoints.size() ; i++)
+						{					
+							final int x = simpleBorderPoints.getX( i );
+							final int y = simpleBorderPoints.getY( i );
+							final int z = simpleBorderPoints.getZ( i );
+
+							// Check if border points is simple			        
+							if( SimplePointLUT.isSimple( SimplePointLUT.getConfiguration( 
+									volume.getNeighborhood( x, y, z ) ) ) )
+							{
+								// we can delete the current point
+								volume.set( x, y, z, false );
+								if( front != null )
+									front.delete( currentBorder, x, y, z );
+								bounds.delete( x, y, z );
+								deleted++;
+							}
+						}
+					}
+
+					bounds.shrink();
+
+					if( deleted == 0 )
+						unchangedBorders++;
+
+					// save the state of the next subiteration once the interval elapsed
+					final long recheckEnd = measure || checkpointFile != null ? System.nanoTime() : 0;
+					long checkpointNanos = 0, checkpointBytes = 0;
+					if( checkpointFile != null && recheckEnd - lastCheckpoint >= this.checkpointInterval * 1000000 )
+					{
+						checkpointBytes = ThinningCheckpoint.write( checkpointFile, volume, region, options, 
+								front, iter, currentBorder + 1, unchangedBorders );
+						lastCheckpoint = System.nanoTime();
+						checkpointNanos = lastCheckpoint - recheckEnd;
+					}
+
+					if( measure )
+						reportMetrics( event, iter, currentBorder, foreground, foregroundBox, 
+								simpleBorderPoints, deleted, recheckStart - scanStart, recheckEnd - recheckStart, 
+								checkpointNanos, checkpointBytes );
+
+
+					simpleBorderPoints.clear();
+
+				} // end currentBorder for loop
+
+				// Progress bar iterations
+				iter++;
+				if( unchangedBorders == 6 )
+					break;
+				unchangedBorders = 0;
+				firstBorder = 1;
+			}
+			if( checkpointFile != null )
+				Files.deleteIfExists( checkpointFile );
+		}
+		catch( IOException e )
+		{
+			throw new UncheckedIOException( e );
+		}
+		finally
+		{
+			if( pool != null )
+				pool.shutdown();
+		}
+
+		showStatus( "Computed thin image." );
+		extractGraph( volume );
+	} /* end thin */
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Send the graph of a thinned volume to the graph listener, if any.
+	 * 
+	 * @param volume thinned volume
+	 */
+	private void extractGraph(BitVolume volume)
+	{
+		final GraphListener listener = this.graphListener;
+		if( listener == null )
+			return;
+		showStatus( "Extracting skeleton graph ..." );
+		listener.graphExtracted( SkeletonGraph.extract( volume ) );
+	} /* end extractGraph */
+	
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Send the measurements of a subiteration to the metrics listener and
+	 * the flight recorder.
+	 * 
+	 * @param event flight recorder event started before the scan
+	 * @param iteration iteration number
+	 * @param border border type of the subiteration
+	 * @param foreground number of foreground points before the scan
+	 * @param foregroundBox bounding box of the foreground before the scan
+	 * @param candidates candidates found by the scan, in (z, y, x) order
+	 * @param deleted number of deleted candidates
+	 * @param scanNanos scan time in nanoseconds
+	 * @param recheckNanos re-check time in nanoseconds
+	 * @param checkpointNanos checkpoint time in nanoseconds (0 without checkpoint)
+	 * @param checkpointBytes checkpoint size in bytes (0 without checkpoint)
+	 */
+	private void reportMetrics(SubiterationEvent event, int iteration, int border, long foreground, 
+			BoundingBox foregroundBox, PointList candidates, int deleted, long scanNanos, long recheckNanos, 
+			long checkpointNanos, long checkpointBytes)
+	{
+		// bounding box of the candidates (empty if there are none)
+		final int size = candidates.size();
+		BoundingBox candidateBox = BoundingBox.EMPTY;
+		if( size > 0 )
+		{
+			int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = -1, maxY = -1;
+			for( int i = 0; i < size; i++ )
+			{
+				minX = Math.min( minX, candidates.getX( i ) );
+				minY = Math.min( minY, candidates.getY( i ) );
+				maxX = Math.max( maxX, candidates.getX( i ) );
+				maxY = Math.max( maxY, candidates.getY( i ) );
+			}
+			candidateBox = new BoundingBox( minX, minY, candidates.getZ( 0 ), maxX, maxY, 
+					candidates.getZ( size - 1 ) );
+		}
+		final SubiterationMetrics metrics = new SubiterationMetrics( iteration, border, foreground, 
+				foregroundBox, size, candidateBox, deleted, scanNanos, recheckNanos, checkpointNanos, 
+				checkpointBytes );
+		
+		if( event.shouldCommit() )
+		{
+			event.iteration = iteration;
+			event.border = border;
+			event.foreground = foreground;
+			event.foregroundBoxVolume = foregroundBox.getVolume();
+			event.candidates = size;
+			event.deleted = deleted;
+			event.scanNanos = scanNanos;
+			event.recheckNanos = recheckNanos;
+			event.checkpointNanos = checkpointNanos;
+			event.checkpointBytes = checkpointBytes;
+			event.minX = candidateBox.getMinX();
+			event.minY = candidateBox.getMinY();
+			event.minZ = candidateBox.getMinZ();
+			event.maxX = candidateBox.getMaxX();
+			event.maxY = candidateBox.getMaxY();
+			event.maxZ = candidateBox.getMaxZ();
+			event.commit();
+		}
+		if( metricsListener != null )
+			metricsListener.subiterationDone( metrics );
+	} /* end reportMetrics */
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Run a task on every slab, in parallel if a pool is given. Returns
+	 * when all the slabs are done.
+	 * 
+	 * @param pool thread pool (null to run sequentially in this thread)
+	 * @param numSlabs number of slabs
+	 * @param task task to run with the slab index
+	 */
+	private static void runSlabs(ForkJoinPool pool, int numSlabs, IntConsumer task)
+	{
+		if( pool == null )
+		{
+			for( int slab = 0; slab < numSlabs; slab++ )
+				task.accept( slab );
+			return;
+		}
+		final ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[ numSlabs ];
+		for( int slab = 0; slab < numSlabs; slab++ )
+		{
+			final int s = slab;
+			tasks[ slab ] = pool.submit( () -> task.accept( s ) );
+		}
+		for( ForkJoinTask<?> t : tasks )
+			t.join();
+	} /* end runSlabs */
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Re-check and delete the simple border points by subfields. The points
+	 * are split into 8 parity classes of (x%2, y%2, z%2). Two points of the
+	 * same class are not 26-neighbors, so deleting one of them does not
+	 * change whether the other one is simple, and each class is re-checked
+	 * in parallel. The points of a class are deleted once the whole class
+	 * has been re-checked (neighbor voxels share words of the volume), and
+	 * the classes are processed one after the other on the updated volume.
+	 * 
+	 * @param simpleBorderPoints simple border points in (z, y, x) order
+	 * @param subfieldPoints 8 lists receiving the points of each parity class
+	 * @param pool thread pool (null to run sequentially in this thread)
+	 * @param numSlabs number of chunks per parity class
+	 * @param deleted lists receiving the points to delete of each chunk
+	 * @param volume volume being thinned
+	 * @param front active front to record deletions in (may be null)
+	 * @param bounds foreground bounds to record deletions in
+	 * @param currentBorder border type of the current subiteration
+	 * @return number of deleted points
+	 */
+	private int deleteSubfields(PointList simpleBorderPoints, PointList[] subfieldPoints, 
+			ForkJoinPool pool, int numSlabs, PointList[] deleted, BitVolume volume, 
+			ActiveFront front, ForegroundBounds bounds, int currentBorder)
+	{
+		for( int i = 0; i < 8; i++ )
+			subfieldPoints[ i ].clear();
+		for( int i = 0; i < simpleBorderPoints.size(); i++ )
+		{
+			final int x = simpleBorderPoints.getX( i );
+			final int y = simpleBorderPoints.getY( i );
+			final int z = simpleBorderPoints.getZ( i );
+			subfieldPoints[ ( x & 1 ) | ( y & 1 ) << 1 | ( z & 1 ) << 2 ].add( x, y, z );
+		}
+		
+		int changed = 0;
+		for( int i = 0; i < 8; i++ )
+		{
+			final PointList points = subfieldPoints[ i ];
+			runSlabs( pool, numSlabs, slab -> {
+				deleted[ slab ].clear();
+				final int end = (int) ( (long) ( slab + 1 ) * points.size() / numSlabs );
+				for( int j = (int) ( (long) slab * points.size() / numSlabs ); j < end; j++ )
+				{
+					final int x = points.getX( j );
+					final int y = points.getY( j );
+					final int z = points.getZ( j );
+					if( SimplePointLUT.isSimple( SimplePointLUT.getConfiguration( 
+							volume.getNeighborhood( x, y, z ) ) ) )
+						deleted[ slab ].add( x, y, z );
+				}
+			});
+			
+			for( int slab = 0; slab < numSlabs; slab++ )
+			{
+				final PointList slabDeleted = deleted[ slab ];
+				for( int j = 0; j < slabDeleted.size(); j++ )
+				{
+					final int x = slabDeleted.getX( j );
+					final int y = slabDeleted.getY( j );
+					final int z = slabDeleted.getZ( j );
+					volume.set( x, y, z, false );
+					if( front != null )
+						front.delete( currentBorder, x, y, z );
+					bounds.delete( x, y, z );
+					changed++;
+				}
+			}
+		}
+		return changed;
+	} /* end deleteSubfields */
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Find the simple border points of a slab of slices, in (z, y, x) order.
+	 * Only the rows and words of the foreground box are examined. The volume
+	 * is only read.
+	 * 
+	 * @param zStart first slice of the slab (0-based slice index)
+	 * @param zEnd slice after the last slice of the slab
+	 * @param bounds bounding box of the foreground
+	 * @param region box of the points that can be thinned
+	 * @param window neighborhood window of this slab
+	 * @param currentBorder border type of the current subiteration
+	 * @param points output list of simple border points
+	 * @param scannedSlices counter of scanned slices for the progress bar
+	 * @param numSlices total number of slices to scan, for the progress bar
+	 */
+	private void findSimpleBorderPoints(int zStart, int zEnd, ForegroundBounds bounds, 
+			BoundingBox region, NeighborhoodWindow window, int currentBorder, PointList points, 
+			AtomicInteger scannedSlices, int numSlices)
+	{
+		final BitVolume volume = window.getVolume();
+		final long[] borderPoints = new long[ volume.getWordsPerRow() ];
+		// words holding the voxels minX..maxX (voxel x is bit x+1 of its row)
+		final int firstWord = ( bounds.getMinX() + 1 ) >>> 6;
+		final int endWord = ( ( bounds.getMaxX() + 1 ) >>> 6 ) + 1;
+		for (int z = zStart; z < zEnd; z++)
+		{
+			for (int y = bounds.getMinY(); y <= bounds.getMaxY(); y++)
+			{
+				window.setRow( y, z );
+				// border points of the row at once, most rows have none
+				if( !window.getBorderPoints( currentBorder, firstWord, endWord, borderPoints ) )
+					continue;
+				for( int word = firstWord; word < endWord; word++ )
+				{
+					final long wordPoints = borderPoints[ word ] & ForegroundBounds.getMask( region, word );
+					if( wordPoints != 0 )
+						findSimpleBorderPoints( window, word, wordPoints, y, z, currentBorder, points );
+				}
+			}					
+			if( progressListener != null )
+				progressListener.showProgress( scannedSlices.incrementAndGet(), numSlices );
+		}
+	} /* end findSimpleBorderPoints */
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Find the simple border points of a chunk of the active front, in 
+	 * (z, y, x) order. The volume is only read.
+	 * 
+	 * @param front active front
+	 * @param start index of the first front word of the chunk
+	 * @param end index after the last front word of the chunk
+	 * @param region box of the points that can be thinned
+	 * @param window neighborhood window of this chunk
+	 * @param currentBorder border type of the current subiteration
+	 * @param points output list of simple border points
+	 */
+	private void findSimpleBorderPoints(ActiveFront front, int start, int end, BoundingBox region, 
+			NeighborhoodWindow window, int currentBorder, PointList points)
+	{
+		int rowY = -1;
+		int rowZ = -1;
+		for( int i = start; i < end; i++ )
+		{
+			final int y = front.getY( i );
+			final int z = front.getZ( i );
+			if( z < region.getMinZ() || z > region.getMaxZ() || y < region.getMinY() || y > region.getMaxY() )
+				continue;
+			if( y != rowY || z != rowZ )
+			{
+				window.setRow( y, z );
+				rowY = y;
+				rowZ = z;
+			}
+			final int word = front.getWord( i );
+			final long borderPoints = window.getBorderPoints( word, currentBorder ) 
+					& ForegroundBounds.getMask( region, word );
+			if( borderPoints != 0 )
+				findSimpleBorderPoints( window, word, borderPoints, y, z, currentBorder, points );
+		}
+	} /* end findSimpleBorderPoints */
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Find the simple border points among the border points of one 64-bit 
+	 * word of the current row of a window, in x order. The volume is only 
+	 * read.
+	 * 
+	 * @param window neighborhood window placed on the row
+	 * @param word index of the word in the row
+	 * @param borderPoints border points of the word, see {@link NeighborhoodWindow#getBorderPoints}
+	 * @param y y- coordinate of the row
+	 * @param z z- coordinate of the row (0-based slice index)
+	 * @param currentBorder border type of the current subiteration
+	 * @param points output list of simple border points
+	 */
+	private void findSimpleBorderPoints(NeighborhoodWindow window, int word, long borderPoints, 
+			int y, int z, int currentBorder, PointList points)
+	{
+		final int borderNeighbor = BORDER_NEIGHBORS[ currentBorder - 1 ];
+		
+		while( borderPoints != 0 )
+		{
+			final int x = ( word << 6 ) + Long.numberOfTrailingZeros( borderPoints ) - 1;
+			borderPoints &= borderPoints - 1;
+			
+			// 3x3x3 neighborhood packed in 27 bits
+			final int neighborhood = window.getNeighborhood( x );
+			
+			// add all simple border points to a list for sequential re-checking
+			if( isSimpleBorderPoint( neighborhood, borderNeighbor, medialSurface ) )
+				points.add( x, y, z );
+		}
+	} /* end findSimpleBorderPoints */
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Check if a foreground point is a simple border point, i.e. a
+	 * candidate for deletion in the current subiteration.
+	 * 
+	 * @param neighborhood packed 27-pixels neighborhood of the point
+	 * @param borderNeighbor bit of the 6-neighbor defining the current border type
+	 * @param medialSurface true to keep the surface end points instead of the arc end points
+	 * @return true if the point can be deleted
+	 */
+	static boolean isSimpleBorderPoint(int neighborhood, int borderNeighbor, boolean medialSurface)
+	{
+		// check 6-neighbors if point is a border point of type currentBorder
+		if( ( neighborhood & borderNeighbor ) != 0 )
+		{
+			return false;         // current point is not deletable
+		}
+
+		if( medialSurface ? isSurfacePoint( neighborhood ) : isEndPoint( neighborhood ) )
+		{
+			return false;
+		}
+
+		// Check if point is Euler invariant (condition 1 in Lee[94])
+		if( !EulerLUT.isEulerInvariant( neighborhood ) )
+		{
+			return false;         // current point is not deletable
+		}
+
+		// Check if point is simple (deletion does not change connectivity in the 3x3x3 neighborhood)
+		// (conditions 2 and 3 in Lee[94])
+		if( !SimplePointLUT.isSimple( SimplePointLUT.getConfiguration( neighborhood ) ) )
+		{
+			return false;         // current point is not deletable
+		}
+		
+		return true;
+	} /* end isSimpleBorderPoint */
+	
+	/**
+	 * Check if point is the end of an arc
+	 * 
+	 * @param neighborhood packed 27-pixels neighborhood of the point
+	 * @return true if the point has exactly one neighbor
+	 */
+	static boolean isEndPoint(int neighborhood)
+	{
+		// the center pixel is counted as well
+		return Integer.bitCount( neighborhood ) - 1 == 1;
+	}
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Fill Euler LUT
+	 * 
+	 * @param LUT Euler LUT
+	 */
+	static void fillEulerLUT(int[] LUT) 
+	{
+		LUT[1]  =  1;
+		LUT[3]  = -1;
+		LUT[5]  = -1;
+		LUT[7]  =  1;
+		LUT[9]  = -3;
+		LUT[11] = -1;
+		LUT[13] = -1;
+		LUT[15] =  1;
+		LUT[17] = -1;
+		LUT[19] =  1;
+		LUT[21] =  1;
+		LUT[23] = -1;
+		LUT[25] =  3;
+		LUT[27] =  1;
+		LUT[29] =  1;
+		LUT[31] = -1;
+		LUT[33] = -3;
+		LUT[35] = -1;
+		LUT[37] =  3;
+		LUT[39] =  1;
+		LUT[41] =  1;
+		LUT[43] = -1;
+		LUT[45] =  3;
+		LUT[47] =  1;
+		LUT[49] = -1;
+		LUT[51] =  1;
+
+		LUT[53] =  1;
+		LUT[55] = -1;
+		LUT[57] =  3;
+		LUT[59] =  1;
+		LUT[61] =  1;
+		LUT[63] = -1;
+		LUT[65] = -3;
+		LUT[67] =  3;
+		LUT[69] = -1;
+		LUT[71] =  1;
+		LUT[73] =  1;
+		LUT[75] =  3;
+		LUT[77] = -1;
+		LUT[79] =  1;
+		LUT[81] = -1;
+		LUT[83] =  1;
+		LUT[85] =  1;
+		LUT[87] = -1;
+		LUT[89] =  3;
+		LUT[91] =  1;
+		LUT[93] =  1;
+		LUT[95] = -1;
+		LUT[97] =  1;
+		LUT[99] =  3;
+		LUT[101] =  3;
+		LUT[103] =  1;
+
+		LUT[105] =  5;
+		LUT[107] =  3;
+		LUT[109] =  3;
+		LUT[111] =  1;
+		LUT[113] = -1;
+		LUT[115] =  1;
+		LUT[117] =  1;
+		LUT[119] = -1;
+		LUT[121] =  3;
+		LUT[123] =  1;
+		LUT[125] =  1;
+		LUT[127] = -1;
+		LUT[129] = -7;
+		LUT[131] = -1;
+		LUT[133] = -1;
+		LUT[135] =  1;
+		LUT[137] = -3;
+		LUT[139] = -1;
+		LUT[141] = -1;
+		LUT[143] =  1;
+		LUT[145] = -1;
+		LUT[147] =  1;
+		LUT[149] =  1;
+		LUT[151] = -1;
+		LUT[153] =  3;
+		LUT[155] =  1;
+
+		LUT[157] =  1;
+		LUT[159] = -1;
+		LUT[161] = -3;
+		LUT[163] = -1;
+		LUT[165] =  3;
+		LUT[167] =  1;
+		LUT[169] =  1;
+		LUT[171] = -1;
+		LUT[173] =  3;
+		LUT[175] =  1;
+		LUT[177] = -1;
+		LUT[179] =  1;
+		LUT[181] =  1;
+		LUT[183] = -1;
+		LUT[185] =  3;
+		LUT[187] =  1;
+		LUT[189] =  1;
+		LUT[191] = -1;
+		LUT[193] = -3;
+		LUT[195] =  3;
+		LUT[197] = -1;
+		LUT[199] =  1;
+		LUT[201] =  1;
+		LUT[203] =  3;
+		LUT[205] = -1;
+		LUT[207] =  1;
+
+		LUT[209] = -1;
+		LUT[211] =  1;
+		LUT[213] =  1;
+		LUT[215] = -1;
+		LUT[217] =  3;
+		LUT[219] =  1;
+		LUT[221] =  1;
+		LUT[223] = -1;
+		LUT[225] =  1;
+		LUT[227] =  3;
+		LUT[229] =  3;
+		LUT[231] =  1;
+		LUT[233] =  5;
+		LUT[235] =  3;
+		LUT[237] =  3;
+		LUT[239] =  1;
+		LUT[241] = -1;
+		LUT[243] =  1;
+		LUT[245] =  1;
+		LUT[247] = -1;
+		LUT[249] =  3;
+		LUT[251] =  1;
+		LUT[253] =  1;
+		LUT[255] = -1;
+	}
+	
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Fill number of points in octant LUT
+	 * 
+	 * @param LUT number of points in octant LUT
+	 */
+	public static void fillnumOfPointsLUT(int[] LUT) 
+	{
+		for(int i=0; i<256; i++)
+			LUT[ i ] = Integer.bitCount( i );			
+	}
+
+	/**
+	 * Check if a point is Euler invariant
+	 * 
+	 * @param neighbors neighbor pixels of the point
+	 * @param LUT Euler LUT
+	 * @return true or false if the point is Euler invariant or not
+	 */
+	static boolean isEulerInvariant(byte[] neighbors, int [] LUT)
+	{
+		// Calculate Euler characteristic for each octant and sum up
+		int eulerChar = 0;
+		char n;
+		// Octant SWU
+		n = indexOctantSWU(neighbors);
+		eulerChar += LUT[n];
+		
+		// Octant SEU
+		n = indexOctantSEU(neighbors);
+		eulerChar += LUT[n];
+		
+		// Octant NWU
+		n = indexOctantNWU(neighbors);
+		eulerChar += LUT[n];
+		
+		// Octant NEU
+		n = indexOctantNEU(neighbors);
+		eulerChar += LUT[n];
+		
+		// Octant SWB
+		n = indexOctantSWB(neighbors);
+		eulerChar += LUT[n];
+		
+		// Octant SEB
+		n = indextOctantSEB(neighbors);
+		eulerChar += LUT[n];
+		
+		// Octant NWB
+		n = indexOctantNWB(neighbors);
+		eulerChar += LUT[n];
+		
+		// Octant NEB
+		n = indexOctantNEB(neighbors);
+		eulerChar += LUT[n];
+		
+		if( eulerChar == 0 )
+			return true;
+		else
+			return false;
+		}
+
+	/**
+	 * Check if a point is Euler invariant
+	 * 
+	 * @param neighborhood packed 27-pixels neighborhood of the point
+	 * @param LUT Euler LUT
+	 * @return true or false if the point is Euler invariant or not
+	 */
+	static boolean isEulerInvariant(int neighborhood, int [] LUT)
+	{
+		// Calculate Euler characteristic for each octant and sum up
+		int eulerChar = 0;
+		// Octant SWU
+		eulerChar += LUT[ indexOctant( neighborhood, 24, 25, 15, 16, 21, 22, 12 ) ];
+		// Octant SEU
+		eulerChar += LUT[ indexOctant( neighborhood, 26, 23, 17, 14, 25, 22, 16 ) ];
+		// Octant NWU
+		eulerChar += LUT[ indexOctant( neighborhood, 18, 21,  9, 12, 19, 22, 10 ) ];
+		// Octant NEU
+		eulerChar += LUT[ indexOctant( neighborhood, 20, 23, 19, 22, 11, 14, 10 ) ];
+		// Octant SWB
+		eulerChar += LUT[ indexOctant( neighborhood,  6, 15,  7, 16,  3, 12,  4 ) ];
+		// Octant SEB
+		eulerChar += LUT[ indexOctant( neighborhood,  8,  7, 17, 16,  5,  4, 14 ) ];
+		// Octant NWB
+		eulerChar += LUT[ indexOctant( neighborhood,  0,  9,  3, 12,  1, 10,  4 ) ];
+		// Octant NEB
+		eulerChar += LUT[ indexOctant( neighborhood,  2,  1, 11, 10,  5,  4, 14 ) ];
+		
+		return eulerChar == 0;
+	}
+	
+	/**
+	 * Check if a point is a surface end point, with the octant tests of 
+	 * {@link #isSurfacePoint(byte[], int[])} folded into a table.
+	 * 
+	 * @param neighborhood packed 27-pixels neighborhood of the point
+	 * @return true if the point is a surface end point
+	 */
+	static boolean isSurfacePoint(int neighborhood)
+	{
+		return SURFACE_OCTANT[ indexOctant( neighborhood, 24, 25, 15, 16, 21, 22, 12 ) ]   // SWU
+				&& SURFACE_OCTANT[ indexOctant( neighborhood, 26, 23, 17, 14, 25, 22, 16 ) ]   // SEU
+				&& SURFACE_OCTANT[ indexOctant( neighborhood, 18, 21,  9, 12, 19, 22, 10 ) ]   // NWU
+				&& SURFACE_OCTANT[ indexOctant( neighborhood, 20, 23, 19, 22, 11, 14, 10 ) ]   // NEU
+				&& SURFACE_OCTANT[ indexOctant( neighborhood,  6, 15,  7, 16,  3, 12,  4 ) ]   // SWB
+				&& SURFACE_OCTANT[ indexOctant( neighborhood,  8,  7, 17, 16,  5,  4, 14 ) ]   // SEB
+				&& SURFACE_OCTANT[ indexOctant( neighborhood,  0,  9,  3, 12,  1, 10,  4 ) ]   // NWB
+				&& SURFACE_OCTANT[ indexOctant( neighborhood,  2,  1, 11, 10,  5,  4, 14 ) ];  // NEB
+	}
+	
+	/**
+	 * Index of an octant in the Euler LUT from a packed neighborhood. 
+	 * The arguments are the neighborhood positions of the octant points
+	 * from the most (128) to the least (2) significant LUT index bit.
+	 * 
+	 * @param neighborhood packed 27-pixels neighborhood of the point
+	 * @return octant index in the Euler LUT
+	 */
+	static int indexOctant(int neighborhood, int p128, int p64, int p32, 
+			int p16, int p8, int p4, int p2)
+	{
+		return 1 
+				| ( neighborhood >>> p128 & 1 ) << 7
+				| ( neighborhood >>> p64  & 1 ) << 6
+				| ( neighborhood >>> p32  & 1 ) << 5
+				| ( neighborhood >>> p16  & 1 ) << 4
+				| ( neighborhood >>> p8   & 1 ) << 3
+				| ( neighborhood >>> p4   & 1 ) << 2
+				| ( neighborhood >>> p2   & 1 ) << 1;
+	}
+
+	public static char indexOctantNEB(byte[] neighbors) {
+		char n;
+		n = 1;
+		if( neighbors[2]==1 )
+			n |= 128;
+		if( neighbors[1]==1 )
+			n |=  64;
+		if( neighbors[11]==1 )
+			n |=  32;
+		if( neighbors[10]==1 )
+			n |=  16;
+		if( neighbors[5]==1 )
+			n |=   8;
+		if( neighbors[4]==1 )
+			n |=   4;
+		if( neighbors[14]==1 )
+			n |=   2;
+		return n;
+	}
+
+	public static char indexOctantNWB(byte[] neighbors) {
+		char n;
+		n = 1;
+		if( neighbors[0]==1 )
+			n |= 128;
+		if( neighbors[9]==1 )
+			n |=  64;
+		if( neighbors[3]==1 )
+			n |=  32;
+		if( neighbors[12]==1 )
+			n |=  16;
+		if( neighbors[1]==1 )
+			n |=   8;
+		if( neighbors[10]==1 )
+			n |=   4;
+		if( neighbors[4]==1 )
+			n |=   2;
+		return n;
+	}
+
+	public static char indextOctantSEB(byte[] neighbors) {
+		char n;
+		n = 1;
+		if( neighbors[8]==1 )
+			n |= 128;
+		if( neighbors[7]==1 )
+			n |=  64;
+		if( neighbors[17]==1 )
+			n |=  32;
+		if( neighbors[16]==1 )
+			n |=  16;
+		if( neighbors[5]==1 )
+			n |=   8;
+		if( neighbors[4]==1 )
+			n |=   4;
+		if( neighbors[14]==1 )
+			n |=   2;
+		return n;
+	}
+
+	public static char indexOctantSWB(byte[] neighbors) {
+		char n;
+		n = 1;
+		if( neighbors[6]==1 )
+			n |= 128;
+		if( neighbors[15]==1 )
+			n |=  64;
+		if( neighbors[7]==1 )
+			n |=  32;
+		if( neighbors[16]==1 )
+			n |=  16;
+		if( neighbors[3]==1 )
+			n |=   8;
+		if( neighbors[12]==1 )
+			n |=   4;
+		if( neighbors[4]==1 )
+			n |=   2;
+		return n;
+	}
+
+	public static char indexOctantNEU(byte[] neighbors) {
+		char n;
+		n = 1;
+		if( neighbors[20]==1 )
+			n |= 128;
+		if( neighbors[23]==1 )
+			n |=  64;
+		if( neighbors[19]==1 )
+			n |=  32;
+		if( neighbors[22]==1 )
+			n |=  16;
+		if( neighbors[11]==1 )
+			n |=   8;
+		if( neighbors[14]==1 )
+			n |=   4;
+		if( neighbors[10]==1 )
+			n |=   2;
+		return n;
+	}
+
+	public static char indexOctantNWU(byte[] neighbors) {
+		char n;
+		n = 1;
+		if( neighbors[18]==1 )
+			n |= 128;
+		if( neighbors[21]==1 )
+			n |=  64;
+		if( neighbors[9]==1 )
+			n |=  32;
+		if( neighbors[12]==1 )
+			n |=  16;
+		if( neighbors[19]==1 )
+			n |=   8;
+		if( neighbors[22]==1 )
+			n |=   4;
+		if( neighbors[10]==1 )
+			n |=   2;
+		return n;
+	}
+
+	public static char indexOctantSEU(byte[] neighbors) {
+		char n;
+		n = 1;
+		if( neighbors[26]==1 )
+			n |= 128;
+		if( neighbors[23]==1 )
+			n |=  64;
+		if( neighbors[17]==1 )
+			n |=  32;
+		if( neighbors[14]==1 )
+			n |=  16;
+		if( neighbors[25]==1 )
+			n |=   8;
+		if( neighbors[22]==1 )
+			n |=   4;
+		if( neighbors[16]==1 )
+			n |=   2;
+		return n;
+	}
+
+	public static char indexOctantSWU(byte[] neighbors) {
+		char n;
+		n = 1;
+		if( neighbors[24]==1 )
+			n |= 128;
+		if( neighbors[25]==1 )
+			n |=  64;
+		if( neighbors[15]==1 )
+			n |=  32;
+		if( neighbors[16]==1 )
+			n |=  16;
+		if( neighbors[21]==1 )
+			n |=   8;
+		if( neighbors[22]==1 )
+			n |=   4;
+		if( neighbors[12]==1 )
+			n |=   2;
+		return n;
+	}
+	
+	
+	/**
+	 * Check if a point is a surface end point: each of its octants either
+	 * holds at most one other point or is flat, see 
+	 * {@link #isSurfaceOctant}.
+	 * 
+	 * @param neighbors neighbor pixels of the point
+	 * @param pointsLUT number of points in octant LUT
+	 * @return true if the point is a surface end point
+	 */
+	public static boolean isSurfacePoint( byte[] neighbors, int[] pointsLUT )
+	{		
+		return isSurfaceOctant( indexOctantSWU(neighbors), pointsLUT )
+				&& isSurfaceOctant( indexOctantSEU(neighbors), pointsLUT )
+				&& isSurfaceOctant( indexOctantNWU(neighbors), pointsLUT )
+				&& isSurfaceOctant( indexOctantNEU(neighbors), pointsLUT )
+				&& isSurfaceOctant( indexOctantSWB(neighbors), pointsLUT )
+				&& isSurfaceOctant( indextOctantSEB(neighbors), pointsLUT )
+				&& isSurfaceOctant( indexOctantNWB(neighbors), pointsLUT )
+				&& isSurfaceOctant( indexOctantNEB(neighbors), pointsLUT );
+	}
+	
+	/**
+	 * Check if an octant allows its center to be a surface end point: it 
+	 * holds at most one point besides the center, or four points in a plane 
+	 * through the center (one of the 3 faces of the octant cube or one of 
+	 * its 3 diagonal planes). The center is bit 1 of the octant index; the
+	 * former list 240, 204, 170, 165 gave the faces and one diagonal plane
+	 * for indices with the center at bit 128, which never matched.
+	 * 
+	 * @param n octant index
+	 * @param pointsLUT number of points in octant LUT
+	 * @return true if the octant is flat
+	 */
+	private static boolean isSurfaceOctant(int n, int[] pointsLUT)
+	{
+		return pointsLUT[ n ] <= 2 
+				|| n == 15 || n == 51 || n == 85       // faces
+				|| n == 153 || n == 165 || n == 195;   // diagonal planes
+	}
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Check if current point is a Simple Point.
+	 * This method is named 'N(v)_labeling' in [Lee94].
+	 * Outputs the number of connected objects in a neighborhood of a point
+	 * after this point would have been removed.
+	 * Reference implementation, the thinning loop uses {@link SimplePointLUT}.
+	 * 
+	 * @param neighbors neighbor pixels of the point
+	 * @return true or false if the point is simple or not
+	 */
+	static boolean isSimplePoint(byte[] neighbors) 
+	{
+		// copy neighbors for labeling
+		int cube[] = new int[26];
+		int i = 0;
+		for( i = 0; i < 13; i++ )  // i =  0..12 -> cube[0..12]
+			cube[i] = neighbors[i];
+		// i != 13 : ignore center pixel when counting (see [Lee94])
+		for( i = 14; i < 27; i++ ) // i = 14..26 -> cube[13..25]
+			cube[i-1] = neighbors[i];
+		// set initial label
+		int label = 2;
+		// for all points in the neighborhood
+		for( i = 0; i < 26; i++ )
+		{
+			if( cube[i]==1 )     // voxel has not been labeled yet
+			{
+				// start recursion with any octant that contains the point i
+				switch( i )
+				{
+				case 0:
+				case 1:
+				case 3:
+				case 4:
+				case 9:
+				case 10:
+				case 12:
+					octreeLabeling(1, label, cube );
+					break;
+				case 2:
+				case 5:
+				case 11:
+				case 13:
+					octreeLabeling(2, label, cube );
+					break;
+				case 6:
+				case 7:
+				case 14:
+				case 15:
+					octreeLabeling(3, label, cube );
+					break;
+				case 8:
+				case 16:
+					octreeLabeling(4, label, cube );
+					break;
+				case 17:
+				case 18:
+				case 20:
+				case 21:
+					octreeLabeling(5, label, cube );
+					break;
+				case 19:
+				case 22:
+					octreeLabeling(6, label, cube );
+					break;
+				case 23:
+				case 24:
+					octreeLabeling(7, label, cube );
+					break;
+				case 25:
+					octreeLabeling(8, label, cube );
+					break;
+				}
+				label++;
+				if( label-2 >= 2 )
+				{
+					return false;
+				}
+			}
+		}
+		//return label-2; in [Lee94] if the number of connected components would be needed
+		return true;
+	}
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * This is a recursive method that calculates the number of connected
+	 * components in the 3D neighborhood after the center pixel would
+	 * have been removed.
+	 * 
+	 * @param octant
+	 * @param label
+	 * @param cube
+	 */
+	private static void octreeLabeling(int octant, int label, int[] cube) 
+	{
+		// check if there are points in the octant with value 1
+		  if( octant==1 )
+		  {
+		  	// set points in this octant to current label
+		  	// and recursive labeling of adjacent octants
+		    if( cube[0] == 1 )
+		      cube[0] = label;
+		    if( cube[1] == 1 )
+		    {
+		      cube[1] = label;        
+		      octreeLabeling( 2, label, cube);
+		    }
+		    if( cube[3] == 1 )
+		    {
+		      cube[3] = label;        
+		      octreeLabeling( 3, label, cube);
+		    }
+		    if( cube[4] == 1 )
+		    {
+		      cube[4] = label;        
+		      octreeLabeling( 2, label, cube);
+		      octreeLabeling( 3, label, cube);
+		      octreeLabeling( 4, label, cube);
+		    }
+		    if( cube[9] == 1 )
+		    {
+		      cube[9] = label;        
+		      octreeLabeling( 5, label, cube);
+		    }
+		    if( cube[10] == 1 )
+		    {
+		      cube[10] = label;        
+		      octreeLabeling( 2, label, cube);
+		      octreeLabeling( 5, label, cube);
+		      octreeLabeling( 6, label, cube);
+		    }
+		    if( cube[12] == 1 )
+		    {
+		      cube[12] = label;        
+		      octreeLabeling( 3, label, cube);
+		      octreeLabeling( 5, label, cube);
+		      octreeLabeling( 7, label, cube);
+		    }
+		  }
+		  if( octant==2 )
+		  {
+		    if( cube[1] == 1 )
+		    {
+		      cube[1] = label;
+		      octreeLabeling( 1, label, cube);
+		    }
+		    if( cube[4] == 1 )
+		    {
+		      cube[4] = label;        
+		      octreeLabeling( 1, label, cube);
+		      octreeLabeling( 3, label, cube);
+		      octreeLabeling( 4, label, cube);
+		    }
+		    if( cube[10] == 1 )
+		    {
+		      cube[10] = label;        
+		      octreeLabeling( 1, label, cube);
+		      octreeLabeling( 5, label, cube);
+		      octreeLabeling( 6, label, cube);
+		    }
+		    if( cube[2] == 1 )
+		      cube[2] = label;        
+		    if( cube[5] == 1 )
+		    {
+		      cube[5] = label;        
+		      octreeLabeling( 4, label, cube);
+		    }
+		    if( cube[11] == 1 )
+		    {
+		      cube[11] = label;        
+		      octreeLabeling( 6, label, cube);
+		    }
+		    if( cube[13] == 1 )
+		    {
+		      cube[13] = label;        
+		      octreeLabeling( 4, label, cube);
+		      octreeLabeling( 6, label, cube);
+		      octreeLabeling( 8, label, cube);
+		    }
+		  }
+		  if( octant==3 )
+		  {
+		    if( cube[3] == 1 )
+		    {
+		      cube[3] = label;        
+		      octreeLabeling( 1, label, cube);
+		    }
+		    if( cube[4] == 1 )
+		    {
+		      cube[4] = label;        
+		      octreeLabeling( 1, label, cube);
+		      octreeLabeling( 2, label, cube);
+		      octreeLabeling( 4, label, cube);
+		    }
+		    if( cube[12] == 1 )
+		    {
+		      cube[12] = label;        
+		      octreeLabeling( 1, label, cube);
+		      octreeLabeling( 5, label, cube);
+		      octreeLabeling( 7, label, cube);
+		    }
+		    if( cube[6] == 1 )
+		      cube[6] = label;        
+		    if( cube[7] == 1 )
+		    {
+		      cube[7] = label;        
+		      octreeLabeling( 4, label, cube);
+		    }
+		    if( cube[14] == 1 )
+		    {
+		      cube[14] = label;        
+		      octreeLabeling( 7, label, cube);
+		    }
+		    if( cube[15] == 1 )
+		    {
+		      cube[15] = label;        
+		      octreeLabeling( 4, label, cube);
+		      octreeLabeling( 7, label, cube);
+		      octreeLabeling( 8, label, cube);
+		    }
+		  }
+		  if( octant==4 )
+		  {
+		  	if( cube[4] == 1 )
+		    {
+		      cube[4] = label;        
+		      octreeLabeling( 1, label, cube);
+		      octreeLabeling( 2, label, cube);
+		      octreeLabeling( 3, label, cube);
+		    }
+		  	if( cube[5] == 1 )
+		    {
+		      cube[5] = label;        
+		      octreeLabeling( 2, label, cube);
+		    }
+		    if( cube[13] == 1 )
+		    {
+		      cube[13] = label;        
+		      octreeLabeling( 2, label, cube);
+		      octreeLabeling( 6, label, cube);
+		      octreeLabeling( 8, label, cube);
+		    }
+		    if( cube[7] == 1 )
+		    {
+		      cube[7] = label;        
+		      octreeLabeling( 3, label, cube);
+		    }
+		    if( cube[15] == 1 )
+		    {
+		      cube[15] = label;        
+		      octreeLabeling( 3, label, cube);
+		      octreeLabeling( 7, label, cube);
+		      octreeLabeling( 8, label, cube);
+		    }
+		    if( cube[8] == 1 )
+		      cube[8] = label;        
+		    if( cube[16] == 1 )
+		    {
+		      cube[16] = label;        
+		      octreeLabeling( 8, label, cube);
+		    }
+		  }
+		  if( octant==5 )
+		  {
+		  	if( cube[9] == 1 )
+		    {
+		      cube[9] = label;        
+		      octreeLabeling( 1, label, cube);
+		    }
+		    if( cube[10] == 1 )
+		    {
+		      cube[10] = label;        
+		      octreeLabeling( 1, label, cube);
+		      octreeLabeling( 2, label, cube);
+		      octreeLabeling( 6, label, cube);
+		    }
+		    if( cube[12] == 1 )
+		    {
+		      cube[12] = label;        
+		      octreeLabeling( 1, label, cube);
+		      octreeLabeling( 3, label, cube);
+		      octreeLabeling( 7, label, cube);
+		    }
+		    if( cube[17] == 1 )
+		      cube[17] = label;        
+		    if( cube[18] == 1 )
+		    {
+		      cube[18] = label;        
+		      octreeLabeling( 6, label, cube);
+		    }
+		    if( cube[20] == 1 )
+		    {
+		      cube[20] = label;        
+		      octreeLabeling( 7, label, cube);
+		    }
+		    if( cube[21] == 1 )
+		    {
+		      cube[21] = label;        
+		      octreeLabeling( 6, label, cube);
+		      octreeLabeling( 7, label, cube);
+		      octreeLabeling( 8, label, cube);
+		    }
+		  }
+		  if( octant==6 )
+		  {
+		  	if( cube[10] == 1 )
+		    {
+		      cube[10] = label;        
+		      octreeLabeling( 1, label, cube);
+		      octreeLabeling( 2, label, cube);
+		      octreeLabeling( 5, label, cube);
+		    }
+		    if( cube[11] == 1 )
+		    {
+		      cube[11] = label;        
+		      octreeLabeling( 2, label, cube);
+		    }
+		    if( cube[13] == 1 )
+		    {
+		      cube[13] = label;        
+		      octreeLabeling( 2, label, cube);
+		      octreeLabeling( 4, label, cube);
+		      octreeLabeling( 8, label, cube);
+		    }
+		    if( cube[18] == 1 )
+		    {
+		      cube[18] = label;        
+		      octreeLabeling( 5, label, cube);
+		    }
+		    if( cube[21] == 1 )
+		    {
+		      cube[21] = label;        
+		      octreeLabeling( 5, label, cube);
+		      octreeLabeling( 7, label, cube);
+		      octreeLabeling( 8, label, cube);
+		    }
+		    if( cube[19] == 1 )
+		      cube[19] = label;        
+		    if( cube[22] == 1 )
+		    {
+		      cube[22] = label;        
+		      octreeLabeling( 8, label, cube);
+		    }
+		  }
+		  if( octant==7 )
+		  {
+		  	if( cube[12] == 1 )
+		    {
+		      cube[12] = label;        
+		      octreeLabeling( 1, label, cube);
+		      octreeLabeling( 3, label, cube);
+		      octreeLabeling( 5, label, cube);
+		    }
+		  	if( cube[14] == 1 )
+		    {
+		      cube[14] = label;        
+		      octreeLabeling( 3, label, cube);
+		    }
+		    if( cube[15] == 1 )
+		    {
+		      cube[15] = label;        
+		      octreeLabeling( 3, label, cube);
+		      octreeLabeling( 4, label, cube);
+		      octreeLabeling( 8, label, cube);
+		    }
+		    if( cube[20] == 1 )
+		    {
+		      cube[20] = label;        
+		      octreeLabeling( 5, label, cube);
+		    }
+		    if( cube[21] == 1 )
+		    {
+		      cube[21] = label;        
+		      octreeLabeling( 5, label, cube);
+		      octreeLabeling( 6, label, cube);
+		      octreeLabeling( 8, label, cube);
+		    }
+		    if( cube[23] == 1 )
+		      cube[23] = label;        
+		    if( cube[24] == 1 )
+		    {
+		      cube[24] = label;        
+		      octreeLabeling( 8, label, cube);
+		    }
+		  }
+		  if( octant==8 )
+		  {
+		  	if( cube[13] == 1 )
+		    {
+		      cube[13] = label;        
+		      octreeLabeling( 2, label, cube);
+		      octreeLabeling( 4, label, cube);
+		      octreeLabeling( 6, label, cube);
+		    }
+		  	if( cube[15] == 1 )
+		    {
+		      cube[15] = label;        
+		      octreeLabeling( 3, label, cube);
+		      octreeLabeling( 4, label, cube);
+		      octreeLabeling( 7, label, cube);
+		    }
+		  	if( cube[16] == 1 )
+		    {
+		      cube[16] = label;        
+		      octreeLabeling( 4, label, cube);
+		    }
+		  	if( cube[21] == 1 )
+		    {
+		      cube[21] = label;        
+		      octreeLabeling( 5, label, cube);
+		      octreeLabeling( 6, label, cube);
+		      octreeLabeling( 7, label, cube);
+		    }
+		  	if( cube[22] == 1 )
+		    {
+		      cube[22] = label;        
+		      octreeLabeling( 6, label, cube);
+		    }
+		  	if( cube[24] == 1 )
+		    {
+		      cube[24] = label;        
+		      octreeLabeling( 7, label, cube);
+		    }
+		  	if( cube[25] == 1 )
+		      cube[25] = label;        
+		  }
+		
+	}	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Show a status message if there is a progress receiver.
+	 * 
+	 * @param message status message
+	 */
+	private void showStatus(String message)
+	{
+		if( progressListener != null )
+			progressListener.showStatus( message );
+	} /* end showStatus */
+
+} /* end Skeletonizer */
@@ -0,0 +1,378 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+import java.util.Arrays;
+
+/**
+ * Thinning of sparse binary 3D images, whose foreground points are kept in
+ * a hash set instead of a dense volume.
+ *
+ * <p>
+ * The points are packed in 64-bit keys (21 bits per coordinate, z most
+ * significant) and stored in an open addressing {@link LongHashSet}, so
+ * the memory is proportional to the number of foreground points and not
+ * to the image size. Each subiteration iterates over the foreground set,
+ * reading the neighbors with hash probes: the 6-neighbor of the border 
+ * direction first, and the whole 3x3x3 neighborhood only for the border 
+ * points. After the first iteration, only the neighbors of the points 
+ * deleted since the previous subiteration of the same border type are
+ * examined when they are fewer than the foreground points, as with the 
+ * active front of {@link Skeletonizer}. The 
+ * candidates are sorted by key, i.e. in (z, y, x) order, and re-checked
+ * sequentially as by {@link Skeletonizer}, so both engines give the same
+ * skeleton.
+ * <p>
+ * This pays off for images with a small fraction of foreground, such as 
+ * neuron tracings or vessel masks: the dense engines examine (or at 
+ * least skip) every word of the image in full scans, while this one only
+ * touches the foreground.
+ *
+ */
+public class SparseSkeletonizer
+{
+	/** receiver of the points of the set */
+	public interface PointConsumer
+	{
+		/**
+		 * Receive a point.
+		 *
+		 * @param x x- coordinate
+		 * @param y y- coordinate
+		 * @param z z- coordinate
+		 */
+		void accept(int x, int y, int z);
+	}
+
+	/** largest image size along each axis */
+	public static final int MAX_SIZE = ( 1 << 21 ) - 2;
+
+	/** key offsets of the N, S, E, W, U and B 6-neighbors */
+	private static final long[] BORDER_OFFSETS = { -( 1L << 21 ), 1L << 21, 1, -1, 1L << 42, -( 1L << 42 ) };
+	/** key offsets of the 27 neighborhood points, in packed neighborhood order */
+	private static final long[] NEIGHBOR_OFFSETS = new long[ 27 ];
+	static
+	{
+		for( int i = 0; i < 27; i++ )
+			NEIGHBOR_OFFSETS[ i ] = ( (long) ( i / 9 - 1 ) << 42 ) + ( (long) ( i / 3 % 3 - 1 ) << 21 ) + ( i % 3 - 1 );
+	}
+
+	/** image width */
+	private final int width;
+	/** image height */
+	private final int height;
+	/** image depth */
+	private final int depth;
+	/** foreground points */
+	private final LongHashSet points;
+	/** re-examine only the neighbors of deleted points after the first iteration */
+	private boolean activeFront = true;
+	/** keep the surface end points to compute a medial surface instead of medial axes */
+	private boolean medialSurface = false;
+
+	/**
+	 * Create an empty (background) image.
+	 *
+	 * @param width image width
+	 * @param height image height
+	 * @param depth image depth
+	 * @param expectedPoints expected number of foreground points
+	 */
+	public SparseSkeletonizer(int width, int height, int depth, int expectedPoints)
+	{
+		if( width < 1 || height < 1 || depth < 1 || width > MAX_SIZE || height > MAX_SIZE || depth > MAX_SIZE )
+			throw new IllegalArgumentException( "Invalid image size: " + width + "x" + height + "x" + depth );
+		this.width = width;
+		this.height = height;
+		this.depth = depth;
+		this.points = new LongHashSet( expectedPoints );
+	}
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Enable or disable the active front (enabled by default). When enabled,
+	 * the iterations after the first one only examine the neighbors of the
+	 * points deleted since the previous subiteration of the same border 
+	 * type instead of the whole foreground. The result is the same.
+	 * 
+	 * @param activeFront true to examine only the active front
+	 */
+	public void setActiveFront(boolean activeFront)
+	{
+		this.activeFront = activeFront;
+	} /* end setActiveFront */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Enable or disable the medial surface thinning (disabled by default).
+	 * 
+	 * @param medialSurface true to compute medial surfaces
+	 * @see Skeletonizer#setMedialSurface
+	 */
+	public void setMedialSurface(boolean medialSurface)
+	{
+		this.medialSurface = medialSurface;
+	} /* end setMedialSurface */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Add a foreground point.
+	 *
+	 * @param x x- coordinate
+	 * @param y y- coordinate
+	 * @param z z- coordinate
+	 */
+	public void add(int x, int y, int z)
+	{
+		if( x < 0 || y < 0 || z < 0 || x >= width || y >= height || z >= depth )
+			throw new IllegalArgumentException( "Point outside of the image: (" + x + "," + y + "," + z + ")" );
+		points.add( pack( x, y, z ) );
+	} /* end add */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Check if a point is foreground.
+	 *
+	 * @param x x- coordinate
+	 * @param y y- coordinate
+	 * @param z z- coordinate
+	 * @return true if the point is foreground
+	 */
+	public boolean contains(int x, int y, int z)
+	{
+		return x >= 0 && y >= 0 && z >= 0 && x < width && y < height && z < depth 
+				&& points.contains( pack( x, y, z ) );
+	} /* end contains */
+
+	/** @return number of foreground points */
+	public int size()
+	{
+		return points.size();
+	}
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Give all foreground points to a consumer, in (z, y, x) order.
+	 *
+	 * @param consumer point receiver
+	 */
+	public void forEach(PointConsumer consumer)
+	{
+		final long[] keys = new long[ points.size() ];
+		final int n = collect( keys, -1 );
+		Arrays.sort( keys, 0, n );
+		for( int i = 0; i < n; i++ )
+			consumer.accept( (int) ( keys[ i ] & 0x1FFFFF ) - 1, (int) ( keys[ i ] >>> 21 & 0x1FFFFF ) - 1, 
+					(int) ( keys[ i ] >>> 42 ) - 1 );
+	} /* end forEach */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Thin the image, in place.
+	 */
+	public void thin()
+	{
+
+		long[] candidates = new long[ 1024 ];
+		// points deleted by the last subiteration of each border type
+		final long[][] deleted = new long[ 6 ][ 0 ];
+		final int[] numDeleted = new int[ 6 ];
+		
+		int iter = 1;
+		int unchangedBorders = 0;
+		while( unchangedBorders < 6 )  // loop until no change for all the six border types
+		{
+			unchangedBorders = 0;
+			for( int currentBorder = 1; currentBorder <= 6; currentBorder++ )
+			{
+				// Up and bottom borders only exist in 3D images
+				if( currentBorder > 4 && depth <= 1 )
+				{
+					unchangedBorders++;
+					continue;
+				}
+
+				// collect the simple border points, in (z, y, x) order
+				// (from the active front if it is smaller than the foreground)
+				long numFront = 0;
+				for( int b = 0; b < 6; b++ )
+					numFront += 26L * numDeleted[ b ];
+				final int numCandidates;
+				if( !activeFront || iter == 1 || numFront >= points.size() )
+				{
+					if( candidates.length < points.size() )
+						candidates = new long[ points.size() ];
+					numCandidates = collect( candidates, currentBorder );
+					Arrays.sort( candidates, 0, numCandidates );
+				}
+				else
+				{
+					if( candidates.length < numFront )
+						candidates = new long[ (int) numFront ];
+					numCandidates = collectFront( candidates, deleted, numDeleted, currentBorder );
+				}
+
+				// sequential re-checking to preserve connectivity
+				long[] borderDeleted = deleted[ currentBorder - 1 ];
+				int n = 0;
+				for( int i = 0; i < numCandidates; i++ )
+					if( SimplePointLUT.isSimple( SimplePointLUT.getConfiguration( 
+							getNeighborhood( candidates[ i ] ) ) ) )
+					{
+						points.remove( candidates[ i ] );
+						if( activeFront )
+						{
+							if( n == borderDeleted.length )
+								borderDeleted = Arrays.copyOf( borderDeleted, Math.max( 1024, 2 * n ) );
+							borderDeleted[ n ] = candidates[ i ];
+						}
+						n++;
+					}
+				deleted[ currentBorder - 1 ] = borderDeleted;
+				numDeleted[ currentBorder - 1 ] = activeFront ? n : 0;
+
+				if( n == 0 )
+					unchangedBorders++;
+			}
+			// keep the scans proportional to the remaining points
+			points.trim();
+			iter++;
+		}
+	} /* end thin */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Collect the foreground points, or only the simple border points of a
+	 * border type, in slot order.
+	 *
+	 * @param keys output keys, at least one per foreground point
+	 * @param currentBorder border type (1..6), or -1 for all the points
+	 * @return number of collected keys
+	 */
+	private int collect(long[] keys, int currentBorder)
+	{
+		final long borderOffset = currentBorder > 0 ? BORDER_OFFSETS[ currentBorder - 1 ] : 0;
+		final int borderNeighbor = currentBorder > 0 ? Skeletonizer.BORDER_NEIGHBORS[ currentBorder - 1 ] : 0;
+		int n = 0;
+		for( int slot = 0; slot < points.capacity(); slot++ )
+		{
+			final long key = points.getSlot( slot );
+			if( key == LongHashSet.EMPTY )
+				continue;
+			if( currentBorder > 0 && ( points.contains( key + borderOffset ) 
+					|| !Skeletonizer.isSimpleBorderPoint( getNeighborhood( key ), borderNeighbor, medialSurface ) ) )
+				continue;
+			keys[ n++ ] = key;
+		}
+		return n;
+	} /* end collect */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Collect the simple border points of a border type among the foreground
+	 * neighbors of the deleted points, in (z, y, x) order.
+	 *
+	 * @param keys output keys, at least 26 per deleted point
+	 * @param deleted points deleted by the last subiteration of each border type
+	 * @param numDeleted number of points of each list
+	 * @param currentBorder border type (1..6)
+	 * @return number of collected keys
+	 */
+	private int collectFront(long[] keys, long[][] deleted, int[] numDeleted, int currentBorder)
+	{
+		int n = 0;
+		for( int b = 0; b < 6; b++ )
+			for( int i = 0; i < numDeleted[ b ]; i++ )
+				for( int j = 0; j < 27; j++ )
+				{
+					final long key = deleted[ b ][ i ] + NEIGHBOR_OFFSETS[ j ];
+					if( j != 13 && points.contains( key ) )
+						keys[ n++ ] = key;
+				}
+		Arrays.sort( keys, 0, n );
+		
+		// keep each simple border point once
+		final long borderOffset = BORDER_OFFSETS[ currentBorder - 1 ];
+		final int borderNeighbor = Skeletonizer.BORDER_NEIGHBORS[ currentBorder - 1 ];
+		int numCandidates = 0;
+		long previous = LongHashSet.EMPTY;
+		for( int i = 0; i < n; i++ )
+		{
+			final long key = keys[ i ];
+			if( key == previous )
+				continue;
+			previous = key;
+			if( points.contains( key + borderOffset ) )
+				continue;
+			if( Skeletonizer.isSimpleBorderPoint( getNeighborhood( key ), borderNeighbor, medialSurface ) )
+				keys[ numCandidates++ ] = key;
+		}
+		return numCandidates;
+	} /* end collectFront */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Get the neighborhood of a point, packed as by 
+	 * {@link BitVolume#getNeighborhood}.
+	 *
+	 * @param key key of the point
+	 * @return packed 27-voxels neighborhood
+	 */
+	private int getNeighborhood(long key)
+	{
+		int neighborhood = 1 << 13;
+		for( int i = 0; i < 27; i++ )
+			if( i != 13 && points.contains( key + NEIGHBOR_OFFSETS[ i ] ) )
+				neighborhood |= 1 << i;
+		return neighborhood;
+	} /* end getNeighborhood */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Pack the coordinates of a point in a key. The coordinates are shifted
+	 * by one, so the keys of the neighbors of any point of the image are 
+	 * the key of the point plus a constant offset.
+	 *
+	 * @param x x- coordinate
+	 * @param y y- coordinate
+	 * @param z z- coordinate
+	 * @return key of the point
+	 */
+	private static long pack(int x, int y, int z)
+	{
+		return (long) ( z + 1 ) << 42 | (long) ( y + 1 ) << 21 | ( x + 1 );
+	} /* end pack */
+
+} /* end SparseSkeletonizer */
@@ -0,0 +1,310 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Streaming thinning of a volume arriving as slabs of slices, e.g. from a
+ * scanner, without storing the whole stack.
+ *
+ * <p>
+ * The slabs are appended to a buffer of slices and thinned as soon as they
+ * arrive, on a worker thread, so the next slab can be read in the meantime.
+ * The newest slice is not thinned since its upper neighbors are unknown,
+ * and the slices below the last {@link #setHalo halo} slices are handed to
+ * the consumer once the buffer is stable. The halo slices are carried over
+ * and thinned again with the next slab, and the last handed slice stays in
+ * the buffer, unchanged, as the neighborhood of the next ones.
+ * <p>
+ * Only simple points are deleted, so the topology is preserved as with
+ * {@link Skeletonizer}, but since the deletions are not done in the same
+ * order the skeleton may differ from the one of the whole stack next to
+ * the slab boundaries, the more so as the objects are thicker than the
+ * halo. As with the subfield re-check of {@link Skeletonizer}, small 
+ * objects that the sequential re-check deletes completely may also be
+ * kept, or other ones deleted.
+ *
+ */
+public class StreamingSkeletonizer
+{
+	/** receiver of the thinned slices */
+	public interface SliceConsumer
+	{
+		/**
+		 * Receive a thinned slice.
+		 *
+		 * @param z slice index in the stream (0-based)
+		 * @param pixels slice pixels, 255 for foreground and 0 for background
+		 */
+		void accept(int z, byte[] pixels);
+	}
+
+	/** default number of slices carried over to the next slab */
+	public static final int DEFAULT_HALO = 16;
+
+	/** slice width */
+	private final int width;
+	/** slice height */
+	private final int height;
+	/** receiver of the thinned slices */
+	private final SliceConsumer consumer;
+	/** thinning engine */
+	private final Skeletonizer engine = new Skeletonizer();
+	/** worker thread thinning the slabs */
+	private final ExecutorService worker = Executors.newSingleThreadExecutor( r -> {
+		final Thread thread = new Thread( r, "StreamingSkeletonizer" );
+		thread.setDaemon( true );
+		return thread;
+	});
+
+	/** number of slices carried over to the next slab */
+	private int halo = DEFAULT_HALO;
+	/** last slab submitted to the worker */
+	private Future<?> pending = null;
+	/** true once the stream is finished */
+	private boolean finished = false;
+
+	/** buffered slices (accessed by the worker only) */
+	private BitVolume buffer = null;
+	/** number of buffered slices, context slice included */
+	private int numSlices = 0;
+	/** true if the first buffered slice was already handed to the consumer */
+	private boolean hasContext = false;
+	/** index of the next slice to hand to the consumer */
+	private int nextSlice = 0;
+
+	/**
+	 * Create a streaming thinning.
+	 *
+	 * @param width slice width
+	 * @param height slice height
+	 * @param consumer receiver of the thinned slices, called on the worker thread
+	 */
+	public StreamingSkeletonizer(int width, int height, SliceConsumer consumer)
+	{
+		if( width < 1 || height < 1 )
+			throw new IllegalArgumentException( "Invalid slice size: " + width + "x" + height );
+		this.width = width;
+		this.height = height;
+		this.consumer = consumer;
+	}
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Set the number of thinned slices carried over to the next slab
+	 * (16 by default). A larger halo gets closer to the skeleton of the
+	 * whole stack at the cost of thinning these slices again.
+	 *
+	 * @param halo number of slices
+	 */
+	public void setHalo(int halo)
+	{
+		if( halo < 0 )
+			throw new IllegalArgumentException( "halo must not be negative: " + halo );
+		this.halo = halo;
+	} /* end setHalo */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Set the number of threads thinning each slab.
+	 *
+	 * @param parallelism number of threads
+	 */
+	public void setParallelism(int parallelism)
+	{
+		engine.setParallelism( parallelism );
+	} /* end setParallelism */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Add the next slab of slices. The slices are copied and thinned on the
+	 * worker thread; this waits for the previous slab to be thinned first,
+	 * so at most one slab is pending. An empty slab is ignored.
+	 *
+	 * @param slices slices of the slab (non-zero pixels are foreground)
+	 * @throws InterruptedException if interrupted while waiting for the previous slab
+	 */
+	public void addSlab(byte[][] slices) throws InterruptedException
+	{
+		if( finished )
+			throw new IllegalStateException( "Stream already finished" );
+		if( slices.length == 0 )
+			return;
+		final byte[][] slab = new byte[ slices.length ][];
+		for( int i = 0; i < slices.length; i++ )
+		{
+			if( slices[ i ].length != width * height )
+				throw new IllegalArgumentException( "Invalid slice length: " + slices[ i ].length );
+			slab[ i ] = slices[ i ].clone();
+		}
+		await();
+		pending = worker.submit( () -> {
+			append( slab );
+			thin( false );
+		});
+	} /* end addSlab */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Finish the stream: thin the remaining slices (the volume ends after
+	 * the last slab) and hand them to the consumer.
+	 *
+	 * @throws InterruptedException if interrupted while waiting for the worker
+	 */
+	public void finish() throws InterruptedException
+	{
+		if( finished )
+			return;
+		finished = true;
+		try
+		{
+			await();
+			pending = worker.submit( () -> thin( true ) );
+			await();
+		}
+		finally
+		{
+			worker.shutdown();
+		}
+	} /* end finish */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Wait for the pending slab, rethrowing its failure.
+	 *
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	private void await() throws InterruptedException
+	{
+		if( pending == null )
+			return;
+		try
+		{
+			pending.get();
+		}
+		catch( ExecutionException e )
+		{
+			final Throwable cause = e.getCause();
+			if( cause instanceof RuntimeException )
+				throw (RuntimeException) cause;
+			if( cause instanceof Error )
+				throw (Error) cause;
+			throw new IllegalStateException( cause );
+		}
+		finally
+		{
+			pending = null;
+		}
+	} /* end await */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Append the slices of a slab to the buffer, growing it if needed.
+	 *
+	 * @param slab slices of the slab
+	 */
+	private void append(byte[][] slab)
+	{
+		if( buffer == null || numSlices + slab.length > buffer.getDepth() )
+		{
+			final BitVolume grown = new BitVolume( width, height, 
+					Math.max( numSlices + slab.length, halo + 2 + 2 * slab.length ) );
+			if( buffer != null )
+				System.arraycopy( buffer.getWords(), buffer.getRowIndex( -1, 0 ), grown.getWords(), 
+						grown.getRowIndex( -1, 0 ), grown.getRowIndex( -1, numSlices ) - grown.getRowIndex( -1, 0 ) );
+			buffer = grown;
+		}
+		for( byte[] pixels : slab )
+			buffer.setSlice( numSlices++, pixels, 0, value -> value != 0 );
+	} /* end append */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Thin the buffered slices and hand the stable ones to the consumer.
+	 *
+	 * @param last true if no more slices will arrive
+	 */
+	private void thin(boolean last)
+	{
+		if( buffer == null )
+			return;
+		final int first = hasContext ? 1 : 0;
+		if( last && !hasContext && numSlices == 1 )
+		{
+			// a single slice is a 2D image, without up and bottom borders
+			final BitVolume slice = new BitVolume( width, height, 1 );
+			System.arraycopy( buffer.getWords(), buffer.getRowIndex( -1, 0 ), slice.getWords(), 
+					slice.getRowIndex( -1, 0 ), slice.getRowIndex( -1, 1 ) - slice.getRowIndex( -1, 0 ) );
+			buffer = slice;
+		}
+		engine.thin( buffer, first, last ? numSlices : numSlices - 1 );
+
+		final int end = last ? numSlices : numSlices - 1 - halo;
+		if( end <= first )
+			return;
+		for( int z = first; z < end; z++ )
+			consumer.accept( nextSlice++, getPixels( z ) );
+
+		// keep the last handed slice as the neighborhood of the next ones
+		final long[] words = buffer.getWords();
+		final int start = buffer.getRowIndex( -1, 0 );
+		final int sliceWords = buffer.getRowIndex( -1, 1 ) - start;
+		final int kept = numSlices - ( end - 1 );
+		System.arraycopy( words, start + ( end - 1 ) * sliceWords, words, start, kept * sliceWords );
+		Arrays.fill( words, start + kept * sliceWords, start + numSlices * sliceWords, 0 );
+		numSlices = kept;
+		hasContext = true;
+	} /* end thin */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Get a buffered slice as pixels.
+	 *
+	 * @param z slice index in the buffer
+	 * @return slice pixels, 255 for foreground and 0 for background
+	 */
+	private byte[] getPixels(int z)
+	{
+		final byte[] pixels = new byte[ width * height ];
+		buffer.writeSlice( z, pixels, 0, (byte) 255 );
+		return pixels;
+	} /* end getPixels */
+
+} /* end StreamingSkeletonizer */
@@ -0,0 +1,116 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event of one thinning subiteration, with the same
+ * measurements as {@link SubiterationMetrics}. The event duration covers
+ * the scan, the re-check and the checkpoint, if any. It is disabled unless a recording enables 
+ * {@code Skeletonize3D_.Subiteration}.
+ *
+ */
+@Name( "Skeletonize3D_.Subiteration" )
+@Label( "Thinning Subiteration" )
+@Category( "Skeletonize3D" )
+@Description( "Scan and re-check of one border direction of a thinning iteration" )
+final class SubiterationEvent extends Event
+{
+	@Label( "Iteration" )
+	int iteration;
+
+	@Label( "Border" )
+	@Description( "Border direction from 1 to 6 (N, S, E, W, U, B)" )
+	int border;
+
+	@Label( "Foreground" )
+	@Description( "Foreground points when the subiteration starts" )
+	long foreground;
+
+	@Label( "Foreground Box Volume" )
+	@Description( "Voxels of the foreground bounding box, the region of full scans" )
+	long foregroundBoxVolume;
+
+	@Label( "Candidates" )
+	@Description( "Simple border points found by the scan" )
+	int candidates;
+
+	@Label( "Deleted" )
+	@Description( "Candidates deleted by the re-check" )
+	int deleted;
+
+	@Label( "Scan Time" )
+	@Timespan
+	long scanNanos;
+
+	@Label( "Re-check Time" )
+	@Timespan
+	long recheckNanos;
+
+	@Label( "Checkpoint Time" )
+	@Description( "Time spent saving a checkpoint after the subiteration, 0 without checkpoint" )
+	@Timespan
+	long checkpointNanos;
+
+	@Label( "Checkpoint Size" )
+	@DataAmount
+	long checkpointBytes;
+
+	@Label( "Candidates Min X" )
+	int minX;
+
+	@Label( "Candidates Min Y" )
+	int minY;
+
+	@Label( "Candidates Min Z" )
+	int minZ;
+
+	@Label( "Candidates Max X" )
+	int maxX;
+
+	@Label( "Candidates Max Y" )
+	int maxY;
+
+	@Label( "Candidates Max Z" )
+	int maxZ;
+
+} /* end SubiterationEvent */
@@ -0,0 +1,185 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+/**
+ * Measurements of one subiteration of the thinning, i.e. of one border
+ * direction of one iteration, as given to a 
+ * {@link Skeletonizer.MetricsListener}.
+ * <p>
+ * The foreground box is the bounding box of the foreground when the 
+ * subiteration starts; full scans only examine the points inside it. The
+ * candidate box is the bounding box of the candidates found by the scan,
+ * the part of the image where the thinning is still active. Both are
+ * empty when there is no foreground or no candidate.
+ *
+ */
+public final class SubiterationMetrics
+{
+	/** iteration number, from 1 */
+	private final int iteration;
+	/** border direction, from 1 to 6 (N, S, E, W, U, B) */
+	private final int border;
+	/** number of foreground points when the subiteration starts */
+	private final long foreground;
+	/** bounding box of the foreground when the subiteration starts */
+	private final BoundingBox foregroundBox;
+	/** number of simple border points found by the scan */
+	private final int candidates;
+	/** bounding box of the candidates */
+	private final BoundingBox candidateBox;
+	/** number of candidates deleted by the re-check */
+	private final int deleted;
+	/** time spent searching for candidates, in nanoseconds */
+	private final long scanNanos;
+	/** time spent re-checking and deleting the candidates, in nanoseconds */
+	private final long recheckNanos;
+	/** time spent saving a checkpoint after the subiteration, in nanoseconds */
+	private final long checkpointNanos;
+	/** size of the checkpoint saved after the subiteration, in bytes */
+	private final long checkpointBytes;
+
+	/**
+	 * Create the measurements of a subiteration.
+	 *
+	 * @param iteration iteration number, from 1
+	 * @param border border direction, from 1 to 6
+	 * @param foreground number of foreground points when the subiteration starts
+	 * @param foregroundBox foreground bounding box when the subiteration starts
+	 * @param candidates number of candidates found by the scan
+	 * @param candidateBox candidate bounding box
+	 * @param deleted number of candidates deleted by the re-check
+	 * @param scanNanos scan time in nanoseconds
+	 * @param recheckNanos re-check time in nanoseconds
+	 * @param checkpointNanos checkpoint time in nanoseconds (0 without checkpoint)
+	 * @param checkpointBytes checkpoint size in bytes (0 without checkpoint)
+	 */
+	SubiterationMetrics(int iteration, int border, long foreground, BoundingBox foregroundBox, 
+			int candidates, BoundingBox candidateBox, int deleted, long scanNanos, long recheckNanos, 
+			long checkpointNanos, long checkpointBytes)
+	{
+		this.iteration = iteration;
+		this.border = border;
+		this.foreground = foreground;
+		this.foregroundBox = foregroundBox;
+		this.candidates = candidates;
+		this.candidateBox = candidateBox;
+		this.deleted = deleted;
+		this.scanNanos = scanNanos;
+		this.recheckNanos = recheckNanos;
+		this.checkpointNanos = checkpointNanos;
+		this.checkpointBytes = checkpointBytes;
+	}
+
+	/** @return iteration number, from 1 */
+	public int getIteration()
+	{
+		return iteration;
+	}
+
+	/** @return border direction, from 1 to 6 (N, S, E, W, U, B) */
+	public int getBorder()
+	{
+		return border;
+	}
+
+	/** @return number of foreground points when the subiteration starts */
+	public long getForeground()
+	{
+		return foreground;
+	}
+
+	/** @return bounding box of the foreground when the subiteration starts */
+	public BoundingBox getForegroundBox()
+	{
+		return foregroundBox;
+	}
+
+	/** @return number of simple border points found by the scan */
+	public int getCandidates()
+	{
+		return candidates;
+	}
+
+	/** @return bounding box of the candidates */
+	public BoundingBox getCandidateBox()
+	{
+		return candidateBox;
+	}
+
+	/** @return number of candidates deleted by the re-check */
+	public int getDeleted()
+	{
+		return deleted;
+	}
+
+	/** @return time spent searching for candidates, in nanoseconds */
+	public long getScanNanos()
+	{
+		return scanNanos;
+	}
+
+	/** @return time spent re-checking and deleting the candidates, in nanoseconds */
+	public long getRecheckNanos()
+	{
+		return recheckNanos;
+	}
+
+	/**
+	 * @return time spent saving a checkpoint after the subiteration, in 
+	 *         nanoseconds (0 if no checkpoint was saved)
+	 */
+	public long getCheckpointNanos()
+	{
+		return checkpointNanos;
+	}
+
+	/** @return size of the checkpoint saved after the subiteration, in bytes (0 if none) */
+	public long getCheckpointBytes()
+	{
+		return checkpointBytes;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "iteration " + iteration + " border " + border + ": " + foreground + " points in " 
+				+ foregroundBox + ", " + candidates + " candidates in " + candidateBox + ", " 
+				+ deleted + " deleted, scan " + scanNanos / 1000 + " us, re-check " + recheckNanos / 1000 + " us"
+				+ ( checkpointBytes > 0 ? ", checkpoint " + checkpointBytes + " bytes in " 
+						+ checkpointNanos / 1000 + " us" : "" );
+	}
+
+} /* end SubiterationMetrics */
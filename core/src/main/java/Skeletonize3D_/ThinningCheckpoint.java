@@ -0,0 +1,279 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Checkpoint of an in-memory thinning, so that a long thinning can be
+ * resumed after its process is stopped.
+ *
+ * <p>
+ * A checkpoint is taken between two subiterations. It holds the image
+ * size and the box of the points to thin, the options that change the 
+ * result, the position of the next subiteration (iteration, border type 
+ * and number of unchanged borders of the iteration), the words of the 
+ * {@link BitVolume} and the words changed in the last six subiterations 
+ * of the {@link ActiveFront}. The foreground box is not saved, it is 
+ * counted again on resume. The words are deflated, which shrinks the 
+ * empty regions of a partly thinned volume to almost nothing. A 
+ * checkpoint is written to a temporary file next to the target, forced to
+ * disk and then moved over it, so an interrupted write or a crash leaves 
+ * the previous checkpoint intact.
+ *
+ */
+final class ThinningCheckpoint
+{
+	/** file signature ("SK3C") */
+	private static final int MAGIC = 0x534B3343;
+	/** file format version */
+	private static final int VERSION = 2;
+
+	/** iteration of the next subiteration, from 1 */
+	private final int iteration;
+	/** border type of the next subiteration (1..7, 7 once the iteration is over) */
+	private final int border;
+	/** number of subiterations of the iteration that did not delete any point */
+	private final int unchangedBorders;
+
+	/**
+	 * Create the position of a checkpoint.
+	 *
+	 * @param iteration iteration of the next subiteration
+	 * @param border border type of the next subiteration
+	 * @param unchangedBorders unchanged subiterations of the iteration
+	 */
+	private ThinningCheckpoint(int iteration, int border, int unchangedBorders)
+	{
+		this.iteration = iteration;
+		this.border = border;
+		this.unchangedBorders = unchangedBorders;
+	}
+
+	/** @return iteration of the next subiteration, from 1 */
+	int getIteration()
+	{
+		return iteration;
+	}
+
+	/** @return border type of the next subiteration (1..7, 7 once the iteration is over) */
+	int getBorder()
+	{
+		return border;
+	}
+
+	/** @return number of subiterations of the iteration that did not delete any point */
+	int getUnchangedBorders()
+	{
+		return unchangedBorders;
+	}
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Write a checkpoint.
+	 *
+	 * @param file checkpoint file
+	 * @param volume volume being thinned
+	 * @param region box of the points that can be thinned
+	 * @param options options of the thinning that change its result
+	 * @param front active front (null for full scans)
+	 * @param iteration iteration of the next subiteration
+	 * @param border border type of the next subiteration
+	 * @param unchangedBorders unchanged subiterations of the iteration
+	 * @return size of the checkpoint file in bytes
+	 * @throws IOException if the file cannot be written
+	 */
+	static long write(Path file, BitVolume volume, BoundingBox region, int options, ActiveFront front, 
+			int iteration, int border, int unchangedBorders) throws IOException
+	{
+		final Path temp = file.resolveSibling( file.getFileName() + ".tmp" );
+		final Deflater deflater = new Deflater( Deflater.BEST_SPEED );
+		try( FileChannel channel = FileChannel.open( temp, StandardOpenOption.CREATE, 
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE ) )
+		{
+			final DeflaterOutputStream deflated = new DeflaterOutputStream( 
+					Channels.newOutputStream( channel ), deflater, 1 << 16 );
+			final DataOutputStream out = new DataOutputStream( new BufferedOutputStream( deflated, 1 << 16 ) );
+			out.writeInt( MAGIC );
+			out.writeInt( VERSION );
+			out.writeInt( volume.getWidth() );
+			out.writeInt( volume.getHeight() );
+			out.writeInt( volume.getDepth() );
+			out.writeInt( region.getMinX() );
+			out.writeInt( region.getMinY() );
+			out.writeInt( region.getMinZ() );
+			out.writeInt( region.getMaxX() );
+			out.writeInt( region.getMaxY() );
+			out.writeInt( region.getMaxZ() );
+			out.writeInt( options );
+			out.writeBoolean( front != null );
+			out.writeInt( iteration );
+			out.writeInt( border );
+			out.writeInt( unchangedBorders );
+			writeWords( out, volume.getWords() );
+			if( front != null )
+				for( int i = 1; i <= 6; i++ )
+					writeWords( out, front.getChanged( i ) );
+			out.flush();
+			deflated.finish();
+			// the data must be on disk before the move makes it the checkpoint
+			channel.force( true );
+		}
+		finally
+		{
+			deflater.end();
+		}
+		Files.move( temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+		syncDirectory( file.toAbsolutePath().getParent() );
+		return Files.size( file );
+	} /* end write */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Force the entries of a directory to disk, so that a move into it 
+	 * survives a crash. Some platforms cannot open a directory, the move is
+	 * then only as durable as their file system makes it.
+	 *
+	 * @param directory directory to sync
+	 */
+	private static void syncDirectory(Path directory)
+	{
+		try( FileChannel channel = FileChannel.open( directory, StandardOpenOption.READ ) )
+		{
+			channel.force( true );
+		}
+		catch( IOException e )
+		{
+			// not supported (e.g. on Windows)
+		}
+	} /* end syncDirectory */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Read a checkpoint into the volume and the active front of a thinning.
+	 * The checkpoint must have been taken by a thinning of the same image,
+	 * box of points and options: its foreground has to be a subset of the
+	 * foreground of the volume. The volume is left unchanged otherwise.
+	 *
+	 * @param file checkpoint file
+	 * @param volume volume to thin, replaced by the checkpoint volume
+	 * @param region box of the points that can be thinned
+	 * @param options options of the thinning that change its result
+	 * @param front active front (null for full scans), replaced by the checkpoint front
+	 * @return position of the next subiteration
+	 * @throws IOException if the file cannot be read or does not match the thinning
+	 */
+	static ThinningCheckpoint read(Path file, BitVolume volume, BoundingBox region, int options, 
+			ActiveFront front) throws IOException
+	{
+		try( DataInputStream in = new DataInputStream( new BufferedInputStream( 
+				new InflaterInputStream( Files.newInputStream( file ) ), 1 << 16 ) ) )
+		{
+			if( in.readInt() != MAGIC || in.readInt() != VERSION )
+				throw new IOException( "Not a thinning checkpoint: " + file );
+			final int width = in.readInt(), height = in.readInt(), depth = in.readInt();
+			final BoundingBox box = new BoundingBox( in.readInt(), in.readInt(), in.readInt(), 
+					in.readInt(), in.readInt(), in.readInt() );
+			if( width != volume.getWidth() || height != volume.getHeight() || depth != volume.getDepth() 
+					|| !box.equals( region ) )
+				throw new IOException( "Checkpoint of another image: " + width + "x" + height + "x" + depth 
+						+ " box " + box + " in " + file );
+			if( in.readInt() != options || in.readBoolean() != ( front != null ) )
+				throw new IOException( "Checkpoint of a thinning with other options: " + file );
+			final ThinningCheckpoint checkpoint = new ThinningCheckpoint( in.readInt(), in.readInt(), 
+					in.readInt() );
+
+			final long[] words = volume.getWords();
+			final long[] saved = new long[ words.length ];
+			readWords( in, saved );
+			for( int i = 0; i < words.length; i++ )
+				if( ( saved[ i ] & ~words[ i ] ) != 0 )
+					throw new IOException( "Checkpoint of another image: " + file );
+			// the front is only replaced with the volume, once the whole file is read
+			final long[][] changed = new long[ front != null ? 6 : 0 ][];
+			for( int i = 0; i < changed.length; i++ )
+			{
+				changed[ i ] = new long[ front.getChanged( i + 1 ).length ];
+				readWords( in, changed[ i ] );
+			}
+			for( int i = 0; i < changed.length; i++ )
+				System.arraycopy( changed[ i ], 0, front.getChanged( i + 1 ), 0, changed[ i ].length );
+			System.arraycopy( saved, 0, words, 0, words.length );
+			return checkpoint;
+		}
+	} /* end read */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Write an array of words.
+	 *
+	 * @param out output stream
+	 * @param words words to write
+	 * @throws IOException if the words cannot be written
+	 */
+	private static void writeWords(DataOutputStream out, long[] words) throws IOException
+	{
+		for( long word : words )
+			out.writeLong( word );
+	} /* end writeWords */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Read an array of words.
+	 *
+	 * @param in input stream
+	 * @param words array to fill
+	 * @throws IOException if the words cannot be read
+	 */
+	private static void readWords(DataInputStream in, long[] words) throws IOException
+	{
+		for( int i = 0; i < words.length; i++ )
+			words[ i ] = in.readLong();
+	} /* end readWords */
+
+} /* end ThinningCheckpoint */
@@ -0,0 +1,115 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of the {@link BatchSkeletonizer} against single thinnings.
+ */
+class BatchSkeletonizerTest
+{
+	/** number of volumes of the batches */
+	private static final int VOLUMES = 60;
+
+	/**
+	 * @param index volume index
+	 * @return slices of a small test volume
+	 */
+	private static byte[][] createCell(int index)
+	{
+		return TestVolumes.create( TestVolumes.KINDS[ index % 3 ], 16 + index % 5, 14, 10, index );
+	}
+
+	@Test
+	void batchGivesSameSkeletonsAsSingleThinnings() throws IOException
+	{
+		final int[] next = { 0 };
+		final byte[][][] skeletons = new byte[ VOLUMES ][][];
+		final BatchStatistics statistics = new BatchSkeletonizer( new Skeletonizer(), 3 ).run( () -> {
+			if( next[ 0 ] == VOLUMES )
+				return null;
+			final byte[][] slices = createCell( next[ 0 ]++ );
+			return BitVolume.fromSlices( slices, slices[ 0 ].length / 14, 14, value -> value != 0 );
+		}, ( index, skeleton, latencyNanos ) -> {
+			assertTrue( latencyNanos > 0 );
+			final byte[][] slices = new byte[ skeleton.getDepth() ][ skeleton.getWidth() * skeleton.getHeight() ];
+			for( int z = 0; z < skeleton.getDepth(); z++ )
+				skeleton.writeSlice( z, slices[ z ], 0, (byte) 1 );
+			skeletons[ index ] = slices;
+		});
+
+		for( int i = 0; i < VOLUMES; i++ )
+		{
+			final byte[][] expected = createCell( i );
+			new Skeletonizer().thin( expected, expected[ 0 ].length / 14, 14, (byte) 1 );
+			for( int z = 0; z < expected.length; z++ )
+				assertArrayEquals( expected[ z ], skeletons[ i ][ z ], "volume " + i + " slice " + z );
+		}
+		assertEquals( VOLUMES, statistics.getVolumes() );
+		assertTrue( statistics.getVoxelsPerSecond() > 0 );
+		assertTrue( statistics.getLatencyNanos( 0 ) <= statistics.getLatencyNanos( 0.5 ) );
+		assertTrue( statistics.getLatencyNanos( 0.5 ) <= statistics.getLatencyNanos( 1 ) );
+	}
+
+	@Test
+	void errorsStopTheBatch()
+	{
+		final BatchSkeletonizer batch = new BatchSkeletonizer( new Skeletonizer(), 2 );
+		final int[] next = { 0 };
+		assertThrows( IOException.class, () -> batch.run( () -> {
+			if( next[ 0 ]++ == 5 )
+				throw new IOException( "unreadable volume" );
+			return new BitVolume( 4, 4, 4 );
+		}, ( index, skeleton, latencyNanos ) -> { } ) );
+		assertThrows( IOException.class, () -> batch.run( () -> new BitVolume( 4, 4, 4 ), 
+				( index, skeleton, latencyNanos ) -> {
+					throw new IOException( "full disk" );
+				}) );
+		assertThrows( IllegalArgumentException.class, () -> new BatchSkeletonizer( new Skeletonizer(), 0 ) );
+		final Skeletonizer checkpointed = new Skeletonizer();
+		checkpointed.setCheckpoint( Paths.get( "batch.ckpt" ), 0 );
+		assertThrows( IllegalArgumentException.class, () -> new BatchSkeletonizer( checkpointed, 2 ) );
+	}
+
+} /* end BatchSkeletonizerTest */
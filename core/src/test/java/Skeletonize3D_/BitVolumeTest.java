@@ -0,0 +1,208 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of the {@link BitVolume} accessors.
+ */
+class BitVolumeTest
+{
+	@Test
+	void neighborhoodMatchesVoxels()
+	{
+		// 130 voxels per row so neighborhoods cross word boundaries
+		final int width = 130, height = 5, depth = 4;
+		final BitVolume volume = new BitVolume( width, height, depth );
+		final boolean[][][] voxels = new boolean[ depth ][ height ][ width ];
+		final Random random = new Random( 3 );
+		for( int z = 0; z < depth; z++ )
+			for( int y = 0; y < height; y++ )
+				for( int x = 0; x < width; x++ )
+				{
+					voxels[ z ][ y ][ x ] = random.nextBoolean();
+					volume.set( x, y, z, voxels[ z ][ y ][ x ] );
+				}
+		assertEquals( count( voxels ), volume.count() );
+		for( int z = 0; z < depth; z++ )
+			for( int y = 0; y < height; y++ )
+				for( int x = 0; x < width; x++ )
+				{
+					int expected = 0;
+					for( int dz = -1, i = 0; dz <= 1; dz++ )
+						for( int dy = -1; dy <= 1; dy++ )
+							for( int dx = -1; dx <= 1; dx++, i++ )
+							{
+								final int nx = x + dx, ny = y + dy, nz = z + dz;
+								if( nx >= 0 && ny >= 0 && nz >= 0 && nx < width && ny < height && nz < depth 
+										&& voxels[ nz ][ ny ][ nx ] )
+									expected |= 1 << i;
+							}
+					assertEquals( expected, volume.getNeighborhood( x, y, z ), x + "," + y + "," + z );
+				}
+		volume.clear();
+		assertEquals( 0, volume.count() );
+	}
+
+	@Test
+	void slicesOfAnyTypeGiveTheirForeground()
+	{
+		final int width = 130, height = 4, depth = 3;
+		final Random random = new Random( 5 );
+		final byte[][] bytes = new byte[ depth ][ width * height ];
+		final short[][] shorts = new short[ depth ][ width * height ];
+		final float[][] floats = new float[ depth ][ width * height ];
+		for( int z = 0; z < depth; z++ )
+			for( int i = 0; i < width * height; i++ )
+			{
+				shorts[ z ][ i ] = (short) random.nextInt( 65536 );
+				bytes[ z ][ i ] = (byte) shorts[ z ][ i ];
+				floats[ z ][ i ] = shorts[ z ][ i ] / 1000f;
+			}
+		final BitVolume fromBytes = BitVolume.fromSlices( bytes, width, height, value -> value >= 128 );
+		final BitVolume fromShorts = BitVolume.fromSlices( shorts, width, height, value -> value >= 40000 );
+		final BitVolume fromFloats = BitVolume.fromSlices( floats, width, height, value -> value < -10f );
+		for( int z = 0; z < depth; z++ )
+			for( int y = 0; y < height; y++ )
+				for( int x = 0; x < width; x++ )
+				{
+					final int i = x + y * width;
+					assertEquals( ( bytes[ z ][ i ] & 0xFF ) >= 128, fromBytes.get( x, y, z ) );
+					assertEquals( ( shorts[ z ][ i ] & 0xFFFF ) >= 40000, fromShorts.get( x, y, z ) );
+					assertEquals( floats[ z ][ i ] < -10f, fromFloats.get( x, y, z ) );
+				}
+		assertThrows( IllegalArgumentException.class, 
+				() -> BitVolume.fromSlices( shorts, width + 1, height, value -> true ) );
+	}
+
+	@Test
+	void clearBackgroundOnlyClearsBackgroundPixels()
+	{
+		// rows of two and a half words
+		final int width = 150, height = 5, depth = 3;
+		final Random random = new Random( 4 );
+		final BitVolume volume = new BitVolume( width, height, depth );
+		for( int z = 0; z < depth; z++ )
+			for( int y = 0; y < height; y++ )
+				for( int x = 0; x < width; x++ )
+					volume.set( x, y, z, random.nextInt( 3 ) == 0 );
+		for( int z = 0; z < depth; z++ )
+		{
+			final short[] shorts = new short[ width * height ];
+			final float[] floats = new float[ width * height ];
+			final byte[] bytes = new byte[ 7 + width * height ];
+			Arrays.fill( shorts, (short) -3 );
+			Arrays.fill( floats, 2.5f );
+			Arrays.fill( bytes, (byte) 9 );
+			volume.clearBackground( z, shorts );
+			volume.clearBackground( z, floats );
+			volume.clearBackground( z, bytes, 7 );
+			for( int y = 0, i = 0; y < height; y++ )
+				for( int x = 0; x < width; x++, i++ )
+				{
+					final boolean foreground = volume.get( x, y, z );
+					assertEquals( foreground ? -3 : 0, shorts[ i ] );
+					assertEquals( foreground ? 2.5f : 0f, floats[ i ] );
+					assertEquals( foreground ? 9 : 0, bytes[ 7 + i ] );
+				}
+			for( int i = 0; i < 7; i++ )
+				assertEquals( 9, bytes[ i ] );
+		}
+		assertThrows( IllegalArgumentException.class, () -> volume.clearBackground( 0, new short[ 3 ] ) );
+	}
+
+	@Test
+	void copyRunOnlyCopiesTheRun()
+	{
+		final Random random = new Random( 9 );
+		final BitVolume source = new BitVolume( 150, 3, 2 );
+		for( int x = 0; x < 150; x++ )
+			source.set( x, 1, 1, random.nextBoolean() );
+		for( int trial = 0; trial < 200; trial++ )
+		{
+			final BitVolume target = new BitVolume( 140, 2, 1 );
+			for( int x = 0; x < 140; x++ )
+				target.set( x, 1, 0, random.nextBoolean() );
+			final boolean[] expected = new boolean[ 140 ];
+			for( int x = 0; x < 140; x++ )
+				expected[ x ] = target.get( x, 1, 0 );
+			final int length = random.nextInt( 140 ) + 1;
+			final int sx = random.nextInt( 150 - length + 1 ), x0 = random.nextInt( 140 - length + 1 );
+			for( int i = 0; i < length; i++ )
+				expected[ x0 + i ] = source.get( sx + i, 1, 1 );
+			target.copyRun( source, sx, 1, 1, x0, 1, 0, length );
+			for( int x = 0; x < 140; x++ )
+				assertEquals( expected[ x ], target.get( x, 1, 0 ), "trial " + trial + " voxel " + x );
+			assertEquals( 0, target.count() - countRow( target, 1 ) );
+		}
+	}
+
+	/** @return number of foreground voxels of row y of slice 0 */
+	private static long countRow(BitVolume volume, int y)
+	{
+		long n = 0;
+		for( int x = 0; x < volume.getWidth(); x++ )
+			if( volume.get( x, y, 0 ) )
+				n++;
+		return n;
+	}
+
+	@Test
+	void invalidSizeIsRejected()
+	{
+		assertThrows( IllegalArgumentException.class, () -> new BitVolume( 0, 1, 1 ) );
+		assertThrows( IllegalArgumentException.class, () -> new BitVolume( 1 << 20, 1 << 20, 1 << 10 ) );
+	}
+
+	/** @return number of true voxels */
+	private static long count(boolean[][][] voxels)
+	{
+		long n = 0;
+		for( boolean[][] slice : voxels )
+			for( boolean[] row : slice )
+				for( boolean v : row )
+					if( v )
+						n++;
+		return n;
+	}
+
+} /* end BitVolumeTest */
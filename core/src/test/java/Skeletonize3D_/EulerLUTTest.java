@@ -0,0 +1,85 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of the {@link EulerLUT} against the octant look-ups of 
+ * {@link Skeletonizer}.
+ */
+class EulerLUTTest
+{
+	@Test
+	void tablesAgreeWithOctantLookUps()
+	{
+		// every neighborhood with the center set
+		final int[] LUT = new int[ 256 ];
+		Skeletonizer.fillEulerLUT( LUT );
+		for( int configuration = 0; configuration < 1 << 26; configuration++ )
+		{
+			final int neighborhood = ( configuration & 0x1FFF ) | 1 << 13 | ( configuration >>> 13 ) << 14;
+			assertEquals( Skeletonizer.isEulerInvariant( neighborhood, LUT ), EulerLUT.isEulerInvariant( neighborhood ), 
+					() -> "neighborhood " + neighborhood );
+		}
+	}
+
+	@Test
+	void tablesAgreeWithByteNeighborhoods()
+	{
+		final int[] LUT = new int[ 256 ];
+		Skeletonizer.fillEulerLUT( LUT );
+		final Random random = new Random( 3 );
+		for( int i = 0; i < 100000; i++ )
+		{
+			final int neighborhood = random.nextInt( 1 << 27 ) | 1 << 13;
+			final byte[] neighbors = new byte[ 27 ];
+			int count = 0;
+			for( int j = 0; j < 27; j++ )
+			{
+				neighbors[ j ] = (byte) ( neighborhood >>> j & 1 );
+				count += neighbors[ j ];
+			}
+			assertEquals( Skeletonizer.isEulerInvariant( neighbors, LUT ), EulerLUT.isEulerInvariant( neighborhood ), 
+					"neighborhood " + neighborhood );
+			assertEquals( count == 2, Skeletonizer.isEndPoint( neighborhood ) );
+		}
+	}
+
+} /* end EulerLUTTest */
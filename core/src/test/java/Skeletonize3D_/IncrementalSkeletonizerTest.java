@@ -0,0 +1,195 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests of the incremental thinning.
+ */
+class IncrementalSkeletonizerTest
+{
+	/** volume size */
+	private static final int WIDTH = 48, HEIGHT = 40, DEPTH = 36;
+
+	@Test
+	void editJoiningObjectsKeepsTopologyAndRestOfSkeleton(@TempDir Path directory)
+	{
+		final byte[][] mask = TestVolumes.create( "tubes", WIDTH, HEIGHT, DEPTH, 3 );
+		final BitVolume skeleton = thin( mask );
+		final BitVolume before = copy( skeleton );
+
+		// add a thick block over the middle of the volume
+		final BoundingBox edit = new BoundingBox( 18, 14, 12, 27, 23, 21 );
+		fill( mask, edit );
+		final BitVolume edited = BitVolume.fromSlices( mask, WIDTH, HEIGHT, value -> value != 0 );
+
+		// the listeners and checkpoint file of the engine are not used by the boxes
+		final Skeletonizer engine = new Skeletonizer();
+		engine.setCheckpoint( directory.resolve( "thinning.ckpt" ), 0 );
+		engine.setMetricsListener( metrics -> fail( "metrics of a box" ) );
+		final IncrementalSkeletonizer incremental = new IncrementalSkeletonizer( engine );
+		final BoundingBox[] regions = incremental.rethin( skeleton, edited, edit );
+		assertFalse( Files.exists( directory.resolve( "thinning.ckpt" ) ) );
+		// the edit grown by the margin, or more if its frame was not thin
+		assertEquals( 1, regions.length );
+		assertTrue( regions[ 0 ].contains( 10, 6, 4 ) && regions[ 0 ].contains( 35, 31, 29 ) );
+
+		for( int z = 0; z < DEPTH; z++ )
+			for( int y = 0; y < HEIGHT; y++ )
+				for( int x = 0; x < WIDTH; x++ )
+				{
+					// outside the box the skeleton is unchanged, and inside it is thin
+					if( !regions[ 0 ].contains( x, y, z ) )
+						assertEquals( before.get( x, y, z ), skeleton.get( x, y, z ), x + "," + y + "," + z );
+					if( skeleton.get( x, y, z ) )
+						assertTrue( edited.get( x, y, z ), x + "," + y + "," + z );
+				}
+		final byte[][] result = toSlices( skeleton );
+		assertArrayEquals( TestVolumes.components( mask, WIDTH, HEIGHT ), 
+				TestVolumes.components( result, WIDTH, HEIGHT ) );
+
+		// thinning the whole result again deletes nothing
+		final byte[][] again = TestVolumes.copy( result );
+		new Skeletonizer().thin( again, WIDTH, HEIGHT );
+		assertEquals( TestVolumes.count( result ), TestVolumes.count( again ) );
+	}
+
+	@Test
+	void separateEditsAreThinnedSeparately()
+	{
+		final byte[][] mask = new byte[ DEPTH ][ WIDTH * HEIGHT ];
+		final BitVolume skeleton = thin( mask );
+		final BoundingBox first = new BoundingBox( 2, 3, 4, 7, 8, 9 );
+		final BoundingBox second = new BoundingBox( 40, 30, 28, 45, 37, 33 );
+		fill( mask, first );
+		fill( mask, second );
+		final BitVolume edited = BitVolume.fromSlices( mask, WIDTH, HEIGHT, value -> value != 0 );
+
+		final IncrementalSkeletonizer incremental = new IncrementalSkeletonizer( new Skeletonizer() );
+		incremental.setMargin( 2 );
+		final BoundingBox[] regions = incremental.rethin( skeleton, edited, first, second, 
+				new BoundingBox( 60, 0, 0, 70, 5, 5 ) );
+		assertArrayEquals( new BoundingBox[] { new BoundingBox( 0, 1, 2, 9, 10, 11 ), 
+				new BoundingBox( 38, 28, 26, 47, 39, 35 ) }, regions );
+
+		// same skeleton as the whole edited mask, since the edits are isolated
+		assertArrayEquals( toSlices( thin( mask ) ), toSlices( skeleton ) );
+	}
+
+	@Test
+	void grownBoxesAreMergedAgain()
+	{
+		final byte[][] mask = TestVolumes.create( "tubes", WIDTH, HEIGHT, DEPTH, 65 );
+		final BitVolume skeleton = thin( mask );
+		final BoundingBox[] edits = { new BoundingBox( 20, 10, 23, 25, 15, 28 ), 
+				new BoundingBox( 29, 22, 3, 34, 27, 8 ), new BoundingBox( 11, 10, 18, 16, 15, 23 ) };
+		for( BoundingBox edit : edits )
+			fill( mask, edit );
+		final BitVolume edited = BitVolume.fromSlices( mask, WIDTH, HEIGHT, value -> value != 0 );
+
+		// the first box grows until it reaches the second one
+		final IncrementalSkeletonizer incremental = new IncrementalSkeletonizer( new Skeletonizer() );
+		incremental.setMargin( 1 );
+		final BoundingBox[] regions = incremental.rethin( skeleton, edited, edits );
+		for( int i = 0; i < regions.length; i++ )
+			for( int j = i + 1; j < regions.length; j++ )
+				assertFalse( regions[ i ].getMinX() <= regions[ j ].getMaxX() && regions[ j ].getMinX() <= regions[ i ].getMaxX()
+						&& regions[ i ].getMinY() <= regions[ j ].getMaxY() && regions[ j ].getMinY() <= regions[ i ].getMaxY()
+						&& regions[ i ].getMinZ() <= regions[ j ].getMaxZ() && regions[ j ].getMinZ() <= regions[ i ].getMaxZ(), 
+						regions[ i ] + " overlaps " + regions[ j ] );
+
+		final byte[][] result = toSlices( skeleton );
+		final byte[][] again = TestVolumes.copy( result );
+		new Skeletonizer().thin( again, WIDTH, HEIGHT );
+		assertEquals( TestVolumes.count( result ), TestVolumes.count( again ) );
+	}
+
+	@Test
+	void maskOfOtherSizeIsRejected()
+	{
+		final IncrementalSkeletonizer incremental = new IncrementalSkeletonizer( new Skeletonizer() );
+		assertThrows( IllegalArgumentException.class, () -> incremental.rethin( new BitVolume( 4, 4, 4 ), 
+				new BitVolume( 4, 4, 5 ), new BoundingBox( 0, 0, 0, 1, 1, 1 ) ) );
+		assertThrows( IllegalArgumentException.class, () -> incremental.setMargin( -1 ) );
+		assertFalse( new BoundingBox( 0, 0, 0, 1, 1, 1 ).contains( 2, 0, 0 ) );
+	}
+
+	/** @return skeleton of a volume given as slices, as a bit volume */
+	private static BitVolume thin(byte[][] slices)
+	{
+		final BitVolume volume = BitVolume.fromSlices( slices, WIDTH, HEIGHT, value -> value != 0 );
+		new Skeletonizer().thin( volume );
+		return volume;
+	}
+
+	/** @return copy of a bit volume */
+	private static BitVolume copy(BitVolume volume)
+	{
+		return BitVolume.fromSlices( toSlices( volume ), WIDTH, HEIGHT, value -> value != 0 );
+	}
+
+	/** @return slices of a bit volume, 255 for foreground */
+	private static byte[][] toSlices(BitVolume volume)
+	{
+		final byte[][] slices = new byte[ DEPTH ][ WIDTH * HEIGHT ];
+		for( int z = 0; z < DEPTH; z++ )
+			for( int y = 0; y < HEIGHT; y++ )
+				for( int x = 0; x < WIDTH; x++ )
+					if( volume.get( x, y, z ) )
+						slices[ z ][ x + y * WIDTH ] = (byte) 255;
+		return slices;
+	}
+
+	/** set the voxels of a box to foreground */
+	private static void fill(byte[][] slices, BoundingBox box)
+	{
+		for( int z = box.getMinZ(); z <= box.getMaxZ(); z++ )
+			for( int y = box.getMinY(); y <= box.getMaxY(); y++ )
+				for( int x = box.getMinX(); x <= box.getMaxX(); x++ )
+					slices[ z ][ x + y * WIDTH ] = (byte) 255;
+	}
+}
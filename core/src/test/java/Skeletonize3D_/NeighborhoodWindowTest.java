@@ -0,0 +1,100 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of the border point masks of the {@link NeighborhoodWindow}.
+ */
+class NeighborhoodWindowTest
+{
+	@Test
+	void rowBorderPointsMatchVoxelNeighbors()
+	{
+		// 3 words per row, with the last word partly used
+		final int width = 150, height = 6, depth = 5;
+		final BitVolume volume = new BitVolume( width, height, depth );
+		final Random random = new Random( 3 );
+		for( int z = 0; z < depth; z++ )
+			for( int y = 0; y < height; y++ )
+				for( int x = 0; x < width; x++ )
+					volume.set( x, y, z, random.nextInt( 3 ) > 0 );
+
+		// N, S, E, W, U, B neighbors
+		final int[][] offsets = { { 0, -1, 0 }, { 0, 1, 0 }, { 1, 0, 0 }, { -1, 0, 0 }, { 0, 0, 1 }, { 0, 0, -1 } };
+		final NeighborhoodWindow window = new NeighborhoodWindow( volume );
+		final long[] borderPoints = new long[ volume.getWordsPerRow() ];
+		for( int border = 1; border <= 6; border++ )
+			for( int z = 0; z < depth; z++ )
+				for( int y = 0; y < height; y++ )
+				{
+					window.setRow( y, z );
+					window.getBorderPoints( border, 0, borderPoints.length, borderPoints );
+					for( int word = 0; word < borderPoints.length; word++ )
+						assertEquals( window.getBorderPoints( word, border ), borderPoints[ word ] );
+					for( int x = 0; x < width; x++ )
+					{
+						final int[] d = offsets[ border - 1 ];
+						final boolean expected = volume.get( x, y, z ) 
+								&& !get( volume, x + d[ 0 ], y + d[ 1 ], z + d[ 2 ] );
+						final int bit = x + 1;
+						assertEquals( expected, ( borderPoints[ bit >> 6 ] >>> ( bit & 63 ) & 1 ) != 0, 
+								"border " + border + " (" + x + "," + y + "," + z + ")" );
+					}
+				}
+	}
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Get a voxel, the outside of the volume being background.
+	 *
+	 * @param volume binary volume
+	 * @param x x- coordinate
+	 * @param y y- coordinate
+	 * @param z z- coordinate
+	 * @return voxel value
+	 */
+	private static boolean get(BitVolume volume, int x, int y, int z)
+	{
+		return x >= 0 && y >= 0 && z >= 0 && x < volume.getWidth() && y < volume.getHeight() 
+				&& z < volume.getDepth() && volume.get( x, y, z );
+	} /* end get */
+
+} /* end NeighborhoodWindowTest */
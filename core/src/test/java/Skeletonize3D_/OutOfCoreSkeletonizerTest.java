@@ -0,0 +1,188 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests of the {@link OutOfCoreSkeletonizer} against the reference thinning.
+ */
+class OutOfCoreSkeletonizerTest
+{
+	@TempDir
+	Path directory;
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Thin the test volumes out of core and compare with the reference.
+	 *
+	 * @param format file format
+	 * @param windowBytes window size
+	 * @throws IOException if a file cannot be written
+	 */
+	private void assertReferenceSkeleton(OutOfCoreSkeletonizer.Format format, long windowBytes) throws IOException
+	{
+		for( String kind : TestVolumes.KINDS )
+			for( int[] size : TestVolumes.SIZES )
+			{
+				final int width = size[ 0 ], height = size[ 1 ], depth = size[ 2 ];
+				final byte[][] expected = TestVolumes.create( kind, width, height, depth, 5 );
+				final Path file = directory.resolve( kind + width + "x" + height + "x" + depth );
+				Files.write( file, toFile( expected, width, height, format ) );
+				ReferenceThinning.thin( expected, width, height );
+
+				final OutOfCoreSkeletonizer skeletonizer = new OutOfCoreSkeletonizer( file, format, width, height, depth );
+				skeletonizer.setWindowBytes( windowBytes );
+				skeletonizer.thin();
+				final byte[] actual = Files.readAllBytes( file );
+				final byte[] reference = toFile( expected, width, height, format );
+				for( int i = 0; i < reference.length; i++ )
+					assertEquals( reference[ i ] != 0, actual[ i ] != 0, kind + " " + width + "x" + height + "x" + depth + " byte " + i );
+			}
+	} /* end assertReferenceSkeleton */
+
+	@Test
+	void rawFileWithSmallestWindowGivesReferenceSkeleton() throws IOException
+	{
+		assertReferenceSkeleton( OutOfCoreSkeletonizer.Format.RAW_8BIT, 1 );
+	}
+
+	@Test
+	void bitPackedFileGivesReferenceSkeleton() throws IOException
+	{
+		assertReferenceSkeleton( OutOfCoreSkeletonizer.Format.BIT_PACKED, 1 );
+		assertReferenceSkeleton( OutOfCoreSkeletonizer.Format.BIT_PACKED, 1 << 20 );
+	}
+
+	@Test
+	void medialSurfaceGivesInMemorySkeleton() throws IOException
+	{
+		final byte[][] expected = TestVolumes.create( "spheres", 40, 35, 30, 8 );
+		final Path file = directory.resolve( "surface" );
+		Files.write( file, toFile( expected, 40, 35, OutOfCoreSkeletonizer.Format.RAW_8BIT ) );
+		final Skeletonizer skeletonizer = new Skeletonizer();
+		skeletonizer.setMedialSurface( true );
+		skeletonizer.thin( expected, 40, 35 );
+
+		final OutOfCoreSkeletonizer outOfCore = new OutOfCoreSkeletonizer( file, OutOfCoreSkeletonizer.Format.RAW_8BIT, 40, 35, 30 );
+		outOfCore.setMedialSurface( true );
+		outOfCore.setWindowBytes( 1 );
+		outOfCore.thin();
+		assertArrayEquals( toFile( expected, 40, 35, OutOfCoreSkeletonizer.Format.RAW_8BIT ), Files.readAllBytes( file ) );
+	}
+
+	@Test
+	void paddingBitsAreKept() throws IOException
+	{
+		final Path file = directory.resolve( "padding" );
+		// 3x3x3 cube in a 5x5x5 volume, with all the padding bits set
+		final byte[] bytes = new byte[ 25 ];
+		for( int z = 1; z < 4; z++ )
+			for( int y = 1; y < 4; y++ )
+				bytes[ z * 5 + y ] = 0b1110;
+		for( int i = 0; i < bytes.length; i++ )
+			bytes[ i ] |= (byte) 0xE0;
+		Files.write( file, bytes );
+		final byte[][] reference = new byte[ 5 ][ 25 ];
+		for( int z = 1; z < 4; z++ )
+			for( int y = 1; y < 4; y++ )
+				for( int x = 1; x < 4; x++ )
+					reference[ z ][ x + y * 5 ] = (byte) 255;
+		ReferenceThinning.thin( reference, 5, 5 );
+		int expected = 0;
+		for( byte[] slice : reference )
+			for( byte b : slice )
+				expected += b != 0 ? 1 : 0;
+
+		new OutOfCoreSkeletonizer( file, OutOfCoreSkeletonizer.Format.BIT_PACKED, 5, 5, 5 ).thin();
+		final byte[] result = Files.readAllBytes( file );
+		int foreground = 0;
+		for( byte b : result )
+		{
+			assertEquals( 0xE0, b & 0xE0 );
+			foreground += Integer.bitCount( b & 0x1F );
+		}
+		assertEquals( expected, foreground );
+	}
+
+	@Test
+	void shortFileIsRejected() throws IOException
+	{
+		final Path file = directory.resolve( "short" );
+		Files.write( file, new byte[ 10 ] );
+		assertThrows( EOFException.class, () -> 
+				new OutOfCoreSkeletonizer( file, OutOfCoreSkeletonizer.Format.RAW_8BIT, 2, 2, 3 ).thin() );
+	}
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Write a volume in a file format.
+	 *
+	 * @param slices volume slices
+	 * @param width volume width
+	 * @param height volume height
+	 * @param format file format
+	 * @return file contents
+	 */
+	private static byte[] toFile(byte[][] slices, int width, int height, OutOfCoreSkeletonizer.Format format)
+	{
+		if( format == OutOfCoreSkeletonizer.Format.RAW_8BIT )
+		{
+			final byte[] bytes = new byte[ slices.length * width * height ];
+			for( int z = 0; z < slices.length; z++ )
+				System.arraycopy( slices[ z ], 0, bytes, z * width * height, width * height );
+			return bytes;
+		}
+		final int rowBytes = ( width + 7 ) / 8;
+		final byte[] bytes = new byte[ slices.length * height * rowBytes ];
+		for( int z = 0; z < slices.length; z++ )
+			for( int y = 0; y < height; y++ )
+				for( int x = 0; x < width; x++ )
+					if( slices[ z ][ x + y * width ] != 0 )
+						bytes[ ( z * height + y ) * rowBytes + x / 8 ] |= 1 << ( x % 8 );
+		return bytes;
+	} /* end toFile */
+
+} /* end OutOfCoreSkeletonizerTest */
@@ -0,0 +1,136 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+import java.util.ArrayList;
+
+/**
+ * Straightforward implementation of the thinning of [Lee94], as in the
+ * original plugin: every point is examined in every subiteration with the
+ * 27-pixels neighborhood, the Euler LUT and the octree labeling. The
+ * engines must produce exactly the same skeleton.
+ */
+final class ReferenceThinning
+{
+	/** offsets (dx, dy, dz) of the N, S, E, W, U and B 6-neighbors */
+	private static final int[][] BORDERS = { { 0, -1, 0 }, { 0, 1, 0 }, { 1, 0, 0 }, { -1, 0, 0 }, { 0, 0, 1 }, { 0, 0, -1 } };
+
+	private ReferenceThinning()
+	{
+	}
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Thin a volume in place, setting the deleted pixels to 0.
+	 *
+	 * @param slices volume slices, non-zero pixels being foreground
+	 * @param width volume width
+	 * @param height volume height
+	 */
+	static void thin(byte[][] slices, int width, int height)
+	{
+		final int depth = slices.length;
+		final int[] eulerLUT = new int[ 256 ];
+		Skeletonizer.fillEulerLUT( eulerLUT );
+		final ArrayList<int[]> simpleBorderPoints = new ArrayList<int[]>();
+
+		int unchangedBorders = 0;
+		while( unchangedBorders < 6 )
+		{
+			unchangedBorders = 0;
+			for( int currentBorder = 1; currentBorder <= 6; currentBorder++ )
+			{
+				final int[] b = BORDERS[ currentBorder - 1 ];
+				for( int z = 0; z < depth; z++ )
+					for( int y = 0; y < height; y++ )
+						for( int x = 0; x < width; x++ )
+						{
+							if( get( slices, width, height, x, y, z ) == 0 )
+								continue;
+							if( depth == 1 && currentBorder > 4 )
+								continue;
+							if( get( slices, width, height, x + b[ 0 ], y + b[ 1 ], z + b[ 2 ] ) != 0 )
+								continue;
+							final byte[] neighbors = getNeighborhood( slices, width, height, x, y, z );
+							int numberOfNeighbors = -1;
+							for( byte n : neighbors )
+								numberOfNeighbors += n;
+							if( numberOfNeighbors == 1 )
+								continue;
+							if( !Skeletonizer.isEulerInvariant( neighbors, eulerLUT ) )
+								continue;
+							if( !Skeletonizer.isSimplePoint( neighbors ) )
+								continue;
+							simpleBorderPoints.add( new int[]{ x, y, z } );
+						}
+
+				boolean noChange = true;
+				for( int[] p : simpleBorderPoints )
+					if( Skeletonizer.isSimplePoint( getNeighborhood( slices, width, height, p[ 0 ], p[ 1 ], p[ 2 ] ) ) )
+					{
+						slices[ p[ 2 ] ][ p[ 0 ] + p[ 1 ] * width ] = 0;
+						noChange = false;
+					}
+				if( noChange )
+					unchangedBorders++;
+				simpleBorderPoints.clear();
+			}
+		}
+	} /* end thin */
+
+	/**
+	 * @return 27-pixels neighborhood of a point (1 for foreground, 0 border conditions)
+	 */
+	private static byte[] getNeighborhood(byte[][] slices, int width, int height, int x, int y, int z)
+	{
+		final byte[] neighbors = new byte[ 27 ];
+		for( int dz = -1, i = 0; dz <= 1; dz++ )
+			for( int dy = -1; dy <= 1; dy++ )
+				for( int dx = -1; dx <= 1; dx++, i++ )
+					neighbors[ i ] = get( slices, width, height, x + dx, y + dy, z + dz );
+		return neighbors;
+	}
+
+	/**
+	 * @return 1 if the pixel is foreground, 0 if it is background or out of the volume
+	 */
+	private static byte get(byte[][] slices, int width, int height, int x, int y, int z)
+	{
+		if( x < 0 || y < 0 || z < 0 || x >= width || y >= height || z >= slices.length )
+			return 0;
+		return (byte) ( slices[ z ][ x + y * width ] != 0 ? 1 : 0 );
+	}
+
+} /* end ReferenceThinning */
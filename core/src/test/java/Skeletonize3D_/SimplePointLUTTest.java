@@ -0,0 +1,134 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of the {@link SimplePointLUT} against the octree labeling.
+ */
+class SimplePointLUTTest
+{
+	@Test
+	void tableAgreesWithOctreeLabeling()
+	{
+		// all the configurations with up to 3 neighbors, then a random sample
+		final Random random = new Random( 1 );
+		for( int i = 0; i < 1 << 18; i++ )
+		{
+			final int configuration = i < 26 * 26 * 26 
+					? 1 << ( i % 26 ) | 1 << ( i / 26 % 26 ) | 1 << ( i / 676 ) 
+					: random.nextInt( SimplePointLUT.NUM_CONFIGURATIONS );
+			final byte[] neighbors = new byte[ 27 ];
+			for( int j = 0; j < 26; j++ )
+				if( ( configuration & ( 1 << j ) ) != 0 )
+					neighbors[ j < 13 ? j : j + 1 ] = 1;
+			neighbors[ 13 ] = 1;
+			assertEquals( Skeletonizer.isSimplePoint( neighbors ), SimplePointLUT.isSimple( configuration ), 
+					"configuration " + configuration );
+			assertEquals( configuration, SimplePointLUT.getConfiguration( neighbors ) );
+		}
+	}
+
+	/**
+	 * Check the whole table, about 2^26 octree labelings. Excluded from
+	 * the default build, run with the exhaustive profile 
+	 * ({@code mvn -P exhaustive test}).
+	 */
+	@Test
+	@Tag( "exhaustive" )
+	void everyConfigurationAgreesWithOctreeLabeling()
+	{
+		assertEquals( 0, SimplePointLUT.verify() );
+	}
+
+	@Test
+	void brokenTableResourceIsRejected() throws IOException
+	{
+		final byte[] table;
+		try( InputStream in = new GZIPInputStream( 
+				SimplePointLUT.class.getResourceAsStream( SimplePointLUT.RESOURCE_NAME ) ) )
+		{
+			table = in.readAllBytes();
+		}
+		assertEquals( SimplePointLUT.NUM_CONFIGURATIONS / 8, table.length );
+		SimplePointLUT.read( new ByteArrayInputStream( gzip( table, table.length ) ) );
+
+		assertThrows( IOException.class, () -> SimplePointLUT.read( 
+				new ByteArrayInputStream( gzip( table, table.length - 8 ) ) ) );
+		table[ 3 ] ^= 1;
+		assertThrows( IOException.class, () -> SimplePointLUT.read( 
+				new ByteArrayInputStream( gzip( table, table.length ) ) ) );
+	}
+
+	/** @return gzipped first bytes of an array */
+	private static byte[] gzip(byte[] bytes, int length) throws IOException
+	{
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try( OutputStream gz = new GZIPOutputStream( out ) )
+		{
+			gz.write( bytes, 0, length );
+		}
+		return out.toByteArray();
+	}
+
+	@Test
+	void packedNeighborhoodDropsTheCenter()
+	{
+		final Random random = new Random( 2 );
+		for( int i = 0; i < 1000; i++ )
+		{
+			final int neighborhood = random.nextInt( 1 << 27 );
+			final byte[] neighbors = new byte[ 27 ];
+			for( int j = 0; j < 27; j++ )
+				neighbors[ j ] = (byte) ( neighborhood >>> j & 1 );
+			assertEquals( SimplePointLUT.getConfiguration( neighbors ), SimplePointLUT.getConfiguration( neighborhood ) );
+		}
+	}
+
+} /* end SimplePointLUTTest */
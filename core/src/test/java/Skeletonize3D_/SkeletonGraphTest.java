@@ -0,0 +1,197 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of the skeleton graph extraction.
+ */
+class SkeletonGraphTest
+{
+	@Test
+	void branchesMeetAtMergedJunction()
+	{
+		// four arms meeting at (10, 10, 10): the voxels next to the center
+		// also touch two arms, so the junction is made of 5 voxels
+		final BitVolume volume = new BitVolume( 20, 20, 20 );
+		for( int x = 5; x <= 15; x++ )
+			volume.set( x, 10, 10, true );
+		for( int y = 11; y <= 14; y++ )
+			volume.set( 10, y, 10, true );
+		for( int z = 7; z <= 9; z++ )
+			volume.set( 10, 10, z, true );
+		final SkeletonGraph graph = SkeletonGraph.extract( volume );
+
+		assertEquals( 4, graph.countNodes( SkeletonGraph.END_POINT ) );
+		assertEquals( 1, graph.countNodes( SkeletonGraph.JUNCTION ) );
+		assertEquals( 4, graph.getEdgeCount() );
+		assertEquals( 4 + 4 + 3 + 2, graph.getTotalLength(), 1e-9 );
+		for( int node = 0; node < graph.getNodeCount(); node++ )
+			if( graph.getNodeType( node ) == SkeletonGraph.JUNCTION )
+			{
+				assertEquals( 4, graph.getNodeDegree( node ) );
+				assertEquals( 5, graph.getNodeVoxelCount( node ) );
+			}
+			else
+				assertEquals( 1, graph.getNodeDegree( node ) );
+		assertPartition( volume, graph );
+	}
+
+	@Test
+	void diagonalStepsAndAdjacentEndPoints()
+	{
+		final BitVolume volume = new BitVolume( 10, 10, 10 );
+		// a diagonal segment of 4 voxels, a 2-voxel segment and an isolated voxel
+		for( int i = 0; i < 4; i++ )
+			volume.set( 1 + i, 1 + i, 1 + i, true );
+		volume.set( 7, 2, 2, true );
+		volume.set( 8, 2, 2, true );
+		volume.set( 8, 8, 8, true );
+		final SkeletonGraph graph = SkeletonGraph.extract( volume );
+
+		assertEquals( 4, graph.countNodes( SkeletonGraph.END_POINT ) );
+		assertEquals( 1, graph.countNodes( SkeletonGraph.ISOLATED ) );
+		assertEquals( 2, graph.getEdgeCount() );
+		for( int edge = 0; edge < graph.getEdgeCount(); edge++ )
+		{
+			if( graph.getEdgeVoxelCount( edge ) == 0 )
+				assertEquals( 1, graph.getEdgeLength( edge ), 1e-9 );
+			else
+			{
+				assertEquals( 2, graph.getEdgeVoxelCount( edge ) );
+				assertEquals( 3 * Math.sqrt( 3 ), graph.getEdgeLength( edge ), 1e-9 );
+				// the path goes from the source to the target
+				final int source = graph.getEdgeSource( edge );
+				assertEquals( graph.getNodeX( source, 0 ) == 1 ? 2 : 3, graph.getEdgeX( edge, 0 ) );
+			}
+		}
+		assertPartition( volume, graph );
+	}
+
+	@Test
+	void closedCurveGetsCycleNode()
+	{
+		// octagon whose corners are diagonal steps (square corners would
+		// be junctions in 26-connectivity)
+		final BitVolume volume = new BitVolume( 8, 8, 3 );
+		final int[][] ring = { { 2, 1 }, { 3, 1 }, { 4, 1 }, { 5, 2 }, { 5, 3 }, 
+				{ 4, 4 }, { 3, 4 }, { 2, 4 }, { 1, 3 }, { 1, 2 } };
+		for( int[] p : ring )
+			volume.set( p[ 0 ], p[ 1 ], 1, true );
+		final SkeletonGraph graph = SkeletonGraph.extract( volume );
+
+		assertEquals( 1, graph.getNodeCount() );
+		assertEquals( SkeletonGraph.CYCLE, graph.getNodeType( 0 ) );
+		assertEquals( 1, graph.getEdgeCount() );
+		assertEquals( 0, graph.getEdgeSource( 0 ) );
+		assertEquals( 0, graph.getEdgeTarget( 0 ) );
+		assertEquals( 2, graph.getNodeDegree( 0 ) );
+		assertEquals( 9, graph.getEdgeVoxelCount( 0 ) );
+		assertEquals( 6 + 4 * Math.sqrt( 2 ), graph.getEdgeLength( 0 ), 1e-9 );
+		assertPartition( volume, graph );
+	}
+
+	@Test
+	void thinningSendsGraphOfSkeleton()
+	{
+		for( String kind : TestVolumes.KINDS )
+		{
+			final int width = 40, height = 35, depth = 30;
+			final byte[][] slices = TestVolumes.create( kind, width, height, depth, 5 );
+			final BitVolume volume = BitVolume.fromSlices( slices, width, height, value -> value != 0 );
+			final Skeletonizer skeletonizer = new Skeletonizer();
+			final SkeletonGraph[] graphs = new SkeletonGraph[ 1 ];
+			skeletonizer.setGraphListener( graph -> graphs[ 0 ] = graph );
+			skeletonizer.thin( volume );
+
+			final SkeletonGraph graph = graphs[ 0 ];
+			assertNotNull( graph, kind );
+			assertPartition( volume, graph );
+			int degrees = 0;
+			for( int node = 0; node < graph.getNodeCount(); node++ )
+			{
+				degrees += graph.getNodeDegree( node );
+				switch( graph.getNodeType( node ) )
+				{
+					case SkeletonGraph.ISOLATED:
+						assertEquals( 0, graph.getNodeDegree( node ), kind );
+						break;
+					case SkeletonGraph.END_POINT:
+						assertEquals( 1, graph.getNodeDegree( node ), kind );
+						break;
+					default:
+						assertTrue( graph.getNodeDegree( node ) >= 2, kind );
+				}
+			}
+			assertEquals( 2 * graph.getEdgeCount(), degrees, kind );
+		}
+	}
+
+	/**
+	 * Check that each voxel of a skeleton belongs either to a single node
+	 * or to a single edge.
+	 *
+	 * @param volume skeleton
+	 * @param graph graph of the skeleton
+	 */
+	private static void assertPartition(BitVolume volume, SkeletonGraph graph)
+	{
+		final Set<Long> voxels = new HashSet<>();
+		for( int node = 0; node < graph.getNodeCount(); node++ )
+			for( int i = 0; i < graph.getNodeVoxelCount( node ); i++ )
+				assertTrue( voxels.add( key( volume, graph.getNodeX( node, i ), 
+						graph.getNodeY( node, i ), graph.getNodeZ( node, i ) ) ) );
+		for( int edge = 0; edge < graph.getEdgeCount(); edge++ )
+			for( int i = 0; i < graph.getEdgeVoxelCount( edge ); i++ )
+				assertTrue( voxels.add( key( volume, graph.getEdgeX( edge, i ), 
+						graph.getEdgeY( edge, i ), graph.getEdgeZ( edge, i ) ) ) );
+		assertEquals( volume.count(), voxels.size() );
+	}
+
+	/** @return key of a foreground voxel */
+	private static long key(BitVolume volume, int x, int y, int z)
+	{
+		assertTrue( volume.get( x, y, z ) );
+		return ( (long) z * volume.getHeight() + y ) * volume.getWidth() + x;
+	}
+}
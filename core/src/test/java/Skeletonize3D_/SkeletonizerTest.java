@@ -0,0 +1,430 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests of the {@link Skeletonizer} engine against the reference thinning.
+ */
+class SkeletonizerTest
+{
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Check that an engine configuration gives the reference skeleton on
+	 * all test volumes.
+	 *
+	 * @param configuration engine configuration
+	 */
+	private static void assertReferenceSkeleton(Consumer<Skeletonizer> configuration)
+	{
+		final Skeletonizer skeletonizer = new Skeletonizer();
+		configuration.accept( skeletonizer );
+		for( String kind : TestVolumes.KINDS )
+			for( int[] size : TestVolumes.SIZES )
+			{
+				final byte[][] expected = TestVolumes.create( kind, size[ 0 ], size[ 1 ], size[ 2 ], 31 );
+				final byte[][] actual = TestVolumes.copy( expected );
+				ReferenceThinning.thin( expected, size[ 0 ], size[ 1 ] );
+				skeletonizer.thin( actual, size[ 0 ], size[ 1 ] );
+				for( int z = 0; z < size[ 2 ]; z++ )
+					assertArrayEquals( expected[ z ], actual[ z ], kind + " " + size[ 0 ] + "x" + size[ 1 ] + "x" + size[ 2 ] + " slice " + z );
+			}
+	} /* end assertReferenceSkeleton */
+
+	@Test
+	void defaultEngineGivesReferenceSkeleton()
+	{
+		assertReferenceSkeleton( s -> {} );
+	}
+
+	@Test
+	void fullScanGivesReferenceSkeleton()
+	{
+		assertReferenceSkeleton( s -> {
+			s.setActiveFront( false );
+			s.setParallelism( 1 );
+		});
+	}
+
+	@Test
+	void parallelSearchGivesReferenceSkeleton()
+	{
+		assertReferenceSkeleton( s -> s.setParallelism( 3 ) );
+		assertReferenceSkeleton( s -> {
+			s.setActiveFront( false );
+			s.setParallelism( 4 );
+		});
+	}
+
+	@Test
+	void subfieldsPreserveTopology()
+	{
+		final Skeletonizer skeletonizer = new Skeletonizer();
+		skeletonizer.setSubfields( true );
+		skeletonizer.setParallelism( 3 );
+		for( String kind : new String[]{ "spheres", "tubes" } )
+		{
+			final byte[][] slices = TestVolumes.create( kind, 40, 35, 30, 31 );
+			final int[] before = TestVolumes.components( slices, 40, 35 );
+			skeletonizer.thin( slices, 40, 35 );
+			assertArrayEquals( before, TestVolumes.components( slices, 40, 35 ), kind );
+		}
+	}
+
+	@Test
+	void flatBufferGivesSameSkeletonAsSlices()
+	{
+		final byte[][] slices = TestVolumes.create( "spheres", 40, 35, 30, 7 );
+		final byte[] voxels = new byte[ 40 * 35 * 30 ];
+		for( int z = 0; z < 30; z++ )
+			System.arraycopy( slices[ z ], 0, voxels, z * 40 * 35, 40 * 35 );
+		final Skeletonizer skeletonizer = new Skeletonizer();
+		skeletonizer.thin( slices, 40, 35 );
+		skeletonizer.thin( voxels, 40, 35, 30 );
+		for( int z = 0; z < 30; z++ )
+			for( int i = 0; i < 40 * 35; i++ )
+				assertEquals( slices[ z ][ i ], voxels[ z * 40 * 35 + i ] );
+	}
+
+	@Test
+	void binarizingThinningWritesSkeletonValue()
+	{
+		final byte[][] slices = TestVolumes.create( "noise", 25, 20, 9, 6 );
+		final byte[][] expected = TestVolumes.copy( slices );
+		new Skeletonizer().thin( expected, 25, 20 );
+		final Skeletonizer skeletonizer = new Skeletonizer();
+		skeletonizer.setParallelism( 3 );
+		skeletonizer.thin( slices, 25, 20, (byte) 255 );
+		for( int z = 0; z < slices.length; z++ )
+			for( int i = 0; i < slices[ z ].length; i++ )
+				assertEquals( expected[ z ][ i ] != 0 ? (byte) 255 : 0, slices[ z ][ i ] );
+	}
+
+	@Test
+	void sliceRangeOnlyThinsTheRange()
+	{
+		final byte[][] slices = TestVolumes.create( "box", 20, 20, 20, 1 );
+		final BitVolume volume = new BitVolume( 20, 20, 20 );
+		for( int z = 0; z < 20; z++ )
+			for( int y = 0; y < 20; y++ )
+				for( int x = 0; x < 20; x++ )
+					volume.set( x, y, z, slices[ z ][ x + y * 20 ] != 0 );
+		new Skeletonizer().thin( volume, 5, 15 );
+		for( int z = 0; z < 20; z++ )
+			for( int y = 0; y < 20; y++ )
+				for( int x = 0; x < 20; x++ )
+					if( z < 5 || z >= 15 )
+						assertEquals( slices[ z ][ x + y * 20 ] != 0, volume.get( x, y, z ) );
+		assertTrue( volume.count() < 20 * 20 * 20 - 10 * 20 * 10 );
+	}
+
+	@Test
+	void progressIsReported()
+	{
+		final AtomicInteger messages = new AtomicInteger();
+		final AtomicInteger slices = new AtomicInteger();
+		final Skeletonizer skeletonizer = new Skeletonizer();
+		skeletonizer.setProgressListener( new Skeletonizer.ProgressListener() {
+			public void showStatus(String message)
+			{
+				messages.incrementAndGet();
+			}
+
+			public void showProgress(int done, int total)
+			{
+				slices.incrementAndGet();
+			}
+		});
+		skeletonizer.thin( TestVolumes.create( "tubes", 20, 20, 10, 1 ), 20, 20 );
+		assertTrue( messages.get() > 0 );
+		assertTrue( slices.get() >= 10 );
+	}
+
+	@Test
+	void packedSurfacePointTestMatchesOctantTests()
+	{
+		final int[] pointsLUT = new int[ 256 ];
+		Skeletonizer.fillnumOfPointsLUT( pointsLUT );
+		final Random random = new Random( 4 );
+		for( int i = 0; i < 1 << 18; i++ )
+		{
+			// sparse neighborhoods first, where surface points are frequent
+			final int neighborhood = 1 << 13 | ( i < 1 << 16 
+					? random.nextInt( 1 << 27 ) & random.nextInt( 1 << 27 ) & random.nextInt( 1 << 27 ) 
+					: random.nextInt( 1 << 27 ) );
+			final byte[] neighbors = new byte[ 27 ];
+			for( int j = 0; j < 27; j++ )
+				neighbors[ j ] = (byte) ( neighborhood >>> j & 1 );
+			assertEquals( Skeletonizer.isSurfacePoint( neighbors, pointsLUT ), 
+					Skeletonizer.isSurfacePoint( neighborhood ), "neighborhood " + neighborhood );
+		}
+	}
+
+	@Test
+	void medialSurfaceKeepsPlates()
+	{
+		// 5 voxels thick plate
+		final byte[][] axis = new byte[ 9 ][ 30 * 30 ];
+		for( int z = 2; z < 7; z++ )
+			for( int y = 2; y < 28; y++ )
+				for( int x = 2; x < 28; x++ )
+					axis[ z ][ x + y * 30 ] = 1;
+		final byte[][] surface = TestVolumes.copy( axis );
+		final int[] before = TestVolumes.components( axis, 30, 30 );
+
+		new Skeletonizer().thin( axis, 30, 30 );
+		final Skeletonizer skeletonizer = new Skeletonizer();
+		skeletonizer.setMedialSurface( true );
+		skeletonizer.thin( surface, 30, 30 );
+
+		assertArrayEquals( before, TestVolumes.components( surface, 30, 30 ) );
+		// the medial surface covers most of the plate, the medial axes do not
+		assertTrue( TestVolumes.count( surface ) > 20 * 20, TestVolumes.count( surface ) + " voxels" );
+		assertTrue( TestVolumes.count( axis ) < TestVolumes.count( surface ) / 4 );
+	}
+
+	@Test
+	void metricsAccountForDeletedPoints()
+	{
+		final byte[][] slices = TestVolumes.create( "spheres", 40, 35, 30, 3 );
+		final long before = TestVolumes.count( slices );
+		final List<SubiterationMetrics> metrics = new ArrayList<>();
+		final Skeletonizer skeletonizer = new Skeletonizer();
+		skeletonizer.setMetricsListener( metrics::add );
+		skeletonizer.thin( slices, 40, 35 );
+
+		long deleted = 0;
+		for( int i = 0; i < metrics.size(); i++ )
+		{
+			final SubiterationMetrics m = metrics.get( i );
+			assertEquals( i / 6 + 1, m.getIteration() );
+			assertEquals( i % 6 + 1, m.getBorder() );
+			assertEquals( before - deleted, m.getForeground() );
+			assertTrue( m.getDeleted() <= m.getCandidates() );
+			assertTrue( m.getScanNanos() >= 0 && m.getRecheckNanos() >= 0 );
+			final BoundingBox box = m.getForegroundBox(), candidates = m.getCandidateBox();
+			assertEquals( m.getCandidates() == 0, candidates.isEmpty() );
+			if( !candidates.isEmpty() )
+				assertTrue( box.getMinX() <= candidates.getMinX() && candidates.getMaxX() <= box.getMaxX() 
+						&& box.getMinY() <= candidates.getMinY() && candidates.getMaxY() <= box.getMaxY() 
+						&& box.getMinZ() <= candidates.getMinZ() && candidates.getMaxZ() <= box.getMaxZ() );
+			// the last iteration deletes nothing
+			if( i >= metrics.size() - 6 )
+				assertEquals( 0, m.getDeleted() );
+			deleted += m.getDeleted();
+		}
+		assertEquals( 0, metrics.size() % 6 );
+		assertEquals( before - TestVolumes.count( slices ), deleted );
+	}
+
+	@Test
+	void foregroundBoxFollowsDeletions()
+	{
+		// small object in a mostly empty volume
+		final byte[][] slices = new byte[ 40 ][ 50 * 45 ];
+		for( int z = 10; z < 25; z++ )
+			for( int y = 5; y < 12; y++ )
+				for( int x = 20; x < 44; x++ )
+					slices[ z ][ x + y * 50 ] = 1;
+		slices[ 30 ][ 3 + 40 * 50 ] = 1;
+		final byte[][] expected = TestVolumes.copy( slices );
+		ReferenceThinning.thin( expected, 50, 45 );
+
+		final List<SubiterationMetrics> metrics = new ArrayList<>();
+		final Skeletonizer skeletonizer = new Skeletonizer();
+		skeletonizer.setActiveFront( false );
+		skeletonizer.setMetricsListener( metrics::add );
+		skeletonizer.thin( slices, 50, 45 );
+		for( int z = 0; z < 40; z++ )
+			assertArrayEquals( expected[ z ], slices[ z ] );
+
+		assertEquals( "(3,5,10)-(43,40,30)", metrics.get( 0 ).getForegroundBox().toString() );
+		// box of the skeleton
+		int minX = 50, minY = 45, minZ = 40, maxX = -1, maxY = -1, maxZ = -1;
+		for( int z = 0; z < 40; z++ )
+			for( int y = 0; y < 45; y++ )
+				for( int x = 0; x < 50; x++ )
+					if( slices[ z ][ x + y * 50 ] != 0 )
+					{
+						minX = Math.min( minX, x );
+						minY = Math.min( minY, y );
+						minZ = Math.min( minZ, z );
+						maxX = Math.max( maxX, x );
+						maxY = Math.max( maxY, y );
+						maxZ = Math.max( maxZ, z );
+					}
+		final BoundingBox last = metrics.get( metrics.size() - 1 ).getForegroundBox();
+		assertEquals( maxX < 0 ? "empty" : new BoundingBox( minX, minY, minZ, maxX, maxY, maxZ ).toString(), last.toString() );
+		for( int i = 1; i < metrics.size(); i++ )
+			assertTrue( metrics.get( i ).getForegroundBox().getVolume() <= metrics.get( i - 1 ).getForegroundBox().getVolume() );
+	}
+
+	@Test
+	void metricsAreRecordedAsFlightRecorderEvents(@TempDir Path directory) throws IOException
+	{
+		final AtomicInteger subiterations = new AtomicInteger();
+		final Skeletonizer skeletonizer = new Skeletonizer();
+		skeletonizer.setMetricsListener( m -> subiterations.incrementAndGet() );
+		final Path file = directory.resolve( "thinning.jfr" );
+		try( Recording recording = new Recording() )
+		{
+			recording.enable( "Skeletonize3D_.Subiteration" );
+			recording.start();
+			skeletonizer.thin( TestVolumes.create( "tubes", 20, 20, 10, 1 ), 20, 20 );
+			recording.stop();
+			recording.dump( file );
+		}
+		int events = 0;
+		for( RecordedEvent event : RecordingFile.readAllEvents( file ) )
+			if( event.getEventType().getName().equals( "Skeletonize3D_.Subiteration" ) )
+			{
+				assertTrue( event.getInt( "deleted" ) <= event.getInt( "candidates" ) );
+				events++;
+			}
+		assertEquals( subiterations.get(), events );
+	}
+
+	@Test
+	void thinningResumesFromCheckpoint(@TempDir Path directory)
+	{
+		final byte[][] expected = TestVolumes.create( "spheres", 30, 25, 20, 4 );
+		final byte[][] slices = TestVolumes.copy( expected );
+		new Skeletonizer().thin( expected, 30, 25 );
+
+		// stop the thinning after a few subiterations, each with a checkpoint
+		final Path file = directory.resolve( "thinning.ckpt" );
+		final Skeletonizer stopped = new Skeletonizer();
+		stopped.setCheckpoint( file, 0 );
+		stopped.setMetricsListener( m -> {
+			assertTrue( m.getCheckpointBytes() > 0 );
+			if( m.getIteration() == 2 && m.getBorder() == 3 )
+				throw new IllegalStateException( "stopped" );
+		});
+		assertThrows( IllegalStateException.class, () -> stopped.thin( TestVolumes.copy( slices ), 30, 25 ) );
+		assertTrue( Files.exists( file ) );
+
+		// a thinning with other options does not accept the checkpoint
+		final Skeletonizer other = new Skeletonizer();
+		other.setMedialSurface( true );
+		other.setCheckpoint( file, 0 );
+		assertThrows( UncheckedIOException.class, () -> other.thin( TestVolumes.copy( slices ), 30, 25 ) );
+
+		final List<SubiterationMetrics> metrics = new ArrayList<>();
+		final Skeletonizer resumed = new Skeletonizer();
+		resumed.setCheckpoint( file, 60000 );
+		resumed.setMetricsListener( metrics::add );
+		resumed.thin( slices, 30, 25 );
+		assertEquals( 2, metrics.get( 0 ).getIteration() );
+		assertEquals( 4, metrics.get( 0 ).getBorder() );
+		for( int z = 0; z < slices.length; z++ )
+			assertArrayEquals( expected[ z ], slices[ z ] );
+		assertFalse( Files.exists( file ) );
+	}
+
+	@Test
+	void truncatedCheckpointLeavesStateUnchanged(@TempDir Path directory) throws IOException
+	{
+		final byte[][] slices = TestVolumes.create( "spheres", 20, 18, 12, 2 );
+		final BitVolume volume = BitVolume.fromSlices( slices, 20, 18, value -> value != 0 );
+		final BoundingBox region = new BoundingBox( 0, 0, 0, 19, 17, 11 );
+		final ActiveFront front = new ActiveFront( volume );
+		final Path file = directory.resolve( "thinning.ckpt" );
+		ThinningCheckpoint.write( file, volume, region, 0, front, 2, 3, 0 );
+
+		// cut the last word of the front
+		final byte[] content;
+		try( InputStream in = new InflaterInputStream( Files.newInputStream( file ) ) )
+		{
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[ 1 << 16 ];
+			for( int n; ( n = in.read( buffer ) ) > 0; )
+				bytes.write( buffer, 0, n );
+			content = bytes.toByteArray();
+		}
+		try( OutputStream out = new DeflaterOutputStream( Files.newOutputStream( file ) ) )
+		{
+			out.write( content, 0, content.length - 4 );
+		}
+
+		final long[] words = volume.getWords().clone();
+		for( int i = 1; i <= 6; i++ )
+			Arrays.fill( front.getChanged( i ), 0x5555555555555555L * i );
+		assertThrows( IOException.class, () -> ThinningCheckpoint.read( file, volume, region, 0, front ) );
+		assertArrayEquals( words, volume.getWords() );
+		for( int i = 1; i <= 6; i++ )
+			for( long word : front.getChanged( i ) )
+				assertEquals( 0x5555555555555555L * i, word );
+	}
+
+	@Test
+	void invalidArgumentsAreRejected()
+	{
+		final Skeletonizer skeletonizer = new Skeletonizer();
+		assertThrows( IllegalArgumentException.class, () -> skeletonizer.setParallelism( 0 ) );
+		assertThrows( IllegalArgumentException.class, () -> skeletonizer.setCheckpoint( null, -1 ) );
+		assertThrows( IllegalArgumentException.class, () -> skeletonizer.thin( new byte[ 10 ], 2, 2, 2 ) );
+		assertThrows( IllegalArgumentException.class, () -> skeletonizer.thin( new byte[][]{ new byte[ 3 ] }, 2, 2 ) );
+		assertThrows( IllegalArgumentException.class, () -> skeletonizer.thin( new BitVolume( 2, 2, 2 ), 1, 3 ) );
+	}
+
+} /* end SkeletonizerTest */
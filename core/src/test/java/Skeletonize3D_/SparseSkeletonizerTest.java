@@ -0,0 +1,158 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of the {@link SparseSkeletonizer} and of its hash set.
+ */
+class SparseSkeletonizerTest
+{
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Thin slices with the sparse engine.
+	 *
+	 * @param slices volume slices, thinned in place
+	 * @param width volume width
+	 * @param height volume height
+	 * @param activeFront true to examine only the active front
+	 * @param medialSurface true to compute medial surfaces
+	 */
+	private static void thin(byte[][] slices, int width, int height, boolean activeFront, boolean medialSurface)
+	{
+		final SparseSkeletonizer skeletonizer = new SparseSkeletonizer( width, height, slices.length, 0 );
+		skeletonizer.setActiveFront( activeFront );
+		skeletonizer.setMedialSurface( medialSurface );
+		for( int z = 0; z < slices.length; z++ )
+			for( int y = 0; y < height; y++ )
+				for( int x = 0; x < width; x++ )
+					if( slices[ z ][ x + y * width ] != 0 )
+						skeletonizer.add( x, y, z );
+		skeletonizer.thin();
+		for( int z = 0; z < slices.length; z++ )
+			for( int y = 0; y < height; y++ )
+				for( int x = 0; x < width; x++ )
+					if( !skeletonizer.contains( x, y, z ) )
+						slices[ z ][ x + y * width ] = 0;
+	} /* end thin */
+
+	@Test
+	void sparseEngineGivesReferenceSkeleton()
+	{
+		for( boolean activeFront : new boolean[]{ true, false } )
+			for( String kind : TestVolumes.KINDS )
+				for( int[] size : TestVolumes.SIZES )
+				{
+					final byte[][] expected = TestVolumes.create( kind, size[ 0 ], size[ 1 ], size[ 2 ], 17 );
+					final byte[][] actual = TestVolumes.copy( expected );
+					ReferenceThinning.thin( expected, size[ 0 ], size[ 1 ] );
+					thin( actual, size[ 0 ], size[ 1 ], activeFront, false );
+					for( int z = 0; z < size[ 2 ]; z++ )
+						assertArrayEquals( expected[ z ], actual[ z ], kind + " " + size[ 0 ] + "x" + size[ 1 ] + "x" + size[ 2 ] 
+								+ " slice " + z + ( activeFront ? "" : " (full scans)" ) );
+				}
+	}
+
+	@Test
+	void sparseMedialSurfaceMatchesDenseEngine()
+	{
+		final byte[][] expected = TestVolumes.create( "spheres", 40, 35, 30, 8 );
+		final byte[][] actual = TestVolumes.copy( expected );
+		final Skeletonizer skeletonizer = new Skeletonizer();
+		skeletonizer.setMedialSurface( true );
+		skeletonizer.thin( expected, 40, 35 );
+		thin( actual, 40, 35, true, true );
+		for( int z = 0; z < 30; z++ )
+			assertArrayEquals( expected[ z ], actual[ z ] );
+	}
+
+	@Test
+	void pointsAreGivenInOrder()
+	{
+		final SparseSkeletonizer skeletonizer = new SparseSkeletonizer( 10, 10, 10, 0 );
+		skeletonizer.add( 5, 0, 1 );
+		skeletonizer.add( 9, 9, 0 );
+		skeletonizer.add( 0, 1, 1 );
+		skeletonizer.add( 9, 9, 0 );
+		final StringBuilder points = new StringBuilder();
+		skeletonizer.forEach( (x, y, z) -> points.append( "(" + x + "," + y + "," + z + ")" ) );
+		assertEquals( "(9,9,0)(5,0,1)(0,1,1)", points.toString() );
+		assertEquals( 3, skeletonizer.size() );
+		assertFalse( skeletonizer.contains( -1, 0, 1 ) );
+		assertThrows( IllegalArgumentException.class, () -> skeletonizer.add( 10, 0, 0 ) );
+	}
+
+	@Test
+	void hashSetMatchesJavaSet()
+	{
+		final LongHashSet set = new LongHashSet( 0 );
+		final Set<Long> expected = new HashSet<>();
+		final Random random = new Random( 5 );
+		for( int i = 0; i < 200000; i++ )
+		{
+			// few distinct keys, so removals often shift colliding keys
+			final long key = random.nextInt( 5000 ) * 0x100000001L;
+			if( random.nextInt( 3 ) == 0 )
+				assertEquals( expected.remove( key ), set.remove( key ) );
+			else
+				assertEquals( expected.add( key ), set.add( key ) );
+			if( i % 50000 == 0 )
+				set.trim();
+		}
+		assertEquals( expected.size(), set.size() );
+		int found = 0;
+		for( int i = 0; i < set.capacity(); i++ )
+			if( set.getSlot( i ) != LongHashSet.EMPTY )
+			{
+				assertTrue( expected.contains( set.getSlot( i ) ) );
+				found++;
+			}
+		assertEquals( expected.size(), found );
+		for( int i = 0; i < 5000; i++ )
+			assertEquals( expected.contains( i * 0x100000001L ), set.contains( i * 0x100000001L ) );
+	}
+
+} /* end SparseSkeletonizerTest */
@@ -0,0 +1,134 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of the {@link StreamingSkeletonizer}.
+ */
+class StreamingSkeletonizerTest
+{
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Stream a volume by slabs.
+	 *
+	 * @param slices volume slices
+	 * @param width volume width
+	 * @param height volume height
+	 * @param slab number of slices per slab
+	 * @param halo number of carried slices
+	 * @return thinned slices
+	 * @throws InterruptedException if interrupted
+	 */
+	private static byte[][] stream(byte[][] slices, int width, int height, int slab, int halo) throws InterruptedException
+	{
+		final byte[][] result = new byte[ slices.length ][];
+		final int[] next = { 0 };
+		final StreamingSkeletonizer skeletonizer = new StreamingSkeletonizer( width, height, (z, pixels) -> {
+			assertEquals( next[ 0 ]++, z );
+			result[ z ] = pixels;
+		});
+		skeletonizer.setHalo( halo );
+		for( int z = 0; z < slices.length; z += slab )
+			skeletonizer.addSlab( Arrays.copyOfRange( slices, z, Math.min( slices.length, z + slab ) ) );
+		skeletonizer.finish();
+		assertEquals( slices.length, next[ 0 ] );
+		return result;
+	} /* end stream */
+
+	@Test
+	void streamedSkeletonKeepsBackgroundTopology() throws InterruptedException
+	{
+		for( String kind : TestVolumes.KINDS )
+			for( int[] size : TestVolumes.SIZES )
+				for( int slab : new int[]{ 1, 4 } )
+				{
+					final int width = size[ 0 ], height = size[ 1 ];
+					final byte[][] input = TestVolumes.create( kind, width, height, size[ 2 ], 9 );
+					final byte[][] reference = TestVolumes.copy( input );
+					ReferenceThinning.thin( reference, width, height );
+					final byte[][] result = stream( input, width, height, slab, 4 );
+					for( int z = 0; z < input.length; z++ )
+						for( int i = 0; i < width * height; i++ )
+							assertTrue( result[ z ][ i ] == 0 || input[ z ][ i ] != 0, "skeleton outside of the input" );
+					assertEquals( TestVolumes.components( reference, width, height )[ 1 ], 
+							TestVolumes.components( result, width, height )[ 1 ], kind + " slab " + slab );
+				}
+	}
+
+	@Test
+	void emptySlabsAreIgnored() throws InterruptedException
+	{
+		final int width = 17, height = 23;
+		final byte[][] input = TestVolumes.create( "spheres", width, height, 11, 9 );
+		final byte[][] expected = stream( input, width, height, 4, 4 );
+
+		final byte[][] result = new byte[ input.length ][];
+		final int[] next = { 0 };
+		final StreamingSkeletonizer skeletonizer = new StreamingSkeletonizer( width, height, (z, pixels) -> {
+			result[ z ] = pixels;
+			next[ 0 ]++;
+		});
+		skeletonizer.setHalo( 4 );
+		// empty slabs first, between and last
+		skeletonizer.addSlab( new byte[ 0 ][] );
+		for( int z = 0; z < input.length; z += 4 )
+		{
+			skeletonizer.addSlab( Arrays.copyOfRange( input, z, Math.min( input.length, z + 4 ) ) );
+			skeletonizer.addSlab( new byte[ 0 ][] );
+		}
+		skeletonizer.finish();
+		assertEquals( input.length, next[ 0 ] );
+		for( int z = 0; z < input.length; z++ )
+			assertArrayEquals( expected[ z ], result[ z ], "slice " + z );
+	}
+
+	@Test
+	void finishedStreamRejectsSlabs() throws InterruptedException
+	{
+		final StreamingSkeletonizer skeletonizer = new StreamingSkeletonizer( 2, 2, (z, pixels) -> {} );
+		skeletonizer.finish();
+		assertThrows( IllegalStateException.class, () -> skeletonizer.addSlab( new byte[][]{ new byte[ 4 ] } ) );
+	}
+
+} /* end StreamingSkeletonizerTest */
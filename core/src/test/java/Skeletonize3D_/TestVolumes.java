@@ -0,0 +1,212 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+import java.util.Random;
+
+/**
+ * Small test volumes, given as slices with non-zero foreground pixels,
+ * and topology helpers.
+ */
+final class TestVolumes
+{
+	/** names of the test volumes */
+	static final String[] KINDS = { "spheres", "noise", "tubes", "box" };
+	/** sizes of the test volumes, including 2D and 1D ones */
+	static final int[][] SIZES = { { 40, 35, 30 }, { 25, 20, 1 }, { 17, 23, 11 }, { 1, 30, 20 }, { 30, 1, 1 } };
+
+	private TestVolumes()
+	{
+	}
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Create a test volume.
+	 *
+	 * @param kind volume kind (see {@link #KINDS})
+	 * @param width volume width
+	 * @param height volume height
+	 * @param depth volume depth
+	 * @param seed random seed
+	 * @return slices of the volume
+	 */
+	static byte[][] create(String kind, int width, int height, int depth, long seed)
+	{
+		final Random random = new Random( seed );
+		final byte[][] slices = new byte[ depth ][ width * height ];
+		switch( kind )
+		{
+			case "spheres":
+				for( int k = 0; k < 6; k++ )
+				{
+					final int cx = random.nextInt( width ), cy = random.nextInt( height ), cz = random.nextInt( depth );
+					final int r = 3 + random.nextInt( Math.max( 1, Math.min( width, Math.min( height, depth ) ) / 3 ) );
+					for( int z = 0; z < depth; z++ )
+						for( int y = 0; y < height; y++ )
+							for( int x = 0; x < width; x++ )
+								if( ( x - cx ) * ( x - cx ) + ( y - cy ) * ( y - cy ) + ( z - cz ) * ( z - cz ) <= r * r )
+									slices[ z ][ x + y * width ] = (byte) 255;
+				}
+				break;
+			case "noise":
+				for( int z = 0; z < depth; z++ )
+					for( int i = 0; i < width * height; i++ )
+						if( random.nextInt( 100 ) < 55 )
+							slices[ z ][ i ] = (byte) 200;
+				break;
+			case "tubes":
+				for( int k = 0; k < 5; k++ )
+				{
+					final double x0 = random.nextInt( width ), y0 = random.nextInt( height ), z0 = random.nextInt( depth );
+					final double vx = random.nextInt( width ) - x0, vy = random.nextInt( height ) - y0, vz = random.nextInt( depth ) - z0;
+					final double r = 1.5 + random.nextDouble() * 3;
+					for( int z = 0; z < depth; z++ )
+						for( int y = 0; y < height; y++ )
+							for( int x = 0; x < width; x++ )
+							{
+								double t = ( ( x - x0 ) * vx + ( y - y0 ) * vy + ( z - z0 ) * vz ) / ( vx * vx + vy * vy + vz * vz + 1e-9 );
+								t = Math.max( 0, Math.min( 1, t ) );
+								final double px = x0 + t * vx - x, py = y0 + t * vy - y, pz = z0 + t * vz - z;
+								if( px * px + py * py + pz * pz <= r * r )
+									slices[ z ][ x + y * width ] = 1;
+							}
+				}
+				break;
+			case "box":
+				// solid box touching the borders of the volume
+				for( int z = 0; z < depth; z++ )
+					for( int y = 0; y < height; y++ )
+						for( int x = 0; x < width; x++ )
+							if( x > 0 || y < height / 2 )
+								slices[ z ][ x + y * width ] = (byte) 255;
+				break;
+			default:
+				throw new IllegalArgumentException( kind );
+		}
+		return slices;
+	} /* end create */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Copy slices.
+	 *
+	 * @param slices slices to copy
+	 * @return deep copy
+	 */
+	static byte[][] copy(byte[][] slices)
+	{
+		final byte[][] copy = new byte[ slices.length ][];
+		for( int z = 0; z < slices.length; z++ )
+			copy[ z ] = slices[ z ].clone();
+		return copy;
+	} /* end copy */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Count the foreground voxels.
+	 *
+	 * @param slices volume slices
+	 * @return number of non-zero voxels
+	 */
+	static long count(byte[][] slices)
+	{
+		long count = 0;
+		for( byte[] slice : slices )
+			for( byte b : slice )
+				if( b != 0 )
+					count++;
+		return count;
+	} /* end count */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Count the connected components of the foreground (26-connected) and
+	 * of the background (6-connected, the outside of the volume included).
+	 *
+	 * @param slices volume slices
+	 * @param width volume width
+	 * @param height volume height
+	 * @return number of foreground and of background components
+	 */
+	static int[] components(byte[][] slices, int width, int height)
+	{
+		final int depth = slices.length;
+		final int w = width + 2, h = height + 2, d = depth + 2;
+		final boolean[] foreground = new boolean[ w * h * d ];
+		for( int z = 0; z < depth; z++ )
+			for( int y = 0; y < height; y++ )
+				for( int x = 0; x < width; x++ )
+					foreground[ ( x + 1 ) + ( y + 1 ) * w + ( z + 1 ) * w * h ] = slices[ z ][ x + y * width ] != 0;
+		final int[] counts = new int[ 2 ];
+		for( int background = 0; background < 2; background++ )
+		{
+			final boolean[] seen = new boolean[ foreground.length ];
+			final int[] stack = new int[ foreground.length ];
+			for( int i = 0; i < foreground.length; i++ )
+			{
+				if( seen[ i ] || foreground[ i ] == ( background == 1 ) )
+					continue;
+				counts[ background ]++;
+				int top = 0;
+				stack[ top++ ] = i;
+				seen[ i ] = true;
+				while( top > 0 )
+				{
+					final int c = stack[ --top ];
+					final int cx = c % w, cy = c / w % h, cz = c / ( w * h );
+					for( int dz = -1; dz <= 1; dz++ )
+						for( int dy = -1; dy <= 1; dy++ )
+							for( int dx = -1; dx <= 1; dx++ )
+							{
+								final int m = Math.abs( dx ) + Math.abs( dy ) + Math.abs( dz );
+								if( m == 0 || ( background == 1 && m > 1 ) )
+									continue;
+								final int x = cx + dx, y = cy + dy, z = cz + dz;
+								if( x < 0 || y < 0 || z < 0 || x >= w || y >= h || z >= d )
+									continue;
+								final int n = x + y * w + z * w * h;
+								if( !seen[ n ] && foreground[ n ] == foreground[ c ] )
+								{
+									seen[ n ] = true;
+									stack[ top++ ] = n;
+								}
+							}
+				}
+			}
+		}
+		return counts;
+	} /* end components */
+
+} /* end TestVolumes */
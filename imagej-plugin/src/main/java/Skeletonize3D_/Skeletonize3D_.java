@@ -0,0 +1,408 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras 
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of 
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.Prefs;
+import ij.plugin.filter.PlugInFilter;
+import ij.process.ImageProcessor;
+
+import java.util.function.DoublePredicate;
+
+/**
+ * Main class.
+ * This class is a plugin for the ImageJ interface for 2D and 3D thinning 
+ * (skeletonization) of binary images (2D/3D).
+ *
+ * <p>
+ * This work is an implementation by Ignacio Arganda-Carreras of the
+ * 3D thinning algorithm from Lee et al. "Building skeleton models via 3-D 
+ * medial surface/axis thinning algorithms. Computer Vision, Graphics, and 
+ * Image Processing, 56(6):462–478, 1994." Based on the ITK version from
+ * Hanno Homann <a href="http://hdl.handle.net/1926/1292"> http://hdl.handle.net/1926/1292</a>
+ * <p>
+ * The thinning itself is done by {@link Skeletonizer}, which does not
+ * depend on ImageJ; this class only adapts it to image stacks.
+ * <p>
+ * 8-bit stacks are binarized (non-zero pixels are foreground) and the 
+ * skeleton is returned with value 255. 16-bit and 32-bit stacks are read
+ * directly, without an 8-bit copy: the foreground is the thresholded range
+ * of the image if it has one (a range of a single value selects one label),
+ * or its non-zero pixels otherwise, and the skeleton pixels keep their 
+ * value while all the others are set to 0.
+ * <p>
+ *  More information at Skeletonize3D homepage:
+ *  http://fiji.sc/Skeletonize3D
+ *
+ * @version 1.0 11/13/2015 (unique BSD licensed version for scikit-image)
+ * @author Ignacio Arganda-Carreras (iargandacarreras at gmail.com)
+ *
+ */
+public class Skeletonize3D_ implements PlugInFilter 
+{
+	/** working image plus */
+	private ImagePlus imRef;
+
+	/** working image width */
+	private int width = 0;
+	/** working image height */
+	private int height = 0;
+	/** working image depth */
+	private int depth = 0;
+	/** working image stack*/
+	private ImageStack inputImage = null;
+	
+	/** thinning engine, reporting its progress to ImageJ */
+	private final Skeletonizer skeletonizer = createSkeletonizer();
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * This method is called once when the filter is loaded.
+	 * 
+	 * @param arg argument specified for this plugin
+	 * @param imp currently active image
+	 * @return flag word that specifies the filters capabilities
+	 */
+	public int setup(String arg, ImagePlus imp) 
+	{
+		this.imRef = imp;
+		if( imp != null )
+		{
+			// also used by prepareData before run
+			this.width = imp.getWidth();
+			this.height = imp.getHeight();
+			this.depth = imp.getStackSize();
+			this.inputImage = imp.getStack();
+		}
+		
+		if (arg.equals("about")) {
+			showAbout();
+			return DONE;
+		}
+
+		return DOES_8G | DOES_16 | DOES_32;
+	} /* end setup */
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Enable or disable the active front thinning. When enabled (default),
+	 * the iterations after the first one only examine the neighbors of the
+	 * points deleted in the previous iteration instead of the whole image.
+	 * The result is the same, at the cost of one bit of memory per voxel.
+	 * 
+	 * @param activeFront true to examine only the active front
+	 */
+	public void setActiveFront(boolean activeFront)
+	{
+		skeletonizer.setActiveFront( activeFront );
+	} /* end setActiveFront */
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Set the number of threads used to search for deletion candidates
+	 * (ImageJ's thread preference by default). The points are still deleted
+	 * sequentially in (z, y, x) order, so the result does not depend on it.
+	 * 
+	 * @param parallelism number of threads (1 to run in the calling thread)
+	 */
+	public void setParallelism(int parallelism)
+	{
+		skeletonizer.setParallelism( parallelism );
+	} /* end setParallelism */
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Enable or disable the subfield re-check (disabled by default).
+	 * 
+	 * @param subfields true to delete the candidates by subfields
+	 * @see Skeletonizer#setSubfields
+	 */
+	public void setSubfields(boolean subfields)
+	{
+		skeletonizer.setSubfields( subfields );
+	} /* end setSubfields */
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Enable or disable the medial surface thinning (disabled by default).
+	 * 
+	 * @param medialSurface true to compute medial surfaces
+	 * @see Skeletonizer#setMedialSurface
+	 */
+	public void setMedialSurface(boolean medialSurface)
+	{
+		skeletonizer.setMedialSurface( medialSurface );
+	} /* end setMedialSurface */
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Process the image.
+	 * 
+	 * @see ij.plugin.filter.PlugInFilter#run(ij.process.ImageProcessor)
+	 */
+	public void run(ImageProcessor ip) 
+	{
+		
+		this.width = this.imRef.getWidth();
+		this.height = this.imRef.getHeight();
+		this.depth = this.imRef.getStackSize();
+		this.inputImage = this.imRef.getStack();
+		
+		if( this.imRef.getBitDepth() != 8 )
+		{
+			// Thin the foreground of the 16-bit or 32-bit pixels directly
+			final double min = ip.getMinThreshold(), max = ip.getMaxThreshold();
+			final BitVolume volume = toBitVolume( this.inputImage, min == ImageProcessor.NO_THRESHOLD 
+					? value -> value != 0 : value -> value >= min && value <= max );
+			computeThinImage( volume );
+			clearBackgroundPixels( volume, this.inputImage );
+			this.inputImage.update( ip );
+			return;
+		}
+		
+		// Compute thinning, binarizing the input while loading it and 
+		// converting the output to 0-255 while writing it back
+		final byte[][] slices = new byte[ this.depth ][];
+		for( int z = 0; z < this.depth; z++ )
+			slices[ z ] = (byte[]) this.inputImage.getPixels( z + 1 );
+		skeletonizer.thin( slices, this.width, this.height, (byte) 255 );
+		
+		this.inputImage.update(ip);
+	} /* end run */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Prepare data for computation.
+	 * Copy the input image to the output image, changing all foreground 
+	 * (non-zero) pixels to 1, one slice per task of the thinning engine.
+	 * 
+	 * @param outputImage output image stack
+	 */
+	public void prepareData(ImageStack outputImage) 
+	{
+		IJ.showStatus("Prepare Data: Copy input to output ...");
+		
+		final int sliceSize = this.width * this.height;
+		skeletonizer.forEachSlice( this.depth, z -> {
+			final byte[] input = (byte[]) this.inputImage.getPixels( z + 1 );
+			final byte[] output = (byte[]) outputImage.getPixels( z + 1 );
+			for( int i = 0; i < sliceSize; i++ )
+				if( input[ i ] != 0 )
+					output[ i ] = 1;
+		});
+		
+		IJ.showStatus("Prepare Data End.");
+	} /* end prepareData */
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Post processing for computing thinning.
+	 * The image is thinned in a {@link BitVolume} and the deleted pixels
+	 * are set to 0 in the stack.
+	 * 
+	 * @param outputImage output image stack, with foreground pixels equal
+	 *        to 1 (see {@link #prepareData(ImageStack)})
+	 */
+	public void computeThinImage(ImageStack outputImage) 
+	{
+		final BitVolume volume = toBitVolume( outputImage );
+		computeThinImage( volume );
+		clearDeletedPixels( volume, outputImage );
+	} /* end computeThinImage */
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Convert a binary stack (pixels with value 1 are foreground) into a
+	 * bit volume, one slice per task of the thinning engine.
+	 * 
+	 * @param image binary image stack
+	 * @return bit volume
+	 */
+	public BitVolume toBitVolume(ImageStack image)
+	{
+		final BitVolume volume = new BitVolume( image.getWidth(), image.getHeight(), image.getSize() );
+		skeletonizer.forEachSlice( volume.getDepth(), 
+				z -> volume.setSlice( z, (byte[]) image.getPixels( z + 1 ), 0, value -> value == 1 ) );
+		return volume;
+	} /* end toBitVolume */
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Convert the foreground of a stack of any type into a bit volume, in 
+	 * one pass over the pixels of the stack, one slice per task of the 
+	 * thinning engine.
+	 * 
+	 * @param image 8-bit, 16-bit or 32-bit image stack
+	 * @param foreground foreground test of the pixel values (unsigned for
+	 *        8-bit and 16-bit stacks)
+	 * @return bit volume
+	 */
+	public BitVolume toBitVolume(ImageStack image, DoublePredicate foreground)
+	{
+		final Object first = image.getPixels( 1 );
+		if( !( first instanceof byte[] || first instanceof short[] || first instanceof float[] ) )
+			throw new IllegalArgumentException( "Unsupported image type: " + image.getBitDepth() + "-bit" );
+		final BitVolume volume = new BitVolume( image.getWidth(), image.getHeight(), image.getSize() );
+		skeletonizer.forEachSlice( volume.getDepth(), z -> {
+			final Object pixels = image.getPixels( z + 1 );
+			if( pixels instanceof short[] )
+				volume.setSlice( z, (short[]) pixels, value -> foreground.test( value ) );
+			else if( pixels instanceof float[] )
+				volume.setSlice( z, (float[]) pixels, value -> foreground.test( value ) );
+			else
+				volume.setSlice( z, (byte[]) pixels, 0, value -> foreground.test( value ) );
+		});
+		return volume;
+	} /* end toBitVolume */
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Set to 0 the pixels of a stack of any type that are background in a
+	 * thinned bit volume. Only the background bits of each word of the 
+	 * volume are visited, one slice per task of the thinning engine.
+	 * 
+	 * @param volume thinned bit volume
+	 * @param image 8-bit, 16-bit or 32-bit image stack the volume was created from
+	 */
+	public void clearBackgroundPixels(BitVolume volume, ImageStack image)
+	{
+		final Object first = image.getPixels( 1 );
+		if( !( first instanceof byte[] || first instanceof short[] || first instanceof float[] ) )
+			throw new IllegalArgumentException( "Unsupported image type: " + image.getBitDepth() + "-bit" );
+		skeletonizer.forEachSlice( volume.getDepth(), z -> {
+			final Object pixels = image.getPixels( z + 1 );
+			if( pixels instanceof short[] )
+				volume.clearBackground( z, (short[]) pixels );
+			else if( pixels instanceof float[] )
+				volume.clearBackground( z, (float[]) pixels );
+			else
+				volume.clearBackground( z, (byte[]) pixels, 0 );
+		});
+	} /* end clearBackgroundPixels */
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Set to 0 the pixels of a binary stack that are background in a 
+	 * thinned bit volume, walking the background bits of each word of the
+	 * volume, one slice per task of the thinning engine.
+	 * 
+	 * @param volume thinned bit volume
+	 * @param image binary image stack the volume was created from (0 and 1)
+	 */
+	public void clearDeletedPixels(BitVolume volume, ImageStack image)
+	{
+		skeletonizer.forEachSlice( volume.getDepth(), 
+				z -> volume.clearBackground( z, (byte[]) image.getPixels( z + 1 ), 0 ) );
+	} /* end clearDeletedPixels */
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Compute thinning of a bit volume, in place.
+	 * 
+	 * @param volume binary volume
+	 */
+	public void computeThinImage(BitVolume volume) 
+	{
+		skeletonizer.thin( volume );
+	} /* end computeThinImage */
+	
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Create the thinning engine with ImageJ's thread preference, showing 
+	 * its progress in the ImageJ status and progress bars.
+	 * 
+	 * @return thinning engine
+	 */
+	private static Skeletonizer createSkeletonizer()
+	{
+		final Skeletonizer skeletonizer = new Skeletonizer();
+		skeletonizer.setParallelism( Prefs.getThreads() );
+		skeletonizer.setProgressListener( new Skeletonizer.ProgressListener() {
+			public void showStatus(String message)
+			{
+				IJ.showStatus( message );
+			}
+			
+			public void showProgress(int done, int total)
+			{
+				IJ.showProgress( done, total );
+			}
+		});
+		return skeletonizer;
+	} /* end createSkeletonizer */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Get neighborhood of a pixel in a 3D image (0 border conditions) 
+	 * 
+	 * @param image 3D image (ImageStack)
+	 * @param x x- coordinate
+	 * @param y y- coordinate
+	 * @param z z- coordinate (0 for the first slice of the stack)
+	 * @return corresponding 27-pixels neighborhood, x fastest then y then z
+	 *         (0 if out of image)
+	 */
+	public byte[] getNeighborhood(ImageStack image, int x, int y, int z)
+	{
+		final int width = image.getWidth();
+		final int height = image.getHeight();
+		final byte[] neighborhood = new byte[ 27 ];
+		for( int dz = -1, i = 0; dz <= 1; dz++ )
+		{
+			final byte[] pixels = z + dz >= 0 && z + dz < image.getSize() 
+					? (byte[]) image.getPixels( z + dz + 1 ) : null;
+			for( int dy = -1; dy <= 1; dy++ )
+				for( int dx = -1; dx <= 1; dx++, i++ )
+					if( pixels != null && x + dx >= 0 && x + dx < width && y + dy >= 0 && y + dy < height )
+						neighborhood[ i ] = pixels[ x + dx + ( y + dy ) * width ];
+		}
+		return neighborhood;
+	} /* end getNeighborhood */
+
+	/* -----------------------------------------------------------------------*/
+	/**
+	 * Show plug-in information.
+	 * 
+	 */
+	void showAbout() 
+	{
+		IJ.showMessage(
+						"About Skeletonize3D...",
+						"This plug-in filter produces 3D thinning (skeletonization) of binary 3D images.\n");
+	} /* end showAbout */
+	/* -----------------------------------------------------------------------*/
+
+} /* end Skeletonize3D_ */
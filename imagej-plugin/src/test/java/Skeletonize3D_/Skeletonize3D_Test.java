@@ -0,0 +1,212 @@
+package Skeletonize3D_;
+
+/**
+ * Skeletonize3D plugin for ImageJ(C).
+ * Copyright (c) 2015 Ignacio Arganda-Carreras
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. All advertising materials mentioning features or use of this software
+ *    must display the following acknowledgement:
+ *    This product includes software developed by the University of
+ *    California, Berkeley and its contributors.
+ * 4. Neither the name of the University nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.plugin.filter.PlugInFilter;
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that the plugin filter produces the skeleton of the core.
+ */
+class Skeletonize3D_Test
+{
+	@Test
+	void pluginSkeletonMatchesCoreSkeleton()
+	{
+		final int width = 31, height = 27, depth = 19;
+		final Random random = new Random( 11 );
+		final ImageStack stack = new ImageStack( width, height );
+		final byte[][] slices = new byte[ depth ][];
+		for( int z = 0; z < depth; z++ )
+		{
+			final byte[] pixels = new byte[ width * height ];
+			for( int y = 0; y < height; y++ )
+				for( int x = 0; x < width; x++ )
+				{
+					final double dx = x - 15, dy = y - 13, dz = z - 9;
+					if( dx * dx + dy * dy + dz * dz < 64 || random.nextInt( 5 ) == 0 )
+						pixels[ x + y * width ] = (byte) 100;
+				}
+			slices[ z ] = pixels.clone();
+			stack.addSlice( "", new ByteProcessor( width, height, pixels ) );
+		}
+
+		final Skeletonize3D_ plugin = new Skeletonize3D_();
+		plugin.setParallelism( 2 );
+		final ImagePlus image = new ImagePlus( "test", stack );
+		plugin.setup( "", image );
+		plugin.run( image.getProcessor() );
+
+		new Skeletonizer().thin( slices, width, height );
+		for( int z = 0; z < depth; z++ )
+		{
+			final byte[] expected = new byte[ width * height ];
+			for( int i = 0; i < expected.length; i++ )
+				expected[ i ] = slices[ z ][ i ] != 0 ? (byte) 255 : 0;
+			assertArrayEquals( expected, (byte[]) stack.getPixels( z + 1 ), "slice " + z );
+		}
+	}
+
+	@Test
+	void preparedStackIsThinnedLikeTheCore()
+	{
+		final int width = 23, height = 21, depth = 13;
+		final Random random = new Random( 5 );
+		final ImageStack stack = new ImageStack( width, height );
+		final ImageStack output = new ImageStack( width, height );
+		final byte[][] slices = new byte[ depth ][];
+		for( int z = 0; z < depth; z++ )
+		{
+			final byte[] pixels = new byte[ width * height ];
+			for( int i = 0; i < pixels.length; i++ )
+				if( random.nextInt( 3 ) != 0 )
+					pixels[ i ] = (byte) ( 1 + random.nextInt( 255 ) );
+			slices[ z ] = pixels.clone();
+			stack.addSlice( "", new ByteProcessor( width, height, pixels ) );
+			output.addSlice( "", new ByteProcessor( width, height ) );
+		}
+
+		final Skeletonize3D_ plugin = new Skeletonize3D_();
+		plugin.setup( "", new ImagePlus( "test", stack ) );
+		plugin.prepareData( output );
+		final byte[] neighborhood = plugin.getNeighborhood( output, 0, 5, depth - 1 );
+		for( int i = 0; i < 27; i++ )
+		{
+			final int x = i % 3 - 1, y = 5 + i / 3 % 3 - 1, z = depth - 1 + i / 9 - 1;
+			final int expected = x < 0 || z >= depth ? 0 : slices[ z ][ x + y * width ] != 0 ? 1 : 0;
+			assertEquals( expected, neighborhood[ i ], "neighbor " + i );
+		}
+		plugin.computeThinImage( output );
+
+		new Skeletonizer().thin( slices, width, height );
+		for( int z = 0; z < depth; z++ )
+		{
+			final byte[] expected = new byte[ width * height ];
+			for( int i = 0; i < expected.length; i++ )
+				expected[ i ] = (byte) ( slices[ z ][ i ] != 0 ? 1 : 0 );
+			assertArrayEquals( expected, (byte[]) output.getPixels( z + 1 ), "slice " + z );
+		}
+	}
+
+	@Test
+	void labelOfShortStackIsThinnedInPlace()
+	{
+		final int width = 30, height = 24, depth = 16;
+		final ImageStack stack = new ImageStack( width, height );
+		final byte[][] label = new byte[ depth ][ width * height ];
+		for( int z = 0; z < depth; z++ )
+		{
+			final short[] pixels = new short[ width * height ];
+			for( int y = 2; y < height - 2; y++ )
+				for( int x = 2; x < width - 2; x++ )
+				{
+					// label 40000 on the left half, label 7 on the right one
+					pixels[ x + y * width ] = (short) ( x < width / 2 ? 40000 : 7 );
+					label[ z ][ x + y * width ] = (byte) ( x < width / 2 && z > 1 && z < depth - 2 ? 1 : 0 );
+				}
+			if( z <= 1 || z >= depth - 2 )
+				Arrays.fill( pixels, (short) 0 );
+			stack.addSlice( "", new ShortProcessor( width, height, pixels, null ) );
+		}
+
+		final Skeletonize3D_ plugin = new Skeletonize3D_();
+		final ImagePlus image = new ImagePlus( "labels", stack );
+		image.getProcessor().setThreshold( 40000, 40000, ImageProcessor.NO_LUT_UPDATE );
+		assertTrue( ( plugin.setup( "", image ) & PlugInFilter.DOES_16 ) != 0 );
+		plugin.run( image.getProcessor() );
+
+		new Skeletonizer().thin( label, width, height );
+		for( int z = 0; z < depth; z++ )
+		{
+			final short[] expected = new short[ width * height ];
+			for( int i = 0; i < expected.length; i++ )
+				expected[ i ] = label[ z ][ i ] != 0 ? (short) 40000 : 0;
+			assertArrayEquals( expected, (short[]) stack.getPixels( z + 1 ), "slice " + z );
+		}
+	}
+
+	@Test
+	void floatStackWithoutThresholdKeepsNonZeroSkeleton()
+	{
+		final int width = 20, height = 20, depth = 12;
+		final ImageStack stack = new ImageStack( width, height );
+		final byte[][] mask = new byte[ depth ][ width * height ];
+		for( int z = 0; z < depth; z++ )
+		{
+			final float[] pixels = new float[ width * height ];
+			for( int y = 0; y < height; y++ )
+				for( int x = 0; x < width; x++ )
+				{
+					final double dx = x - 10, dy = y - 10, dz = z - 6;
+					final double r2 = dx * dx + dy * dy + dz * dz;
+					if( r2 < 25 )
+					{
+						pixels[ x + y * width ] = (float) -r2 - 0.5f;
+						mask[ z ][ x + y * width ] = 1;
+					}
+				}
+			stack.addSlice( "", new FloatProcessor( width, height, pixels ) );
+		}
+		final float[][] original = new float[ depth ][];
+		for( int z = 0; z < depth; z++ )
+			original[ z ] = ( (float[]) stack.getPixels( z + 1 ) ).clone();
+
+		final Skeletonize3D_ plugin = new Skeletonize3D_();
+		final ImagePlus image = new ImagePlus( "map", stack );
+		plugin.setup( "", image );
+		plugin.run( image.getProcessor() );
+
+		new Skeletonizer().thin( mask, width, height );
+		for( int z = 0; z < depth; z++ )
+			for( int i = 0; i < width * height; i++ )
+				assertEquals( mask[ z ][ i ] != 0 ? original[ z ][ i ] : 0f, 
+						( (float[]) stack.getPixels( z + 1 ) )[ i ], "voxel " + i + " of slice " + z );
+	}
+
+} /* end Skeletonize3D_Test */